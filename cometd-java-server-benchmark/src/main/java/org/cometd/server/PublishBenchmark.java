@@ -0,0 +1,71 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * One broadcast published with {@code doPublish} to 1, 1k and 50k subscribers, whose queues are drained
+ * after each publish as the transports do.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class PublishBenchmark {
+
+    @Benchmark
+    public void doPublish(ExecutionPlan plan) {
+        ServerMessage.Mutable message = plan.bayeux.newMessage();
+        message.setChannel(plan.channel.getId());
+        message.setData(plan.data);
+        plan.bayeux.doPublish(null, plan.channel, message);
+    }
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+        @Param({"1", "1000", "50000"})
+        int subscriberCount;
+
+        private BayeuxServerImpl bayeux;
+        private ServerChannelImpl channel;
+        private ServerSessionImpl[] sessions;
+        private Map<String, Object> data;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            bayeux = new BayeuxServerImpl();
+            bayeux.start();
+            channel = (ServerChannelImpl)bayeux.createChannelIfAbsent("/measurements/3201").getReference();
+            sessions = new ServerSessionImpl[subscriberCount];
+            for (int i = 0; i < subscriberCount; i++) {
+                ServerSessionImpl session = new ServerSessionImpl(bayeux);
+                session.handshake();
+                bayeux.addServerSession(session, null);
+                channel.subscribe(session);
+                sessions[i] = session;
+            }
+            data = new HashMap<>();
+            data.put("type", "c8y_Temperature");
+            data.put("time", "2020-08-28T09:20:30.186Z");
+            data.put("source", new HashMap<>(Map.of("id", "3201")));
+            data.put("c8y_Temperature", new HashMap<>(Map.of("T", Map.of("unit", "C", "value", 21.5))));
+        }
+
+        @TearDown(Level.Invocation)
+        public void drain() {
+            for (ServerSessionImpl session : sessions) {
+                EncodedFrame.release(session.takeQueue());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            bayeux.stop();
+        }
+    }
+}
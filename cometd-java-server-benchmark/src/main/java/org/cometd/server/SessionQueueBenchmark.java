@@ -0,0 +1,73 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * Publishing threads delivering to one session while its transport takes the queue, as a
+ * {@code /meta/connect} does when it is resumed.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class SessionQueueBenchmark {
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(3)
+    public void enqueue(ExecutionPlan plan) {
+        plan.session.doDeliver(null, plan.message);
+    }
+
+    @Benchmark
+    @Group("queue")
+    @GroupThreads(1)
+    public void takeQueue(ExecutionPlan plan, Blackhole blackhole) {
+        List<ServerMessage> messages = plan.taken;
+        blackhole.consume(plan.session.takeQueue(messages));
+        EncodedFrame.release(messages);
+        messages.clear();
+    }
+
+    @State(Scope.Group)
+    public static class ExecutionPlan {
+        @Param({"none", "drop-oldest"})
+        String overflowPolicy;
+
+        private BayeuxServerImpl bayeux;
+        private ServerSessionImpl session;
+        private ServerMessage.Mutable message;
+        // Only used by the thread taking the queue.
+        private final List<ServerMessage> taken = new ArrayList<>();
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            bayeux = new BayeuxServerImpl();
+            bayeux.setOption(QueueOverflowPolicy.POLICY_OPTION, overflowPolicy);
+            bayeux.setOption(QueueOverflowPolicy.MAX_QUEUE_BYTES_OPTION, 1024L * 1024);
+            bayeux.start();
+            session = new ServerSessionImpl(bayeux);
+            // The session reads its queue options from the transport it handshakes with.
+            bayeux.setCurrentTransport(bayeux.getTransport("long-polling"));
+            session.handshake();
+            bayeux.setCurrentTransport(null);
+            bayeux.addServerSession(session, null);
+            message = bayeux.newMessage();
+            message.setChannel("/measurements/3201");
+            message.setData("{\"type\":\"c8y_Temperature\",\"c8y_Temperature\":{\"T\":{\"unit\":\"C\",\"value\":21.5}}}");
+            bayeux.freeze(message);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            bayeux.stop();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.cometd.server;
+
+import org.openjdk.jmh.annotations.*;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * The periodic sweep of a server with 100k sessions, none of them expiring: the deadline based
+ * {@code sweepDue()} and the full {@code sweep()}.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class SweepBenchmark {
+
+    @Benchmark
+    public void sweepDue(ExecutionPlan plan) {
+        plan.bayeux.sweepDue();
+    }
+
+    @Benchmark
+    public void sweep(ExecutionPlan plan) {
+        plan.bayeux.sweep();
+    }
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+        @Param({"100000"})
+        int sessionCount;
+
+        private BayeuxServerImpl bayeux;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            bayeux = new BayeuxServerImpl();
+            // Only the benchmark sweeps.
+            bayeux.setOption(BayeuxServerImpl.SWEEP_PERIOD_OPTION, 3_600_000L);
+            bayeux.setOption(BayeuxServerImpl.FULL_SWEEP_PERIODS_OPTION, 0L);
+            bayeux.start();
+            for (int i = 0; i < sessionCount; i++) {
+                ServerSessionImpl session = new ServerSessionImpl(bayeux);
+                session.handshake();
+                bayeux.addServerSession(session, null);
+                bayeux.createChannelIfAbsent("/devices/" + (i % 1000)).getReference().subscribe(session);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            bayeux.stop();
+        }
+    }
+}
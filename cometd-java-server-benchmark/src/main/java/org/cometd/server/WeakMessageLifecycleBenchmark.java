@@ -0,0 +1,75 @@
+package org.cometd.server;
+
+import org.cometd.common.JSONContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.util.Map;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * The life of a published {@link WeakMessage}: freezing its data, serializing (and compressing) its JSON,
+ * and parsing the data back from the JSON once it has been collected.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class WeakMessageLifecycleBenchmark {
+
+    @Benchmark
+    public void freeze(ExecutionPlan plan, Blackhole blackhole) {
+        WeakMessage message = plan.newMessage();
+        message.freeze();
+        blackhole.consume(message);
+    }
+
+    @Benchmark
+    public void serialize(ExecutionPlan plan, Blackhole blackhole) {
+        WeakMessage message = plan.newMessage();
+        message.freeze();
+        blackhole.consume(message.getRawData());
+    }
+
+    @Benchmark
+    public void parse(ExecutionPlan plan, Blackhole blackhole) throws ParseException {
+        blackhole.consume(plan.serialized.getDataFromJson());
+    }
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+        @Param({"10", "200", "1500"})
+        int generatedDataCount;
+
+        @Param({"GZIP", "LZ4", "ZSTD"})
+        MessageCompression compression;
+
+        private final JSONContext.Server jsonContext = new JettyJSONContextServer();
+        private Map<String, Object> data;
+        private WeakMessage serialized;
+
+        @Setup(Level.Trial)
+        @SuppressWarnings("unchecked")
+        public void setup() throws ParseException {
+            StringBuilder references = new StringBuilder();
+            for (int i = 0; i < generatedDataCount; i++) {
+                references.append(i == 0 ? "" : ",").append("{\"managedObject\":{\"self\":\"http://cumulocity.default.svc.cluster.local/inventory/managedObjects/").append(i).append("\",\"id\":\"").append(i).append("\"}}");
+            }
+            String json = "{\"data\":{\"realtimeAction\":\"UPDATE\",\"data\":{\"id\":\"3201\",\"name\":\"testGroup1\",\"childAssets\":{\"references\":[" + references + "]}}}}";
+            data = (Map<String, Object>)WeakMessage.parseJsonToMap(json, jsonContext).get("data");
+            serialized = newMessage();
+            serialized.freeze();
+            serialized.getRawData();
+        }
+
+        WeakMessage newMessage() {
+            WeakMessage message = new WeakMessage(50000, compression, jsonContext, true);
+            message.setChannel("/managedobjects/3201");
+            message.setId("1");
+            message.setData(data);
+            return message;
+        }
+    }
+}
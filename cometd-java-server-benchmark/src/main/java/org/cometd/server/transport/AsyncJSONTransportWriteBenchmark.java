@@ -0,0 +1,129 @@
+package org.cometd.server.transport;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.EncodedFrame;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * The write path of {@link AsyncJSONTransport}: a queue of frozen messages written as the response of a
+ * {@code /meta/connect}, to an output that is always ready.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class AsyncJSONTransportWriteBenchmark {
+
+    @Benchmark
+    public void write(ExecutionPlan plan, Blackhole blackhole) throws IOException {
+        for (ServerMessage message : plan.messages) {
+            // Retained by the session queue, released by the writer.
+            EncodedFrame.of(message).retain();
+        }
+        plan.transport.new Writer(plan.request, plan.response, plan.asyncContext, null, false, plan.messages, new ServerMessage.Mutable[0]).onWritePossible();
+        blackhole.consume(plan.output.getCount());
+    }
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+        @Param({"1", "50", "500"})
+        int messageCount;
+
+        @Param({"100", "60000"})
+        int zipMessageSizeThreshold;
+
+        private final CountingOutputStream output = new CountingOutputStream();
+        private BayeuxServerImpl bayeux;
+        private AsyncJSONTransport transport;
+        private HttpServletRequest request;
+        private HttpServletResponse response;
+        private AsyncContext asyncContext;
+        private List<ServerMessage> messages;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            bayeux = new BayeuxServerImpl();
+            bayeux.setOption(BayeuxServerImpl.ZIP_MESSAGE_SIZE_THRESHOLD_OPTION, zipMessageSizeThreshold);
+            bayeux.start();
+            transport = (AsyncJSONTransport)bayeux.getTransport("long-polling");
+            request = proxy(HttpServletRequest.class, null);
+            response = proxy(HttpServletResponse.class, output);
+            asyncContext = proxy(AsyncContext.class, null);
+            messages = new ArrayList<>();
+            for (int i = 0; i < messageCount; i++) {
+                ServerMessage.Mutable message = bayeux.newMessage();
+                message.setChannel("/measurements/3201");
+                message.setId(String.valueOf(i));
+                message.setData("{\"type\":\"c8y_Temperature\",\"source\":{\"id\":\"3201\"},\"c8y_Temperature\":{\"T\":{\"unit\":\"C\",\"value\":" + i + "}}}");
+                bayeux.freeze(message);
+                messages.add(message);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            bayeux.stop();
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, ServletOutputStream output) {
+            return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                if ("getOutputStream".equals(method.getName())) {
+                    return output;
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == boolean.class) {
+                    return false;
+                }
+                if (returnType == int.class) {
+                    return 0;
+                }
+                if (returnType == long.class) {
+                    return 0L;
+                }
+                return null;
+            });
+        }
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+        private long count;
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+
+        @Override
+        public void write(int b) {
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            count += length;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+}
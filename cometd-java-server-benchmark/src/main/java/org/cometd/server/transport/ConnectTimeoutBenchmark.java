@@ -0,0 +1,56 @@
+package org.cometd.server.transport;
+
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * The timeout of a suspended {@code /meta/connect} scheduled and then cancelled when the connect is
+ * woken up, with 100k other connects parked, on the scheduler of the server and on a
+ * {@link HashedWheelScheduler}.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class ConnectTimeoutBenchmark {
+
+    @Benchmark
+    @Threads(4)
+    public boolean scheduleAndCancel(ExecutionPlan plan) {
+        Scheduler.Task task = plan.scheduler.schedule(plan.timeout, 30_000 + ThreadLocalRandom.current().nextInt(1000), TimeUnit.MILLISECONDS);
+        return task.cancel();
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+        @Param({"scheduler", "wheel"})
+        String implementation;
+
+        @Param({"100000"})
+        int parkedCount;
+
+        private final Runnable timeout = () -> {
+        };
+        private Scheduler scheduler;
+
+        @Setup(Level.Trial)
+        public void setup() throws Exception {
+            scheduler = "wheel".equals(implementation) ? new HashedWheelScheduler("connect-timer", 10, 512) : new ScheduledExecutorScheduler("connect-timer", true);
+            scheduler.start();
+            for (int i = 0; i < parkedCount; i++) {
+                scheduler.schedule(timeout, 60_000 + i, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Exception {
+            scheduler.stop();
+        }
+    }
+}
@@ -50,6 +50,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @ManagedObject("The CometD server")
 public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer, Dumpable {
@@ -85,12 +86,42 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
 
     public static final String ALLOWED_TRANSPORTS_OPTION = "allowedTransports";
     public static final String SWEEP_PERIOD_OPTION = "sweepPeriod";
+    /**
+     * Every how many sweep periods all sessions and channels are swept, as a safety net for the deadline based sweep.
+     */
+    public static final String FULL_SWEEP_PERIODS_OPTION = "fullSweepPeriods";
     public static final String TRANSPORTS_OPTION = "transports";
     public static final String VALIDATE_MESSAGE_FIELDS_OPTION = "validateMessageFields";
     public static final String BROADCAST_TO_PUBLISHER_OPTION = "broadcastToPublisher";
     public static final int DEFAULT_HEARTBEAT_MINUTES = 10;
     public static final String ZIP_MESSAGE_SIZE_THRESHOLD_OPTION = "zipMessageSizeThreshold";
     public static final String IGNORE_NULL_DATA_FIELD = "ignoreNullDataField";
+    /**
+     * Compression of the messages above the zip message size threshold, one of {@code gzip} (default), {@code lz4} or {@code zstd}.
+     */
+    public static final String MESSAGE_COMPRESSION_OPTION = "messageCompression";
+    /**
+     * How the data parsed back from the JSON of a message is cached, one of {@code soft} (default), {@code weak} or {@code none}.
+     */
+    public static final String DATA_CACHE_POLICY_OPTION = "dataCachePolicy";
+    /**
+     * How the data of a message is retained once its JSON has been generated, one of {@code weak} (default),
+     * {@code soft}, {@code timed} or {@code size}, see {@link DataRetention}.
+     */
+    public static final String DATA_RETENTION_OPTION = "dataRetention";
+    /**
+     * Period, in milliseconds, during which the {@code timed} data retention retains the data strongly.
+     */
+    public static final String DATA_RETENTION_MILLIS_OPTION = "dataRetentionMillis";
+    /**
+     * JSON size, in bytes, up to which the {@code size} data retention retains the data strongly.
+     */
+    public static final String DATA_RETENTION_SIZE_OPTION = "dataRetentionSize";
+    /**
+     * Number of subscribers (leaf and wildcard) above which a broadcast is delivered in parallel, disabled if not positive.
+     */
+    public static final String FAN_OUT_THRESHOLD_OPTION = "fanOutThreshold";
+    public static final String FAN_OUT_PARALLELISM_OPTION = "fanOutParallelism";
 
     private final Logger _logger = LoggerFactory.getLogger(getClass().getName() + "." + Integer.toHexString(System.identityHashCode(this)));
     private final SecureRandom _random = new SecureRandom();
@@ -98,6 +129,10 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
     private final List<Extension> _extensions = new CopyOnWriteArrayList<>();
     private final ConcurrentMap<String, ServerSessionImpl> _sessions = new ConcurrentHashMap<>();
     private final ConcurrentMap<String, ServerChannelImpl> _channels = new ConcurrentHashMap<>();
+    private final ChannelTrie _wildChannels = new ChannelTrie();
+    private final Set<ServerChannelImpl> _sweepableChannels = ConcurrentHashMap.newKeySet();
+    private final LongAdder _droppedMessages = new LongAdder();
+    private final LongAdder _overflowDisconnects = new LongAdder();
     private final Map<String, ServerTransport> _transports = new LinkedHashMap<>(); // Order is important
     private final List<String> _allowedTransports = new ArrayList<>();
     private final ThreadLocal<ServerTransport> _currentTransport = new ThreadLocal<>();
@@ -109,6 +144,14 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
     private boolean _broadcastToPublisher;
     private boolean _detailedDump;
     private int _heartbeatMinutes;
+    private volatile SessionSweeper _sessionSweeper;
+    private long _fullSweepPeriods;
+    private long _sweeps;
+    private FanOutExecutor _fanOut;
+    private long _fanOutThreshold;
+    private MessageCompression _messageCompression = MessageCompression.GZIP;
+    private DataCachePolicy _dataCachePolicy = DataCachePolicy.SOFT;
+    private DataRetention _dataRetention = DataRetention.DEFAULT;
 
     public BayeuxServerImpl() {
         this(DEFAULT_HEARTBEAT_MINUTES);
@@ -134,16 +177,33 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
             sweepPeriodOption = defaultSweepPeriod;
         }
         final long sweepPeriod = sweepPeriodOption;
+        _fullSweepPeriods = getOption(FULL_SWEEP_PERIODS_OPTION, 60L);
+        _sessionSweeper = new SessionSweeper(sweepPeriod);
+        for (ServerSessionImpl session : _sessions.values()) {
+            _sessionSweeper.register(session);
+        }
         _scheduler.schedule(new Runnable() {
             @Override
             public void run() {
-                sweep();
+                sweepDue();
                 _scheduler.schedule(this, sweepPeriod, TimeUnit.MILLISECONDS);
             }
         }, sweepPeriod, TimeUnit.MILLISECONDS);
 
         _validation = getOption(VALIDATE_MESSAGE_FIELDS_OPTION, true);
         _broadcastToPublisher = getOption(BROADCAST_TO_PUBLISHER_OPTION, true);
+        _messageCompression = MessageCompression.from(getOption(MESSAGE_COMPRESSION_OPTION));
+        _dataCachePolicy = DataCachePolicy.from(getOption(DATA_CACHE_POLICY_OPTION));
+        _dataRetention = new DataRetention(DataRetention.Policy.from(getOption(DATA_RETENTION_OPTION)),
+                getOption(DATA_RETENTION_MILLIS_OPTION, 1000L), (int)getOption(DATA_RETENTION_SIZE_OPTION, 4096));
+
+        _fanOutThreshold = getOption(FAN_OUT_THRESHOLD_OPTION, -1L);
+        if (_fanOutThreshold > 0) {
+            int parallelism = (int)getOption(FAN_OUT_PARALLELISM_OPTION, Runtime.getRuntime().availableProcessors());
+            FanOutExecutor fanOut = new FanOutExecutor(Math.max(1, parallelism));
+            fanOut.start();
+            _fanOut = fanOut;
+        }
     }
 
     @Override
@@ -161,10 +221,23 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         _extensions.clear();
         _sessions.clear();
         _channels.clear();
+        _wildChannels.clear();
+        _sweepableChannels.clear();
+        SessionSweeper sessionSweeper = _sessionSweeper;
+        _sessionSweeper = null;
+        if (sessionSweeper != null) {
+            sessionSweeper.clear();
+        }
         _transports.clear();
         _allowedTransports.clear();
         _options.clear();
         _scheduler.stop();
+
+        FanOutExecutor fanOut = _fanOut;
+        _fanOut = null;
+        if (fanOut != null) {
+            fanOut.stop();
+        }
     }
 
     protected void initializeMetaChannels() {
@@ -379,6 +452,7 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
                 // My candidate channel was added to the map, so I'd better initialize it
 
                 channel = candidate;
+                _wildChannels.add(channel);
                 if (_logger.isDebugEnabled()) {
                     _logger.debug("Added channel {}", channel);
                 }
@@ -410,8 +484,9 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
             // Double check if the sweeper removed this channel between the check at the top and here.
             // This is not 100% fool proof (e.g. this thread is preempted long enough for the sweeper
             // to remove the channel, but the alternative is to have a global lock)
-            _channels.putIfAbsent(channelName, channel);
-
+            if (_channels.putIfAbsent(channelName, channel) == null) {
+                _wildChannels.add(channel);
+            }
         }
         // Another thread may add this channel concurrently, so wait until it is initialized
         channel.waitForInitialized();
@@ -447,6 +522,8 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
 
     protected void addServerSession(ServerSessionImpl session, ServerMessage message) {
         _sessions.put(session.getId(), session);
+        // Registered once fully constructed, rather than from the session constructor.
+        scheduleSweep(session);
         for (BayeuxServerListener listener : _listeners) {
             if (listener instanceof SessionListener) {
                 notifySessionAdded((SessionListener)listener, session, message);
@@ -507,8 +584,10 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
     }
 
     public Mutable newMessage() {
-        WeakMessage result = new WeakMessage(getOption(ZIP_MESSAGE_SIZE_THRESHOLD_OPTION, 50000), _jsonContext, getOption(IGNORE_NULL_DATA_FIELD, true));
+        WeakMessage result = new WeakMessage(getOption(ZIP_MESSAGE_SIZE_THRESHOLD_OPTION, 50000), _messageCompression, _jsonContext, getOption(IGNORE_NULL_DATA_FIELD, true));
         result.setLocal(true);
+        result.setDataCachePolicy(_dataCachePolicy);
+        result.setDataRetention(_dataRetention);
         return result;
     }
 
@@ -727,10 +806,9 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
 
     private Authorizer.Result isChannelOperationAuthorized(Authorizer.Operation operation, ServerSession session, ServerMessage message, ChannelId channelId) {
         Authorizer.Result result = null;
-        List<String> wilds = channelId.getWilds();
+        List<ServerChannelImpl> wilds = _wildChannels.match(channelId);
         for (int i = 0, size = wilds.size(); i <= size; ++i) {
-            String channelName = i < size ? wilds.get(i) : channelId.toString();
-            ServerChannelImpl channel = _channels.get(channelName);
+            ServerChannelImpl channel = i < size ? wilds.get(i) : _channels.get(channelId.toString());
             if (channel != null) {
                 Authorizer.Result authz = isChannelOperationAuthorized(channel, operation, session, message, channelId);
                 if (authz != null) {
@@ -769,15 +847,30 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
     }
 
     protected void doPublish(ServerSessionImpl from, ServerChannelImpl to, final Mutable mutable) {
-        List<String> wildChannels = to.getChannelId().getWilds();
+        long begin = System.nanoTime();
+        List<ServerChannelImpl> wildChannels = _wildChannels.match(to.getChannelId());
 
         // First notify the channel listeners.
         if (!notifyListeners(from, to, mutable, wildChannels)) {
             return;
         }
 
+        boolean broadcast = ChannelId.isBroadcast(mutable.getChannel());
+        if (broadcast && mutable instanceof WeakMessage) {
+            // Extracted once per publish, before the data is frozen.
+            ((WeakMessage)mutable).setCoalescingKey(to.coalescingKey(mutable));
+        }
+
+        FanOutExecutor fanOut = _fanOut;
+        if (fanOut != null && broadcast) {
+            if (countSubscribers(to, wildChannels) >= _fanOutThreshold) {
+                fanOut(fanOut, from, to, mutable, wildChannels, begin);
+                return;
+            }
+        }
 
         boolean frozen = false;
+        int deliveries = 0;
 
 
 
@@ -787,63 +880,73 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         // possible to subscribe to meta channels and service channels.
 
 
-        Set<String> wildSubscribers = null;
-        if (ChannelId.isBroadcast(mutable.getChannel())) {
-            for (int i = 0, size = wildChannels.size(); i < size; ++i) {
-                ServerChannelImpl wildChannel = _channels.get(wildChannels.get(i));
-                if (wildChannel == null) {
-                    continue;
-                }
-                Set<ServerSession> subscribers = wildChannel.subscribers();
-                if (!subscribers.isEmpty()) {
-                    for (ServerSession session : subscribers) {
+        // Sessions subscribed to several matching channels must get the message only once.
+        // The dedup set is reused by this thread, so a publish does not allocate for it.
+        SessionDedup wildSubscribers = null;
+        try {
+            if (broadcast) {
+                for (int i = 0, size = wildChannels.size(); i < size; ++i) {
+                    Set<ServerSession> subscribers = wildChannels.get(i).subscribers();
+                    if (!subscribers.isEmpty()) {
                         if (wildSubscribers == null) {
-                            wildSubscribers = new HashSet<>();
+                            wildSubscribers = SessionDedup.acquire();
                         }
-                        if (wildSubscribers.add(session.getId())) {
-                            if(!frozen){
-                                // Exactly at this point, we convert the message to JSON and therefore
-                                // any further modification will be lost.
-                                // This is an optimization so that if the message is sent to a million
-                                // subscribers, we generate the JSON only once.
-                                // From now on, user code is passed a ServerMessage reference (and not
-                                // ServerMessage.Mutable), and we attempt to return immutable data
-                                // structures, even if it is not possible to guard against all cases.
-                                // For example, it is impossible to prevent things like
-                                // ((CustomObject)serverMessage.getData()).change() or
-                                // ((Map)serverMessage.getExt().get("map")).put().
-                                freeze(mutable);
-                                frozen = true;
+                        for (ServerSession session : subscribers) {
+                            if (wildSubscribers.add(session)) {
+                                if (!frozen) {
+                                    // Exactly at this point, we convert the message to JSON and therefore
+                                    // any further modification will be lost.
+                                    // This is an optimization so that if the message is sent to a million
+                                    // subscribers, we generate the JSON only once.
+                                    // From now on, user code is passed a ServerMessage reference (and not
+                                    // ServerMessage.Mutable), and we attempt to return immutable data
+                                    // structures, even if it is not possible to guard against all cases.
+                                    // For example, it is impossible to prevent things like
+                                    // ((CustomObject)serverMessage.getData()).change() or
+                                    // ((Map)serverMessage.getExt().get("map")).put().
+                                    freeze(mutable, to);
+                                    frozen = true;
+                                }
+                                ((ServerSessionImpl)session).doDeliver(from, mutable);
+                                ++deliveries;
                             }
-                            ((ServerSessionImpl)session).doDeliver(from, mutable);
                         }
                     }
                 }
             }
-        }
 
-        // Call the leaf subscribers
-        Set<ServerSession> subscribers = to.subscribers();
-        if (!subscribers.isEmpty()) {
-            for (ServerSession session : subscribers) {
-                if (wildSubscribers == null || !wildSubscribers.contains(session.getId())) {
-                    if(!frozen){
-                        // Exactly at this point, we convert the message to JSON and therefore
-                        // any further modification will be lost.
-                        // This is an optimization so that if the message is sent to a million
-                        // subscribers, we generate the JSON only once.
-                        // From now on, user code is passed a ServerMessage reference (and not
-                        // ServerMessage.Mutable), and we attempt to return immutable data
-                        // structures, even if it is not possible to guard against all cases.
-                        // For example, it is impossible to prevent things like
-                        // ((CustomObject)serverMessage.getData()).change() or
-                        // ((Map)serverMessage.getExt().get("map")).put().
-                        freeze(mutable);
-                        frozen = true;
+            // Call the leaf subscribers
+            Set<ServerSession> subscribers = to.subscribers();
+            if (!subscribers.isEmpty()) {
+                for (ServerSession session : subscribers) {
+                    if (wildSubscribers == null || !wildSubscribers.contains(session)) {
+                        if (!frozen) {
+                            // Exactly at this point, we convert the message to JSON and therefore
+                            // any further modification will be lost.
+                            // This is an optimization so that if the message is sent to a million
+                            // subscribers, we generate the JSON only once.
+                            // From now on, user code is passed a ServerMessage reference (and not
+                            // ServerMessage.Mutable), and we attempt to return immutable data
+                            // structures, even if it is not possible to guard against all cases.
+                            // For example, it is impossible to prevent things like
+                            // ((CustomObject)serverMessage.getData()).change() or
+                            // ((Map)serverMessage.getExt().get("map")).put().
+                            freeze(mutable, to);
+                            frozen = true;
+                        }
+                        ((ServerSessionImpl)session).doDeliver(from, mutable);
+                        ++deliveries;
                     }
-                    ((ServerSessionImpl)session).doDeliver(from, mutable);
                 }
             }
+        } finally {
+            if (wildSubscribers != null) {
+                wildSubscribers.release();
+            }
+        }
+
+        if (broadcast) {
+            to.published(deliveries, System.nanoTime() - begin);
         }
 
         // Meta handlers
@@ -852,12 +955,55 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         }
     }
 
-    private boolean notifyListeners(ServerSessionImpl from, ServerChannelImpl to, Mutable mutable, List<String> wildChannels) {
-        for (int i = 0, size = wildChannels.size(); i <= size; ++i) {
-            ServerChannelImpl channel = i == size ? to : _channels.get(wildChannels.get(i));
-            if (channel == null) {
-                continue;
+    private int countSubscribers(ServerChannelImpl to, List<ServerChannelImpl> wildChannels) {
+        int count = to.subscribers().size();
+        for (int i = 0, size = wildChannels.size(); i < size; ++i) {
+            count += wildChannels.get(i).subscribers().size();
+        }
+        return count;
+    }
+
+    /**
+     * <p>Delivers a broadcast message to its subscribers in parallel.</p>
+     * <p>The subscribers are collected and the message is frozen on the publishing thread,
+     * then the deliveries, including extensions and session listeners, run on the lanes of
+     * the {@link FanOutExecutor}.</p>
+     */
+    private void fanOut(FanOutExecutor fanOut, ServerSessionImpl from, ServerChannelImpl to, Mutable mutable, List<ServerChannelImpl> wildChannels, long begin) {
+        FanOutExecutor.Plan plan = fanOut.newPlan();
+        SessionDedup wildSubscribers = SessionDedup.acquire();
+        try {
+            for (int i = 0, size = wildChannels.size(); i < size; ++i) {
+                for (ServerSession session : wildChannels.get(i).subscribers()) {
+                    if (wildSubscribers.add(session)) {
+                        plan.add(session);
+                    }
+                }
+            }
+            boolean dedup = wildSubscribers.size() > 0;
+            for (ServerSession session : to.subscribers()) {
+                if (!dedup || !wildSubscribers.contains(session)) {
+                    plan.add(session);
+                }
             }
+        } finally {
+            wildSubscribers.release();
+        }
+
+        if (plan.size() > 0) {
+            // The message is read concurrently by the lanes, so it must be frozen before they start.
+            freeze(mutable, to);
+        }
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Fanning out {} to {} subscribers via {}", mutable, plan.size(), fanOut);
+        }
+        int deliveries = plan.size();
+        plan.execute(session -> session.doDeliver(from, mutable), () -> to.published(deliveries, System.nanoTime() - begin));
+    }
+
+    private boolean notifyListeners(ServerSessionImpl from, ServerChannelImpl to, Mutable mutable, List<ServerChannelImpl> wildChannels) {
+        for (int i = 0, size = wildChannels.size(); i <= size; ++i) {
+            ServerChannelImpl channel = i == size ? to : wildChannels.get(i);
             if (channel.isLazy()) {
                 mutable.setLazy(true);
             }
@@ -886,6 +1032,36 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         }
     }
 
+    /**
+     * <p>Freezes a message published to the given channel, recording the time taken to freeze it
+     * and to generate its JSON in the statistics of the channel.</p>
+     */
+    private void freeze(Mutable mutable, ServerChannelImpl to) {
+        if (!(mutable instanceof ServerMessageImpl)) {
+            return;
+        }
+        ServerMessageImpl message = (ServerMessageImpl)mutable;
+        if (message.isFrozen()) {
+            return;
+        }
+        ChannelStatistics statistics = to.getStatistics();
+        boolean weak = message instanceof WeakMessage;
+        if (weak) {
+            // The JSON is generated lazily, by the first transport that writes the message.
+            ((WeakMessage)message).setStatistics(statistics);
+        }
+        long begin = System.nanoTime();
+        freeze(message);
+        long nanos = System.nanoTime() - begin;
+        if (message.isFrozen()) {
+            statistics.frozen(nanos);
+            if (!weak) {
+                // Other messages are generated eagerly, while frozen.
+                statistics.encoded(ChannelStatistics.utf8Length(message.getJSON()), nanos);
+            }
+        }
+    }
+
     public void freeze(Mutable mutable) {
         if (mutable instanceof ServerMessageImpl) {
             ServerMessageImpl message = (ServerMessageImpl)mutable;
@@ -1003,6 +1179,12 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
 
     protected boolean removeServerChannel(ServerChannelImpl channel) {
         if (_channels.remove(channel.getId(), channel)) {
+            _sweepableChannels.remove(channel);
+            _wildChannels.remove(channel);
+            // Re-added concurrently by createChannelIfAbsent(), restore the route possibly removed above.
+            if (_channels.get(channel.getId()) == channel) {
+                _wildChannels.add(channel);
+            }
             if (_logger.isDebugEnabled()) {
                 _logger.debug("Removed channel {}", channel);
             }
@@ -1104,6 +1286,124 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         return _broadcastToPublisher;
     }
 
+    @ManagedAttribute(value = "The compression of the messages above the zip message size threshold", readonly = true)
+    public String getMessageCompression() {
+        return _messageCompression.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    @ManagedAttribute(value = "How the data parsed back from the JSON of messages is cached", readonly = true)
+    public String getDataCachePolicy() {
+        return _dataCachePolicy.name().toLowerCase(Locale.ENGLISH);
+    }
+
+    @ManagedAttribute(value = "How the data of messages is retained once their JSON has been generated", readonly = true)
+    public String getDataRetention() {
+        return _dataRetention.getPolicy().name().toLowerCase(Locale.ENGLISH);
+    }
+
+    @ManagedAttribute(value = "The number of message data reads served without parsing the JSON", readonly = true)
+    public long getRetainedDataReads() {
+        return _dataRetention.getRetainedCount();
+    }
+
+    @ManagedAttribute(value = "The number of message data reads that parsed the data back from the JSON", readonly = true)
+    public long getRegeneratedDataReads() {
+        return _dataRetention.getRegeneratedCount();
+    }
+
+    @ManagedAttribute(value = "The total time, in ms, spent parsing message data back from the JSON", readonly = true)
+    public long getDataRegenerationTime() {
+        return _dataRetention.getRegenerationTime();
+    }
+
+    @ManagedAttribute(value = "The number of message data retained strongly by the timed data retention", readonly = true)
+    public int getTimedRetainedData() {
+        return _dataRetention.getTimedReferenceCount();
+    }
+
+    @ManagedAttribute(value = "The number of subscribers above which broadcasts are delivered in parallel", readonly = true)
+    public long getFanOutThreshold() {
+        return _fanOutThreshold;
+    }
+
+    @ManagedOperation(value = "The publish count and average/max latency in milliseconds of the given channel", impact = "INFO")
+    public String getPublishLatency(@Name("channel") String channelName) {
+        ServerChannelImpl channel = _channels.get(channelName);
+        if (channel == null) {
+            return null;
+        }
+        return String.format("publishes: %d, latency avg/max: %.3f/%.3f ms",
+                channel.getPublishCount(), channel.getAveragePublishLatency(), channel.getMaxPublishLatency());
+    }
+
+    @ManagedOperation(value = "The publish, delivery, fan-out, freeze and encoding statistics of the given channel", impact = "INFO")
+    public String getChannelStatistics(@Name("channel") String channelName) {
+        ServerChannelImpl channel = _channels.get(channelName);
+        return channel == null ? null : channel.getStatistics().toString();
+    }
+
+    @ManagedOperation(value = "The statistics of the given number of channels with the most deliveries per second", impact = "INFO")
+    public String[] getHottestChannels(@Name("count") int count) {
+        // The rates are sampled before sorting, so that they do not change while sorting.
+        List<Map.Entry<ServerChannelImpl, Double>> rates = new ArrayList<>(_channels.size());
+        for (ServerChannelImpl channel : _channels.values()) {
+            ChannelStatistics statistics = channel.getStatistics();
+            if (statistics.getPublishes() > 0) {
+                rates.add(new AbstractMap.SimpleImmutableEntry<>(channel, statistics.getDeliveryRate()));
+            }
+        }
+        rates.sort(Map.Entry.<ServerChannelImpl, Double>comparingByValue().reversed());
+        return rates.stream()
+                .limit(Math.max(0, count))
+                .map(entry -> entry.getKey().getId() + ": " + entry.getKey().getStatistics())
+                .toArray(String[]::new);
+    }
+
+    @ManagedAttribute(value = "The number of messages published to all the channels", readonly = true)
+    public long getPublishedMessages() {
+        long result = 0;
+        for (ServerChannelImpl channel : _channels.values()) {
+            result += channel.getStatistics().getPublishes();
+        }
+        return result;
+    }
+
+    @ManagedAttribute(value = "The number of deliveries of the messages published to all the channels", readonly = true)
+    public long getDeliveredMessages() {
+        long result = 0;
+        for (ServerChannelImpl channel : _channels.values()) {
+            result += channel.getStatistics().getDeliveries();
+        }
+        return result;
+    }
+
+    @ManagedAttribute(value = "The number of bytes of the JSON generated for the messages published to all the channels", readonly = true)
+    public long getEncodedBytes() {
+        long result = 0;
+        for (ServerChannelImpl channel : _channels.values()) {
+            result += channel.getStatistics().getEncodedBytes();
+        }
+        return result;
+    }
+
+    void messagesDropped(int count) {
+        _droppedMessages.add(count);
+    }
+
+    void overflowDisconnected() {
+        _overflowDisconnects.increment();
+    }
+
+    @ManagedAttribute(value = "The number of messages dropped by session queue overflow policies", readonly = true)
+    public long getDroppedMessages() {
+        return _droppedMessages.sum();
+    }
+
+    @ManagedAttribute(value = "The number of sessions disconnected because their queue overflowed", readonly = true)
+    public long getOverflowDisconnects() {
+        return _overflowDisconnects.sum();
+    }
+
     protected void unknownSession(Mutable message, Mutable reply) {
         error(reply, "402::Unknown client");
         if (Channel.META_HANDSHAKE.equals(reply.getChannel()) || Channel.META_CONNECT.equals(reply.getChannel())) {
@@ -1141,10 +1441,75 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         return reply;
     }
 
+    /**
+     * <p>Registers the given session to be swept when its current deadline expires.</p>
+     *
+     * @param session the session whose interval timestamps changed
+     */
+    void scheduleSweep(ServerSessionImpl session) {
+        SessionSweeper sweeper = _sessionSweeper;
+        if (sweeper != null) {
+            sweeper.register(session);
+        }
+    }
+
+    /**
+     * <p>Marks the given channel as possibly removable, so that the periodic sweep visits it.</p>
+     *
+     * @param channel the channel that may have become sweepable
+     */
+    void channelSweepable(ServerChannelImpl channel) {
+        if (channel.isSweepable()) {
+            _sweepableChannels.add(channel);
+        }
+    }
+
+    /**
+     * <p>The periodic sweep: only visits the channels that are sweepable and the sessions
+     * whose deadline has expired, falling back to a full {@link #sweep()} every number of
+     * periods configured by {@link #FULL_SWEEP_PERIODS_OPTION}.</p>
+     */
+    protected void sweepDue() {
+        _dataRetention.sweep();
+        SessionSweeper sessionSweeper = _sessionSweeper;
+        if (sessionSweeper == null || (_fullSweepPeriods > 0 && ++_sweeps % _fullSweepPeriods == 0)) {
+            sweep();
+            return;
+        }
+
+        for (Iterator<ServerChannelImpl> iterator = _sweepableChannels.iterator(); iterator.hasNext(); ) {
+            ServerChannelImpl channel = iterator.next();
+            channel.sweep();
+            if (!channel.isSweepable()) {
+                iterator.remove();
+                // Could have become sweepable concurrently, after the check above.
+                channelSweepable(channel);
+            }
+        }
+
+        for (ServerTransport transport : _transports.values()) {
+            if (transport instanceof AbstractServerTransport) {
+                ((AbstractServerTransport)transport).sweep();
+            }
+        }
+
+        int visited = sessionSweeper.sweep(System.currentTimeMillis(), (session, now) -> {
+            if (_sessions.get(session.getId()) != session) {
+                return false;
+            }
+            session.sweep(now);
+            return _sessions.get(session.getId()) == session;
+        });
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Swept {} sessions, {} channels sweepable", visited, _sweepableChannels.size());
+        }
+    }
+
     @ManagedOperation(value = "Sweeps channels and sessions of this BayeuxServer", impact = "ACTION")
     public void sweep() {
         for (ServerChannelImpl channel : _channels.values()) {
             channel.sweep();
+            channelSweepable(channel);
         }
 
         for (ServerTransport transport : _transports.values()) {
@@ -1156,6 +1521,7 @@ public class BayeuxServerImpl extends AbstractLifeCycle implements BayeuxServer,
         long now = System.currentTimeMillis();
         for (ServerSessionImpl session : _sessions.values()) {
             session.sweep(now);
+            scheduleSweep(session);
         }
     }
 
@@ -0,0 +1,46 @@
+package org.cometd.server;
+
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.compress.zstd.ZstdCompressor;
+import io.airlift.compress.zstd.ZstdDecompressor;
+
+import java.util.function.Supplier;
+
+/**
+ * <p>The aircompressor block codecs of {@link MessageCompression#LZ4} and {@link MessageCompression#ZSTD}.</p>
+ * <p>This is the only class referencing aircompressor, that is an optional dependency: it is loaded
+ * the first time one of these compressions is used, so that gzip works without aircompressor.</p>
+ */
+final class BlockCodec {
+    // Compressors and decompressors keep per instance tables and buffers, they are not thread safe.
+    private final ThreadLocal<Compressor> compressor;
+    private final ThreadLocal<Decompressor> decompressor;
+
+    private BlockCodec(Supplier<Compressor> compressor, Supplier<Decompressor> decompressor) {
+        this.compressor = ThreadLocal.withInitial(compressor);
+        this.decompressor = ThreadLocal.withInitial(decompressor);
+    }
+
+    static BlockCodec lz4() {
+        return new BlockCodec(Lz4Compressor::new, Lz4Decompressor::new);
+    }
+
+    static BlockCodec zstd() {
+        return new BlockCodec(ZstdCompressor::new, ZstdDecompressor::new);
+    }
+
+    int maxCompressedLength(int length) {
+        return compressor.get().maxCompressedLength(length);
+    }
+
+    int compress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        return compressor.get().compress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+    }
+
+    int decompress(byte[] input, int inputOffset, int inputLength, byte[] output, int outputOffset, int maxOutputLength) {
+        return decompressor.get().decompress(input, inputOffset, inputLength, output, outputOffset, maxOutputLength);
+    }
+}
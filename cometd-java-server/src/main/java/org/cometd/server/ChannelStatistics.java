@@ -0,0 +1,196 @@
+package org.cometd.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Live publish and delivery statistics of a {@link ServerChannelImpl}.</p>
+ * <p>The publish path only increments striped counters, so that concurrent publishers to the
+ * same channel do not contend; the rates are computed when they are read, over the time elapsed
+ * since the previous sample, and a new sample is taken at most once per second.</p>
+ */
+public final class ChannelStatistics {
+    private static final long SAMPLE_PERIOD = TimeUnit.SECONDS.toNanos(1);
+
+    private final LongAdder _publishes = new LongAdder();
+    private final LongAdder _deliveries = new LongAdder();
+    private final LongAdder _publishNanos = new LongAdder();
+    private final AtomicLong _maxPublishNanos = new AtomicLong();
+    private final Histogram _fanOut = new Histogram();
+    private final LongAdder _freezes = new LongAdder();
+    private final LongAdder _freezeNanos = new LongAdder();
+    private final LongAdder _encodes = new LongAdder();
+    private final LongAdder _encodeNanos = new LongAdder();
+    private final LongAdder _encodedBytes = new LongAdder();
+    private final Rate _publishRate = new Rate();
+    private final Rate _deliveryRate = new Rate();
+
+    /**
+     * Records a message published to the channel.
+     *
+     * @param deliveries the number of sessions the message was delivered to
+     * @param nanos      the time taken to deliver the message to all the sessions
+     */
+    void published(int deliveries, long nanos) {
+        _publishes.increment();
+        _deliveries.add(deliveries);
+        _fanOut.record(deliveries);
+        _publishNanos.add(nanos);
+        if (nanos > _maxPublishNanos.get()) {
+            _maxPublishNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    /**
+     * @param nanos the time taken to freeze a message published to the channel
+     */
+    void frozen(long nanos) {
+        _freezes.increment();
+        _freezeNanos.add(nanos);
+    }
+
+    /**
+     * @param bytes the number of UTF-8 bytes of the JSON of a message published to the channel
+     * @param nanos the time taken to generate the JSON
+     */
+    void encoded(long bytes, long nanos) {
+        _encodes.increment();
+        _encodeNanos.add(nanos);
+        _encodedBytes.add(bytes);
+    }
+
+    /**
+     * @return the number of messages published to the channel
+     */
+    public long getPublishes() {
+        return _publishes.sum();
+    }
+
+    /**
+     * @return the number of deliveries of the messages published to the channel
+     */
+    public long getDeliveries() {
+        return _deliveries.sum();
+    }
+
+    /**
+     * @return the number of messages published per second since the previous sample
+     */
+    public double getPublishRate() {
+        return _publishRate.sample(_publishes.sum());
+    }
+
+    /**
+     * @return the number of deliveries per second since the previous sample
+     */
+    public double getDeliveryRate() {
+        return _deliveryRate.sample(_deliveries.sum());
+    }
+
+    /**
+     * @return the histogram of the number of sessions each message was delivered to
+     */
+    public Histogram getFanOut() {
+        return _fanOut;
+    }
+
+    /**
+     * @return the average time, in milliseconds, taken to deliver a message to all the sessions
+     */
+    public double getAveragePublishLatency() {
+        long count = _publishes.sum();
+        return count == 0 ? 0 : _publishNanos.sum() / (double)count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, taken to deliver a message to all the sessions
+     */
+    public double getMaxPublishLatency() {
+        return _maxPublishNanos.get() / (double)TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the average time, in microseconds, taken to freeze a message
+     */
+    public double getAverageFreezeTime() {
+        long count = _freezes.sum();
+        return count == 0 ? 0 : _freezeNanos.sum() / (double)count / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the number of messages whose JSON has been generated
+     */
+    public long getEncodes() {
+        return _encodes.sum();
+    }
+
+    /**
+     * @return the average time, in microseconds, taken to generate the JSON of a message
+     */
+    public double getAverageEncodeTime() {
+        long count = _encodes.sum();
+        return count == 0 ? 0 : _encodeNanos.sum() / (double)count / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    /**
+     * @return the total number of UTF-8 bytes of the JSON generated for the messages
+     */
+    public long getEncodedBytes() {
+        return _encodedBytes.sum();
+    }
+
+    /**
+     * @param json the JSON of a message
+     * @return the number of bytes of the given JSON encoded in UTF-8
+     */
+    public static long utf8Length(CharSequence json) {
+        int length = json.length();
+        long result = length;
+        for (int i = 0; i < length; ++i) {
+            char c = json.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    ++result;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(json.charAt(i + 1))) {
+                    // 4 bytes for 2 chars.
+                    result += 2;
+                    ++i;
+                } else {
+                    result += 2;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("publishes: %d (%.1f/s), deliveries: %d (%.1f/s), fan-out mean/p99/max: %.1f/%d/%d, " +
+                        "latency avg/max: %.3f/%.3f ms, freeze avg: %.1f us, encodes: %d, encode avg: %.1f us, encoded: %d bytes",
+                getPublishes(), getPublishRate(), getDeliveries(), getDeliveryRate(),
+                _fanOut.getMean(), _fanOut.getPercentile(0.99), _fanOut.getMax(),
+                getAveragePublishLatency(), getMaxPublishLatency(), getAverageFreezeTime(),
+                getEncodes(), getAverageEncodeTime(), getEncodedBytes());
+    }
+
+    /**
+     * The rate of a counter, sampled when it is read.
+     */
+    private static class Rate {
+        private long _sampleNanos = System.nanoTime();
+        private long _sampleCount;
+        private double _rate;
+
+        private synchronized double sample(long count) {
+            long now = System.nanoTime();
+            long elapsed = now - _sampleNanos;
+            if (elapsed >= SAMPLE_PERIOD) {
+                _rate = (count - _sampleCount) * (double)TimeUnit.SECONDS.toNanos(1) / elapsed;
+                _sampleNanos = now;
+                _sampleCount = count;
+            }
+            return _rate;
+        }
+    }
+}
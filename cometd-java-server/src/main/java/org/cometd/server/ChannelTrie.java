@@ -0,0 +1,148 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.ChannelId;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Routing trie of the wildcard channels ({@code /*} and {@code /**}) of a {@link BayeuxServerImpl}.</p>
+ * <p>Each node is a channel segment and holds the {@code *} and {@code **} channels whose
+ * parent is the path to that node. Resolving the wildcard channels matching a channel walks
+ * the segments of the channel once and stops as soon as no wildcard channel exists further
+ * down the path, so that publishing to one of millions of {@code /{type}/{deviceId}} channels
+ * only costs the lookups of the segments that actually have wildcard subscriptions, instead of
+ * one {@code ConcurrentMap} lookup per {@link ChannelId#getWilds() wild name}.</p>
+ * <p>Lookups are lock free; updates are serialized, they only happen when wildcard channels
+ * are created or removed.</p>
+ */
+class ChannelTrie {
+    private final Node _root = new Node();
+
+    /**
+     * @param channel the channel to add, ignored if not a wildcard channel
+     */
+    void add(ServerChannelImpl channel) {
+        ChannelId id = channel.getChannelId();
+        if (!id.isWild()) {
+            return;
+        }
+        synchronized (_root) {
+            Node node = _root;
+            for (int i = 0, depth = id.depth() - 1; i < depth; ++i) {
+                node = node._children.computeIfAbsent(id.getSegment(i), segment -> new Node());
+            }
+            if (id.isDeepWild()) {
+                node._deepWild = channel;
+            } else {
+                node._wild = channel;
+            }
+        }
+    }
+
+    /**
+     * @param channel the channel to remove, ignored if not a wildcard channel or if replaced by another instance
+     */
+    void remove(ServerChannelImpl channel) {
+        ChannelId id = channel.getChannelId();
+        if (!id.isWild()) {
+            return;
+        }
+        synchronized (_root) {
+            int depth = id.depth() - 1;
+            Node[] path = new Node[depth + 1];
+            Node node = path[0] = _root;
+            for (int i = 0; i < depth; ++i) {
+                node = node._children.get(id.getSegment(i));
+                if (node == null) {
+                    return;
+                }
+                path[i + 1] = node;
+            }
+            if (id.isDeepWild()) {
+                if (node._deepWild == channel) {
+                    node._deepWild = null;
+                }
+            } else if (node._wild == channel) {
+                node._wild = null;
+            }
+            // Prune the nodes left empty, bottom up.
+            for (int i = depth; i > 0 && path[i].isEmpty(); --i) {
+                path[i - 1]._children.remove(id.getSegment(i - 1), path[i]);
+            }
+        }
+    }
+
+    /**
+     * @return whether no wildcard channel is routed by this trie
+     */
+    boolean isEmpty() {
+        return _root.isEmpty();
+    }
+
+    void clear() {
+        synchronized (_root) {
+            _root._children.clear();
+            _root._wild = null;
+            _root._deepWild = null;
+        }
+    }
+
+    /**
+     * <p>Resolves the wildcard channels matching the given channel, in the same order as
+     * {@link ChannelId#getWilds()}, that is from the most specific to the least specific.</p>
+     *
+     * @param id the id of the channel
+     * @return the matching wildcard channels, an immutable empty list if there are none or if the channel is itself a wildcard
+     */
+    List<ServerChannelImpl> match(ChannelId id) {
+        int depth = id.depth();
+        if (depth == 0 || id.isWild()) {
+            return Collections.emptyList();
+        }
+        List<ServerChannelImpl> result = match(_root, id, 0, depth, null);
+        return result == null ? Collections.<ServerChannelImpl>emptyList() : result;
+    }
+
+    private List<ServerChannelImpl> match(Node node, ChannelId id, int index, int depth, List<ServerChannelImpl> result) {
+        // The node is reached after consuming the first index segments of the channel.
+        if (index < depth - 1) {
+            Node child = node._children.get(id.getSegment(index));
+            if (child != null) {
+                result = match(child, id, index + 1, depth, result);
+            }
+        } else {
+            ServerChannelImpl wild = node._wild;
+            if (wild != null) {
+                result = add(result, wild);
+            }
+        }
+        // Deeper ** channels are more specific, so they were added while unwinding first.
+        ServerChannelImpl deepWild = node._deepWild;
+        if (deepWild != null) {
+            result = add(result, deepWild);
+        }
+        return result;
+    }
+
+    private static List<ServerChannelImpl> add(List<ServerChannelImpl> result, ServerChannelImpl channel) {
+        if (result == null) {
+            result = new ArrayList<>(2);
+        }
+        result.add(channel);
+        return result;
+    }
+
+    private static class Node {
+        private final ConcurrentMap<String, Node> _children = new ConcurrentHashMap<>();
+        private volatile ServerChannelImpl _wild;
+        private volatile ServerChannelImpl _deepWild;
+
+        private boolean isEmpty() {
+            return _wild == null && _deepWild == null && _children.isEmpty();
+        }
+    }
+}
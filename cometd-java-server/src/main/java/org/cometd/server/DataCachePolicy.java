@@ -0,0 +1,56 @@
+package org.cometd.server;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+
+/**
+ * <p>How a {@link WeakMessage} caches the data it parses back from its JSON, once its original data
+ * has been collected.</p>
+ * <p>{@link #SOFT} is the default: the parsed data is kept until the heap runs short, so that the
+ * subscribers reading the data of the same message do not parse it again each. {@link #WEAK} keeps it
+ * until the next collection, {@link #NONE} parses the JSON on every read.</p>
+ * <p>The policy is configured with the {@link BayeuxServerImpl#DATA_CACHE_POLICY_OPTION} option,
+ * using the lower case policy name (e.g. {@code weak}).</p>
+ */
+public enum DataCachePolicy {
+    NONE {
+        @Override
+        Reference<Object> newReference(Object data) {
+            return null;
+        }
+    },
+    WEAK {
+        @Override
+        Reference<Object> newReference(Object data) {
+            return new WeakReference<>(data);
+        }
+    },
+    SOFT {
+        @Override
+        Reference<Object> newReference(Object data) {
+            return new SoftReference<>(data);
+        }
+    };
+
+    /**
+     * @param data the parsed data
+     * @return the reference caching the data, or null if the data is not cached
+     */
+    abstract Reference<Object> newReference(Object data);
+
+    public static DataCachePolicy from(Object value) {
+        if (value == null) {
+            return SOFT;
+        }
+        if (value instanceof DataCachePolicy) {
+            return (DataCachePolicy)value;
+        }
+        String name = value.toString().trim();
+        if (name.isEmpty()) {
+            return SOFT;
+        }
+        return valueOf(name.toUpperCase(Locale.ENGLISH));
+    }
+}
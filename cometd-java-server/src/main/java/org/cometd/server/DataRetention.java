@@ -0,0 +1,168 @@
+package org.cometd.server;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>How a frozen {@link WeakMessage} retains its data once its JSON has been generated, and how often
+ * the data had to be parsed back from the JSON because it was not retained.</p>
+ * <ul>
+ * <li>{@link Policy#WEAK}, the default, retains the data until the next collection;</li>
+ * <li>{@link Policy#SOFT} retains it until the heap runs short;</li>
+ * <li>{@link Policy#TIMED} retains it strongly for a period after the JSON has been generated, then weakly;</li>
+ * <li>{@link Policy#SIZE} retains it strongly when its JSON is not larger than a threshold, otherwise weakly.</li>
+ * </ul>
+ * <p>The timed references are released by {@link #sweep()}, called by the periodic sweep of the
+ * {@link BayeuxServerImpl}, so the strong retention may outlast its period by up to a sweep period.</p>
+ */
+public class DataRetention {
+    /**
+     * Retains the data weakly, for the messages not created by a {@link BayeuxServerImpl}.
+     */
+    static final DataRetention DEFAULT = new DataRetention(Policy.WEAK, 0, 0);
+
+    private final Queue<TimedReference> _timedReferences = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _timedReferenceCount = new AtomicInteger();
+    private final LongAdder _retained = new LongAdder();
+    private final LongAdder _regenerated = new LongAdder();
+    private final LongAdder _regenerationNanos = new LongAdder();
+    private final Policy _policy;
+    private final long _retentionNanos;
+    private final int _retentionSize;
+
+    /**
+     * @param policy          the retention policy
+     * @param retentionMillis the period of strong retention of the {@link Policy#TIMED} policy
+     * @param retentionSize   the JSON size up to which the {@link Policy#SIZE} policy retains strongly
+     */
+    public DataRetention(Policy policy, long retentionMillis, int retentionSize) {
+        _policy = policy;
+        _retentionNanos = TimeUnit.MILLISECONDS.toNanos(retentionMillis);
+        _retentionSize = retentionSize;
+    }
+
+    /**
+     * @param data the data to retain
+     * @param size the size of the JSON of the message
+     * @return the data itself when retained strongly, otherwise a {@link Reference} to it
+     */
+    Object retain(Object data, int size) {
+        switch (_policy) {
+            case SOFT:
+                return new SoftReference<>(data);
+            case TIMED:
+                TimedReference reference = new TimedReference(data, System.nanoTime() + _retentionNanos);
+                _timedReferences.offer(reference);
+                _timedReferenceCount.incrementAndGet();
+                return reference;
+            case SIZE:
+                return size <= _retentionSize ? data : new WeakReference<>(data);
+            default:
+                return new WeakReference<>(data);
+        }
+    }
+
+    /**
+     * Releases the timed references whose period of strong retention has elapsed; called by a single thread.
+     */
+    void sweep() {
+        long now = System.nanoTime();
+        while (true) {
+            TimedReference reference = _timedReferences.peek();
+            // References are queued in deadline order.
+            if (reference == null || reference.deadline - now > 0) {
+                return;
+            }
+            _timedReferences.poll();
+            _timedReferenceCount.decrementAndGet();
+            reference.release();
+        }
+    }
+
+    void retained() {
+        _retained.increment();
+    }
+
+    void regenerated(long nanos) {
+        _regenerated.increment();
+        _regenerationNanos.add(nanos);
+    }
+
+    public Policy getPolicy() {
+        return _policy;
+    }
+
+    /**
+     * @return the number of data reads served by the retained data, or by the cache of the parsed data
+     */
+    public long getRetainedCount() {
+        return _retained.sum();
+    }
+
+    /**
+     * @return the number of data reads that parsed the data back from the JSON
+     */
+    public long getRegeneratedCount() {
+        return _regenerated.sum();
+    }
+
+    /**
+     * @return the total time spent parsing the data back from the JSON, in milliseconds
+     */
+    public long getRegenerationTime() {
+        return TimeUnit.NANOSECONDS.toMillis(_regenerationNanos.sum());
+    }
+
+    /**
+     * @return the number of timed references still retaining their data strongly
+     */
+    public int getTimedReferenceCount() {
+        return _timedReferenceCount.get();
+    }
+
+    public enum Policy {
+        WEAK, SOFT, TIMED, SIZE;
+
+        public static Policy from(Object value) {
+            if (value == null) {
+                return WEAK;
+            }
+            if (value instanceof Policy) {
+                return (Policy)value;
+            }
+            String name = value.toString().trim();
+            if (name.isEmpty()) {
+                return WEAK;
+            }
+            return valueOf(name.toUpperCase(Locale.ENGLISH));
+        }
+    }
+
+    private static class TimedReference extends WeakReference<Object> {
+        private final long deadline;
+        private volatile Object strong;
+
+        private TimedReference(Object data, long deadline) {
+            super(data);
+            this.deadline = deadline;
+            this.strong = data;
+        }
+
+        @Override
+        public Object get() {
+            Object data = strong;
+            return data != null ? data : super.get();
+        }
+
+        private void release() {
+            strong = null;
+        }
+    }
+}
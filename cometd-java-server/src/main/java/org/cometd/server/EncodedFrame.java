@@ -0,0 +1,200 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The encoded form of a frozen {@link WeakMessage}, shared by every session the message
+ * is delivered to.</p>
+ * <p>The JSON bytes are produced once per publish instead of once per subscriber: for zipped
+ * messages the payload is inflated the first time a transport asks for it and the result is
+ * kept for as long as at least one session queue still references the frame. Each queued
+ * copy of the message owns one reference, that is {@link #retain() retained} when the message
+ * is enqueued and {@link #release() released} by the transport once the message is written.
+ * When the last reference is released the decoded form is dropped, so that only the
+ * compressed raw data of the message stays in memory.</p>
+ * <p>The arrays and strings returned by this class are shared and must not be modified.</p>
+ */
+public final class EncodedFrame {
+    private final WeakMessage message;
+    private volatile WeakMessage.MessageFormat format;
+    private final AtomicInteger references = new AtomicInteger();
+    private volatile byte[] bytes;
+    private volatile String json;
+    private volatile String textFrame;
+    private volatile int textFrameLength = -1;
+
+    EncodedFrame(WeakMessage message) {
+        this.message = message;
+    }
+
+    /**
+     * @param message the message to get the frame of
+     * @return the shared frame of the given message, or {@code null} if the message is not a frozen {@link WeakMessage}
+     */
+    public static EncodedFrame of(ServerMessage message) {
+        if (message instanceof WeakMessage) {
+            return ((WeakMessage) message).getEncodedFrame();
+        }
+        return null;
+    }
+
+    /**
+     * Releases the frames of the given messages, typically after they have been written by a transport.
+     *
+     * @param messages the messages whose frames should be released
+     */
+    public static void release(Collection<? extends ServerMessage> messages) {
+        for (ServerMessage message : messages) {
+            EncodedFrame frame = of(message);
+            if (frame != null) {
+                frame.release();
+            }
+        }
+    }
+
+    /**
+     * @return the UTF-8 JSON bytes of the message
+     */
+    public byte[] getBytes() {
+        byte[] result = bytes;
+        if (result == null) {
+            result = format().getJSONBytes();
+            if (isCacheable()) {
+                bytes = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the JSON of the message
+     */
+    public String getJSON() {
+        String result = json;
+        if (result == null) {
+            result = format().getJSON();
+            if (isCacheable()) {
+                json = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the JSON of the message wrapped in a JSON array, ready to be sent as a WebSocket text frame
+     */
+    public String getTextFrame() {
+        String result = textFrame;
+        if (result == null) {
+            result = "[" + getJSON() + "]";
+            if (references.get() > 0) {
+                textFrame = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * <p>The length is computed once and kept for the lifetime of the frame, so that it is not
+     * computed again for each session the frame is written to.</p>
+     *
+     * @return the number of UTF-8 bytes of {@link #getTextFrame()}
+     */
+    public int getTextFrameLength() {
+        int result = textFrameLength;
+        if (result < 0) {
+            byte[] cached = bytes;
+            if (!format().isCompressed()) {
+                cached = format().getJSONBytes();
+            }
+            // The 2 brackets of the JSON array.
+            result = (cached != null ? cached.length : (int)ChannelStatistics.utf8Length(getJSON())) + 2;
+            textFrameLength = result;
+        }
+        return result;
+    }
+
+    /**
+     * <p>Whether writing this frame through {@link #openStream(int)} avoids materializing the
+     * decompressed message, that is when the message is stored compressed and its decompressed
+     * bytes are neither cached nor worth caching because no other session shares this frame.</p>
+     *
+     * @return whether this frame should be streamed rather than written with {@link #getBytes()}
+     */
+    public boolean isStreamable() {
+        return format().isCompressed() && bytes == null && references.get() <= 1;
+    }
+
+    /**
+     * @param bufferSize the size of the input buffer of incremental decompression
+     * @return a stream of the UTF-8 JSON bytes of the message, the cached bytes if available
+     * @throws IOException if the stream cannot be created
+     */
+    public InputStream openStream(int bufferSize) throws IOException {
+        byte[] result = bytes;
+        if (result != null) {
+            return new ByteArrayInputStream(result);
+        }
+        return format().openStream(bufferSize);
+    }
+
+    /**
+     * @return whether the underlying message is stored compressed
+     */
+    public boolean isCompressed() {
+        return format().isCompressed();
+    }
+
+    public EncodedFrame retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    /**
+     * @return true if this call released the last reference to this frame
+     */
+    public boolean release() {
+        int count = references.updateAndGet(value -> value > 0 ? value - 1 : 0);
+        if (count == 0) {
+            textFrame = null;
+            // Nothing decoded was cached if the message has not been serialized yet.
+            WeakMessage.MessageFormat current = format;
+            if (current != null && current.isCompressed()) {
+                bytes = null;
+                json = null;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public int getReferences() {
+        return references.get();
+    }
+
+    private WeakMessage.MessageFormat format() {
+        // Resolved on first use, so that queueing the message does not serialize it.
+        WeakMessage.MessageFormat result = format;
+        if (result == null) {
+            result = message.getMessageFormat();
+            format = result;
+        }
+        return result;
+    }
+
+    private boolean isCacheable() {
+        // Uncompressed messages already hold their JSON, only the inflated form needs caching.
+        return format().isCompressed() && references.get() > 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[references=%d,compressed=%b]", getClass().getSimpleName(), hashCode(), references.get(), format != null && format.isCompressed());
+    }
+}
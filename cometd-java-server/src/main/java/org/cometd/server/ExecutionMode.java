@@ -0,0 +1,53 @@
+package org.cometd.server;
+
+import java.util.Locale;
+
+/**
+ * <p>Which threads the transports run Bayeux message handling, extension chains and the resume of
+ * suspended {@code /meta/connect} on.</p>
+ * <p>The mode is configured with the {@link #OPTION} transport option, using the lower case mode
+ * name (e.g. {@code virtual}); the number of tasks running at once is capped by the
+ * {@link #MAX_CONCURRENCY_OPTION} option rather than by the size of a thread pool.</p>
+ * <p>The blocking {@code JSONTransport} and {@code JSONPTransport} still parse and process the
+ * messages of a request on the container thread, only the resume of their suspended
+ * {@code /meta/connect} runs on the executor.</p>
+ */
+public enum ExecutionMode {
+    /**
+     * Messages are handled on the threads of the container, as they are delivered to the transport.
+     */
+    PLATFORM,
+    /**
+     * Messages are handled on virtual threads, falling back to a pool of at most
+     * {@link #MAX_CONCURRENCY_OPTION} platform threads when the JVM does not support virtual threads.
+     * Blocking extensions then do not hold a container thread.
+     */
+    VIRTUAL;
+
+    public static final String OPTION = "executionMode";
+    /**
+     * Maximum number of tasks of a transport running at once in the {@link #VIRTUAL} mode,
+     * {@link #DEFAULT_MAX_CONCURRENCY} by default.
+     */
+    public static final String MAX_CONCURRENCY_OPTION = "maxConcurrency";
+    public static final int DEFAULT_MAX_CONCURRENCY = 200;
+
+    /**
+     * @param value the mode name, such as {@code virtual}, or null
+     * @return the mode with the given name, {@link #PLATFORM} if the value is null or empty
+     * @throws IllegalArgumentException if the value is not a valid mode name
+     */
+    public static ExecutionMode from(Object value) {
+        if (value == null) {
+            return PLATFORM;
+        }
+        if (value instanceof ExecutionMode) {
+            return (ExecutionMode)value;
+        }
+        String name = value.toString().trim();
+        if (name.isEmpty()) {
+            return PLATFORM;
+        }
+        return valueOf(name.toUpperCase(Locale.ENGLISH));
+    }
+}
@@ -0,0 +1,205 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerSession;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Delivers a published message to a large number of sessions in parallel.</p>
+ * <p>Sessions are partitioned into a fixed number of lanes by the hash of their id, and each
+ * lane executes its deliveries serially and in submission order on a {@link ForkJoinPool}.
+ * Since a session always maps to the same lane, the messages published to it are delivered
+ * in the same order they were published, while different lanes deliver concurrently.</p>
+ * <p>Only publishes that reach the fan-out threshold go through the lanes; smaller ones are
+ * delivered on the publishing thread, and may therefore reach a session before a large publish
+ * that is still in flight in the lanes.</p>
+ * <p>Deliveries submitted once the executor is stopped are performed on the submitting thread.</p>
+ */
+public class FanOutExecutor extends AbstractLifeCycle {
+    private static final Logger _logger = LoggerFactory.getLogger(FanOutExecutor.class);
+
+    private final int _parallelism;
+    private final Lane[] _lanes;
+    private final AtomicInteger _pending = new AtomicInteger();
+    private ForkJoinPool _pool;
+
+    public FanOutExecutor(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Invalid parallelism: " + parallelism);
+        }
+        _parallelism = parallelism;
+        // More lanes than threads, so that a slow session only holds back a small share of the others.
+        _lanes = new Lane[parallelism * 4];
+        for (int i = 0; i < _lanes.length; ++i) {
+            _lanes[i] = new Lane();
+        }
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        _pool = new ForkJoinPool(_parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("BayeuxServer-FanOut-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, true);
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        ForkJoinPool pool = _pool;
+        if (pool != null) {
+            pool.shutdown();
+            if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    public int getParallelism() {
+        return _parallelism;
+    }
+
+    /**
+     * @return a new, empty plan that partitions sessions into the lanes of this executor
+     */
+    public Plan newPlan() {
+        return new Plan();
+    }
+
+    private int laneOf(ServerSession session) {
+        int hash = session.getId().hashCode();
+        hash ^= hash >>> 16;
+        return (hash & 0x7F_FF_FF_FF) % _lanes.length;
+    }
+
+    /**
+     * <p>The sessions a message must be delivered to, grouped by lane.</p>
+     */
+    public class Plan {
+        private final List<ServerSession>[] _sessions;
+        private int _size;
+
+        private Plan() {
+            @SuppressWarnings("unchecked")
+            List<ServerSession>[] sessions = (List<ServerSession>[])new List<?>[_lanes.length];
+            _sessions = sessions;
+        }
+
+        public void add(ServerSession session) {
+            int lane = laneOf(session);
+            List<ServerSession> sessions = _sessions[lane];
+            if (sessions == null) {
+                _sessions[lane] = sessions = new ArrayList<>();
+            }
+            sessions.add(session);
+            ++_size;
+        }
+
+        public int size() {
+            return _size;
+        }
+
+        /**
+         * <p>Executes the given delivery for every session of this plan.</p>
+         *
+         * @param delivery   the delivery to perform for each session
+         * @param onComplete invoked once all the deliveries have been performed
+         */
+        public void execute(Delivery delivery, Runnable onComplete) {
+            int lanes = 0;
+            for (List<ServerSession> sessions : _sessions) {
+                if (sessions != null) {
+                    ++lanes;
+                }
+            }
+            if (lanes == 0) {
+                onComplete.run();
+                return;
+            }
+            AtomicInteger remaining = new AtomicInteger(lanes);
+            for (int i = 0; i < _sessions.length; ++i) {
+                List<ServerSession> sessions = _sessions[i];
+                if (sessions == null) {
+                    continue;
+                }
+                _lanes[i].submit(() -> {
+                    for (ServerSession session : sessions) {
+                        try {
+                            delivery.deliver((ServerSessionImpl)session);
+                        } catch (Throwable x) {
+                            _logger.info("Exception while delivering to " + session, x);
+                        }
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        onComplete.run();
+                    }
+                });
+            }
+        }
+    }
+
+    public interface Delivery {
+        void deliver(ServerSessionImpl session);
+    }
+
+    private class Lane implements Runnable {
+        private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean _running = new AtomicBoolean();
+
+        private void submit(Runnable task) {
+            _pending.incrementAndGet();
+            _tasks.offer(task);
+            if (_running.compareAndSet(false, true)) {
+                try {
+                    _pool.execute(this);
+                } catch (RejectedExecutionException x) {
+                    _logger.debug("Fan-out pool rejected lane, delivering inline", x);
+                    // Drains the tasks of this lane, then resets the running flag.
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task = _tasks.poll();
+                if (task == null) {
+                    _running.set(false);
+                    // Re-check, a task may have been submitted after the poll but before the flag was reset.
+                    if (_tasks.isEmpty() || !_running.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Throwable x) {
+                    _logger.info("Exception while running fan-out task " + task, x);
+                } finally {
+                    _pending.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[parallelism=%d,lanes=%d,pending=%d]", getClass().getSimpleName(), hashCode(), _parallelism, _lanes.length, _pending.get());
+    }
+}
@@ -0,0 +1,87 @@
+package org.cometd.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lock free histogram of non negative values, with a bucket per power of two.</p>
+ * <p>Recording a value only increments striped counters, so that it can be left on in hot paths;
+ * in exchange, the percentiles are approximated by the upper bound of their bucket, that is
+ * within a factor of two of the exact value.</p>
+ */
+public final class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] _buckets = new LongAdder[BUCKETS];
+    private final LongAdder _count = new LongAdder();
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+
+    public Histogram() {
+        for (int i = 0; i < BUCKETS; ++i) {
+            _buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value the value to record, negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        _buckets[BUCKETS - Long.numberOfLeadingZeros(value)].increment();
+        _count.increment();
+        _sum.add(value);
+        if (value > _max.get()) {
+            _max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long getCount() {
+        return _count.sum();
+    }
+
+    public long getSum() {
+        return _sum.sum();
+    }
+
+    public long getMax() {
+        return _max.get();
+    }
+
+    public double getMean() {
+        long count = _count.sum();
+        return count == 0 ? 0 : _sum.sum() / (double)count;
+    }
+
+    /**
+     * @param percentile the percentile, between 0 and 1
+     * @return the upper bound of the bucket holding the given percentile, at most the maximum value
+     */
+    public long getPercentile(double percentile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            counts[i] = _buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long)Math.ceil(Math.min(1, Math.max(0, percentile)) * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; ++i) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                // Bucket i holds the values below 2^i.
+                long upper = (1L << i) - 1;
+                return Math.min(upper, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d,mean=%.1f,p50=%d,p99=%d,max=%d", getCount(), getMean(), getPercentile(0.5), getPercentile(0.99), getMax());
+    }
+}
@@ -0,0 +1,187 @@
+package org.cometd.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>{@link TransportMetrics} recorded in {@link Histogram}s, and exposed as a platform MBean named
+ * {@code org.cometd.server:type=TransportMetrics,transport=<name>,id=<hash>}.</p>
+ * <p>Times are exposed in microseconds, except the suspended time in milliseconds; the processing
+ * times are aggregated by {@link TransportMetrics#channelGroup(String) channel group}.</p>
+ */
+public class JMXTransportMetrics implements TransportMetrics, JMXTransportMetricsMBean {
+    private static final Logger _logger = LoggerFactory.getLogger(JMXTransportMetrics.class);
+
+    private final String _transport;
+    private volatile State _state = new State();
+    private volatile ObjectName _objectName;
+
+    public JMXTransportMetrics(String transport) {
+        _transport = transport;
+    }
+
+    static JMXTransportMetrics register(String transport) {
+        JMXTransportMetrics metrics = new JMXTransportMetrics(transport);
+        try {
+            ObjectName name = new ObjectName("org.cometd.server:type=TransportMetrics,transport=" +
+                    ObjectName.quote(transport) + ",id=" + Integer.toHexString(metrics.hashCode()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            metrics._objectName = name;
+        } catch (Exception x) {
+            _logger.info("Could not register transport metrics of " + transport, x);
+        }
+        return metrics;
+    }
+
+    @Override
+    public void parsed(int messages, long nanos) {
+        State state = _state;
+        state.parseTime.record(nanos);
+        state.parsedMessages.add(messages);
+    }
+
+    @Override
+    public void processed(String channel, long nanos) {
+        _state.processTimes.computeIfAbsent(TransportMetrics.channelGroup(channel), group -> new Histogram()).record(nanos);
+    }
+
+    @Override
+    public void suspended(long nanos) {
+        _state.suspendedTime.record(nanos);
+    }
+
+    @Override
+    public void written(long bytes) {
+        _state.writtenBytes.record(bytes);
+    }
+
+    @Override
+    public void writeFailed(int messages) {
+        State state = _state;
+        state.writeFailures.increment();
+        state.rolledBackMessages.add(messages);
+    }
+
+    @Override
+    public void close() {
+        ObjectName name = _objectName;
+        _objectName = null;
+        if (name != null) {
+            try {
+                MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+                server.unregisterMBean(name);
+            } catch (Exception x) {
+                _logger.debug("Could not unregister " + name, x);
+            }
+        }
+    }
+
+    @Override
+    public String getTransport() {
+        return _transport;
+    }
+
+    @Override
+    public long getParses() {
+        return _state.parseTime.getCount();
+    }
+
+    @Override
+    public long getParsedMessages() {
+        return _state.parsedMessages.sum();
+    }
+
+    @Override
+    public double getParseTimeMean() {
+        return _state.parseTime.getMean() / TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    @Override
+    public long getParseTimeP99() {
+        return TimeUnit.NANOSECONDS.toMicros(_state.parseTime.getPercentile(0.99));
+    }
+
+    @Override
+    public long getResumedConnects() {
+        return _state.suspendedTime.getCount();
+    }
+
+    @Override
+    public double getSuspendedTimeMean() {
+        return _state.suspendedTime.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public long getSuspendedTimeP99() {
+        return TimeUnit.NANOSECONDS.toMillis(_state.suspendedTime.getPercentile(0.99));
+    }
+
+    @Override
+    public long getWrites() {
+        return _state.writtenBytes.getCount();
+    }
+
+    @Override
+    public long getWrittenBytes() {
+        return _state.writtenBytes.getSum();
+    }
+
+    @Override
+    public long getWrittenBytesP99() {
+        return _state.writtenBytes.getPercentile(0.99);
+    }
+
+    @Override
+    public long getWriteFailures() {
+        return _state.writeFailures.sum();
+    }
+
+    @Override
+    public long getRolledBackMessages() {
+        return _state.rolledBackMessages.sum();
+    }
+
+    @Override
+    public String[] getProcessingTimes() {
+        Map<String, Histogram> processTimes = _state.processTimes;
+        return processTimes.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> {
+                    Histogram histogram = entry.getValue();
+                    return String.format("%s: count=%d, mean/p99/max=%.1f/%d/%d us", entry.getKey(), histogram.getCount(),
+                            histogram.getMean() / TimeUnit.MICROSECONDS.toNanos(1),
+                            TimeUnit.NANOSECONDS.toMicros(histogram.getPercentile(0.99)),
+                            TimeUnit.NANOSECONDS.toMicros(histogram.getMax()));
+                })
+                .toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        _state = new State();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[%s]", getClass().getSimpleName(), hashCode(), _transport);
+    }
+
+    private static class State {
+        private final Histogram parseTime = new Histogram();
+        private final LongAdder parsedMessages = new LongAdder();
+        private final ConcurrentMap<String, Histogram> processTimes = new ConcurrentHashMap<>();
+        private final Histogram suspendedTime = new Histogram();
+        private final Histogram writtenBytes = new Histogram();
+        private final LongAdder writeFailures = new LongAdder();
+        private final LongAdder rolledBackMessages = new LongAdder();
+    }
+}
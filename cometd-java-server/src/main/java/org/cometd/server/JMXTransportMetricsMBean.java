@@ -0,0 +1,36 @@
+package org.cometd.server;
+
+/**
+ * <p>The management interface of {@link JMXTransportMetrics}.</p>
+ */
+public interface JMXTransportMetricsMBean {
+    String getTransport();
+
+    long getParses();
+
+    long getParsedMessages();
+
+    double getParseTimeMean();
+
+    long getParseTimeP99();
+
+    long getResumedConnects();
+
+    double getSuspendedTimeMean();
+
+    long getSuspendedTimeP99();
+
+    long getWrites();
+
+    long getWrittenBytes();
+
+    long getWrittenBytesP99();
+
+    long getWriteFailures();
+
+    long getRolledBackMessages();
+
+    String[] getProcessingTimes();
+
+    void reset();
+}
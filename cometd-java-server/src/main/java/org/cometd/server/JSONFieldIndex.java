@@ -0,0 +1,273 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * <p>Offsets of the values of the {@code data} field of a serialized message, indexed by their dotted
+ * path (e.g. {@code source.id}), so that a single field can be parsed without parsing the whole message.</p>
+ * <p>Only the fields of nested objects are indexed, up to {@value #MAX_DEPTH} levels and
+ * {@value #MAX_FIELDS} fields; arrays are indexed as a whole. Field names containing a dot or
+ * escapes are not indexed.</p>
+ */
+final class JSONFieldIndex {
+    static final int MAX_DEPTH = 3;
+    static final int MAX_FIELDS = 64;
+
+    private final String[] _paths;
+    private final int[] _offsets;
+    private final int[] _lengths;
+    private final boolean _complete;
+
+    private JSONFieldIndex(String[] paths, int[] offsets, int[] lengths, boolean complete) {
+        _paths = paths;
+        _offsets = offsets;
+        _lengths = lengths;
+        _complete = complete;
+    }
+
+    /**
+     * @param json the UTF-8 JSON of a message
+     * @return the index of the fields of the data object of the message, or null if the data is not an object
+     */
+    static JSONFieldIndex index(byte[] json) {
+        try {
+            Indexer indexer = new Indexer(json);
+            return indexer.index();
+        } catch (RuntimeException x) {
+            // Malformed JSON, nothing to index.
+            return null;
+        }
+    }
+
+    /**
+     * @param path the dotted path of a field of the data object
+     * @return the position of the field in this index, or -1 if it is not indexed
+     */
+    int find(String path) {
+        for (int i = 0; i < _paths.length; ++i) {
+            if (_paths[i].equals(path)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int getOffset(int field) {
+        return _offsets[field];
+    }
+
+    int getLength(int field) {
+        return _lengths[field];
+    }
+
+    /**
+     * @param path the dotted path of a field of the data object
+     * @return whether the field is known to be absent, without parsing the data object
+     */
+    boolean isAbsent(String path) {
+        if (!_complete) {
+            return false;
+        }
+        int depth = 1;
+        for (int i = 0; i < path.length(); ++i) {
+            if (path.charAt(i) == '.') {
+                ++depth;
+            }
+        }
+        return depth <= MAX_DEPTH && find(path) < 0 && !isInArray(path);
+    }
+
+    private boolean isInArray(String path) {
+        // A path below an indexed non object value, e.g. an array, cannot be told absent.
+        for (int i = 0; i < _paths.length; ++i) {
+            String indexed = _paths[i];
+            if (path.startsWith(indexed) && path.length() > indexed.length() && path.charAt(indexed.length()) == '.') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int size() {
+        return _paths.length;
+    }
+
+    private static class Indexer {
+        private final byte[] json;
+        private String[] paths = new String[8];
+        private int[] offsets = new int[8];
+        private int[] lengths = new int[8];
+        private int size;
+        private boolean complete = true;
+        private int index;
+
+        private Indexer(byte[] json) {
+            this.json = json;
+        }
+
+        private JSONFieldIndex index() {
+            skipWhitespace();
+            if (json[index] != '{') {
+                return null;
+            }
+            ++index;
+            while (true) {
+                skipWhitespace();
+                if (json[index] == '}') {
+                    return null;
+                }
+                String key = readKey();
+                skipWhitespace();
+                ++index; // ':'
+                skipWhitespace();
+                if (Message.DATA_FIELD.equals(key)) {
+                    if (json[index] != '{') {
+                        return null;
+                    }
+                    indexObject(null, 1);
+                    return new JSONFieldIndex(Arrays.copyOf(paths, size), Arrays.copyOf(offsets, size), Arrays.copyOf(lengths, size), complete);
+                }
+                skipValue();
+                skipWhitespace();
+                if (json[index++] != ',') {
+                    return null;
+                }
+            }
+        }
+
+        private void indexObject(String prefix, int depth) {
+            ++index; // '{'
+            while (true) {
+                skipWhitespace();
+                if (json[index] == '}') {
+                    ++index;
+                    return;
+                }
+                String key = readKey();
+                skipWhitespace();
+                ++index; // ':'
+                skipWhitespace();
+                String path = key == null ? null : prefix == null ? key : prefix + "." + key;
+                int start = index;
+                if (path != null && json[start] == '{' && depth < MAX_DEPTH) {
+                    indexObject(path, depth + 1);
+                } else {
+                    skipValue();
+                }
+                if (path == null) {
+                    complete = false;
+                } else {
+                    add(path, start, index - start);
+                }
+                skipWhitespace();
+                if (json[index++] == '}') {
+                    return;
+                }
+            }
+        }
+
+        private void add(String path, int offset, int length) {
+            if (size == MAX_FIELDS) {
+                complete = false;
+                return;
+            }
+            if (size == paths.length) {
+                paths = Arrays.copyOf(paths, size << 1);
+                offsets = Arrays.copyOf(offsets, size << 1);
+                lengths = Arrays.copyOf(lengths, size << 1);
+            }
+            paths[size] = path;
+            offsets[size] = offset;
+            lengths[size] = length;
+            ++size;
+        }
+
+        /**
+         * @return the key, or null if it cannot be indexed
+         */
+        private String readKey() {
+            int start = ++index; // '"'
+            boolean indexable = true;
+            while (true) {
+                byte b = json[index];
+                if (b == '\\') {
+                    indexable = false;
+                    index += 2;
+                    continue;
+                }
+                if (b == '"') {
+                    break;
+                }
+                if (b == '.') {
+                    indexable = false;
+                }
+                ++index;
+            }
+            String key = indexable ? new String(json, start, index - start, StandardCharsets.UTF_8) : null;
+            ++index;
+            return key;
+        }
+
+        private void skipValue() {
+            byte b = json[index];
+            if (b == '"') {
+                skipString();
+                return;
+            }
+            if (b == '{' || b == '[') {
+                int depth = 0;
+                while (true) {
+                    b = json[index];
+                    if (b == '"') {
+                        skipString();
+                        continue;
+                    }
+                    ++index;
+                    if (b == '{' || b == '[') {
+                        ++depth;
+                    } else if (b == '}' || b == ']') {
+                        if (--depth == 0) {
+                            return;
+                        }
+                    }
+                }
+            }
+            // Number or literal.
+            while (index < json.length) {
+                b = json[index];
+                if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                    return;
+                }
+                ++index;
+            }
+        }
+
+        private void skipString() {
+            ++index;
+            while (true) {
+                byte b = json[index];
+                if (b == '\\') {
+                    index += 2;
+                } else {
+                    ++index;
+                    if (b == '"') {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (true) {
+                byte b = json[index];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    return;
+                }
+                ++index;
+            }
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package org.cometd.server;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <p>Compression of the JSON of the {@link WeakMessage}s above the zip message size threshold.</p>
+ * <p>{@link #GZIP} is the default, its raw data is a plain gzip stream. {@link #LZ4} and {@link #ZSTD}
+ * use the block codecs of aircompressor, that compress and decompress at a fraction of the CPU cost of
+ * gzip; their raw data is the uncompressed length, as a 4 bytes big endian integer, followed by the
+ * compressed block, so that decompression allocates the result exactly once.</p>
+ * <p>The compression is configured with the {@link BayeuxServerImpl#MESSAGE_COMPRESSION_OPTION} option,
+ * using the lower case compression name (e.g. {@code lz4}).</p>
+ * <p>aircompressor is an optional dependency, only loaded when {@link #LZ4} or {@link #ZSTD} is used:
+ * configuring one of them without aircompressor fails when the option is read.</p>
+ */
+public enum MessageCompression {
+    GZIP(1032) {
+        @Override
+        public byte[] compress(byte[] data) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(output)) {
+                gzip.write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return output.toByteArray();
+        }
+
+        @Override
+        public byte[] decompress(byte[] data) {
+            try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+                // The gzip trailer holds the uncompressed size, exact for single member streams below 4 GiB.
+                int size = readInt(data, data.length - 4, true);
+                if (size < 0 || size > maxLength(data.length)) {
+                    // Not trusted to size the result, e.g. the trailer of a truncated stream.
+                    return IOUtils.toByteArray(gzip);
+                }
+                byte[] result = IOUtils.toByteArray(gzip, size);
+                if (gzip.read() >= 0) {
+                    throw new IOException("Gzip stream longer than its trailer size " + size);
+                }
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public InputStream newInputStream(byte[] data, int bufferSize) throws IOException {
+            return new GZIPInputStream(new ByteArrayInputStream(data), bufferSize);
+        }
+    },
+    LZ4(255) {
+        @Override
+        BlockCodec newCodec() {
+            return BlockCodec.lz4();
+        }
+    },
+    ZSTD(0) {
+        @Override
+        BlockCodec newCodec() {
+            return BlockCodec.zstd();
+        }
+    };
+
+    private static final int LENGTH_BYTES = 4;
+
+    // How many times compressed data expands at most: 1032 for deflate, 255 for LZ4, unbounded for Zstd.
+    private final int maxRatio;
+    private volatile BlockCodec codec;
+
+    MessageCompression(int maxRatio) {
+        this.maxRatio = maxRatio;
+    }
+
+    BlockCodec newCodec() {
+        throw new UnsupportedOperationException(name() + " is not a block compression");
+    }
+
+    /**
+     * @return the block codec of this compression, created on first use
+     * @throws IllegalStateException if aircompressor is not available
+     */
+    private BlockCodec codec() {
+        BlockCodec result = codec;
+        if (result == null) {
+            synchronized (this) {
+                result = codec;
+                if (result == null) {
+                    try {
+                        result = newCodec();
+                    } catch (LinkageError x) {
+                        throw new IllegalStateException("Message compression " + name().toLowerCase(Locale.ENGLISH) +
+                                " requires io.airlift:aircompressor, that is not available", x);
+                    }
+                    codec = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param data the bytes to compress
+     * @return the compressed bytes
+     */
+    public byte[] compress(byte[] data) {
+        BlockCodec codec = codec();
+        int maxLength = codec.maxCompressedLength(data.length);
+        byte[] result = new byte[LENGTH_BYTES + maxLength];
+        writeInt(result, data.length);
+        int length = codec.compress(data, 0, data.length, result, LENGTH_BYTES, maxLength);
+        return Arrays.copyOf(result, LENGTH_BYTES + length);
+    }
+
+    /**
+     * @param data bytes compressed by {@link #compress(byte[])}
+     * @return the uncompressed bytes
+     */
+    public byte[] decompress(byte[] data) {
+        int length = readInt(data, 0, false);
+        if (length < 0 || length > maxLength(data.length - LENGTH_BYTES)) {
+            throw new IllegalArgumentException("Invalid " + this + " compressed data");
+        }
+        byte[] result = new byte[length];
+        int decompressed = codec().decompress(data, LENGTH_BYTES, data.length - LENGTH_BYTES, result, 0, length);
+        if (decompressed != length) {
+            throw new IllegalArgumentException("Invalid " + this + " compressed data, expected " + length + " bytes, got " + decompressed);
+        }
+        return result;
+    }
+
+    /**
+     * <p>Returns a stream of the uncompressed bytes. Gzip inflates incrementally, so the uncompressed
+     * form is never fully materialized; the block codecs decompress the whole block up front.</p>
+     *
+     * @param data       bytes compressed by {@link #compress(byte[])}
+     * @param bufferSize the size of the input buffer of incremental decompression
+     * @return a stream of the uncompressed bytes
+     * @throws IOException if the stream cannot be created
+     */
+    public InputStream newInputStream(byte[] data, int bufferSize) throws IOException {
+        return new ByteArrayInputStream(decompress(data));
+    }
+
+    /**
+     * @param value the compression name, such as {@code lz4}, or null
+     * @return the compression with the given name, {@link #GZIP} if the value is null or empty
+     * @throws IllegalArgumentException if the value is not a valid compression name
+     * @throws IllegalStateException if the compression requires aircompressor and it is not available
+     */
+    public static MessageCompression from(Object value) {
+        if (value == null) {
+            return GZIP;
+        }
+        if (value instanceof MessageCompression) {
+            return (MessageCompression)value;
+        }
+        String name = value.toString().trim();
+        if (name.isEmpty()) {
+            return GZIP;
+        }
+        MessageCompression compression = valueOf(name.toUpperCase(Locale.ENGLISH));
+        if (compression != GZIP) {
+            // Fail when the option is read rather than when the first message is compressed.
+            compression.codec();
+        }
+        return compression;
+    }
+
+    /**
+     * @param compressedLength the length of compressed data
+     * @return the maximum length the given compressed length can expand to
+     */
+    long maxLength(int compressedLength) {
+        return maxRatio > 0 ? (long)compressedLength * maxRatio : Integer.MAX_VALUE;
+    }
+
+    private static void writeInt(byte[] bytes, int value) {
+        bytes[0] = (byte)(value >>> 24);
+        bytes[1] = (byte)(value >>> 16);
+        bytes[2] = (byte)(value >>> 8);
+        bytes[3] = (byte)value;
+    }
+
+    private static int readInt(byte[] bytes, int offset, boolean littleEndian) {
+        if (offset < 0 || bytes.length < offset + LENGTH_BYTES) {
+            return -1;
+        }
+        int b0 = bytes[offset] & 0xFF;
+        int b1 = bytes[offset + 1] & 0xFF;
+        int b2 = bytes[offset + 2] & 0xFF;
+        int b3 = bytes[offset + 3] & 0xFF;
+        if (littleEndian) {
+            return b3 << 24 | b2 << 16 | b1 << 8 | b0;
+        }
+        return b0 << 24 | b1 << 16 | b2 << 8 | b3;
+    }
+}
@@ -0,0 +1,390 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Multi-producer, single-consumer message queue of a {@link ServerSessionImpl}.</p>
+ * <p>Producers, the threads publishing to the session, never block: {@link #offer(ServerMessage)}
+ * is a single atomic exchange on the head of a linked list (D. Vyukov's intrusive MPSC queue).
+ * Consumers, the transport draining the queue and the queue listeners, are serialized by an
+ * internal lock that producers never take, so they may run concurrently with producers.</p>
+ * <p>{@link #drainTo(Collection)} takes all the queued messages in one pass into a collection
+ * allocated by the caller outside of that lock, and removal through the {@link #iterator() iterator}
+ * only marks the node as removed, so that {@code DeQueueListener}s and {@code MaxQueueListener}s can edit the queue.</p>
+ * <p>The queue also tracks the {@link #getBytes() estimated encoded size} of its messages, based on
+ * the raw data of frozen {@link WeakMessage}s, compressed or not, when it has already been generated:
+ * queueing a message never serializes it, see {@link #estimate(ServerMessage)} for the exact size.</p>
+ * <p>Messages offered with a coalescing key {@link #offer(ServerMessage, Object) replace} the
+ * queued message with the same key, if it has not been consumed yet.</p>
+ * <p>The queue owns one reference to the {@link EncodedFrame} of each queued message: it is
+ * retained when the message is offered, and released when the message is removed from the queue,
+ * polled, replaced or cleared. {@link #drain()} instead hands the references over to its caller,
+ * that must release them once the messages are written, or give them back with {@link #requeue(List)}.</p>
+ */
+public class MessageQueue extends AbstractQueue<ServerMessage> {
+    // Rough size of the messages whose encoded form is not known when queued, e.g. replies.
+    private static final int DEFAULT_MESSAGE_BYTES = 64;
+
+    private final AtomicReference<Node> _head;
+    private final AtomicInteger _size = new AtomicInteger();
+    private final AtomicLong _bytes = new AtomicLong();
+    private final Object _consumerLock = new Object();
+    private final ConcurrentMap<Object, Node> _keys = new ConcurrentHashMap<>();
+    private Node _tail;
+
+    public MessageQueue() {
+        Node stub = new Node(null, 0, null);
+        _head = new AtomicReference<>(stub);
+        _tail = stub;
+    }
+
+    @Override
+    public boolean offer(ServerMessage message) {
+        if (message == null) {
+            throw new NullPointerException();
+        }
+        retain(message);
+        append(new Node(message, sizeOf(message), null));
+        return true;
+    }
+
+    /**
+     * <p>Appends messages taken from this queue by {@link #drain()} that could not be written,
+     * along with the references to their frames, that are not retained again.</p>
+     *
+     * @param messages the messages to put back in the queue
+     */
+    public void requeue(List<? extends ServerMessage> messages) {
+        for (ServerMessage message : messages) {
+            append(new Node(message, sizeOf(message), null));
+        }
+    }
+
+    /**
+     * <p>Appends the given message, removing the queued message offered with the same key, if any.</p>
+     *
+     * @param message the message to queue
+     * @param key     the coalescing key of the message, or null
+     * @return the message replaced by the given message, or null
+     */
+    public ServerMessage offer(ServerMessage message, Object key) {
+        if (key == null) {
+            offer(message);
+            return null;
+        }
+        retain(message);
+        Node node = new Node(message, sizeOf(message), key);
+        append(node);
+        Node previous = _keys.put(key, node);
+        ServerMessage replaced = null;
+        synchronized (_consumerLock) {
+            if (node._message == null) {
+                // Already consumed, do not leave a stale entry.
+                _keys.remove(key, node);
+            }
+            if (previous != null) {
+                replaced = previous._message;
+                if (replaced != null) {
+                    previous._message = null;
+                    _size.decrementAndGet();
+                    _bytes.addAndGet(-previous._bytes);
+                }
+            }
+        }
+        if (replaced != null) {
+            release(replaced);
+        }
+        return replaced;
+    }
+
+    /**
+     * <p>Removes the queued message offered with the given key, if it has not been consumed yet.</p>
+     *
+     * @param key the coalescing key the message was offered with
+     * @return the removed message, or null
+     */
+    public ServerMessage removeKey(Object key) {
+        Node node = _keys.get(key);
+        if (node == null) {
+            return null;
+        }
+        ServerMessage message;
+        synchronized (_consumerLock) {
+            message = node._message;
+            if (message != null) {
+                node._message = null;
+                removed(node);
+            } else {
+                _keys.remove(key, node);
+            }
+        }
+        if (message != null) {
+            release(message);
+        }
+        return message;
+    }
+
+    private void append(Node node) {
+        // Count first, so that the size is never lower than the number of reachable messages.
+        _size.incrementAndGet();
+        _bytes.addAndGet(node._bytes);
+        Node previous = _head.getAndSet(node);
+        previous._next = node;
+    }
+
+    @Override
+    public ServerMessage poll() {
+        synchronized (_consumerLock) {
+            while (true) {
+                Node next = _tail._next;
+                if (next == null) {
+                    return null;
+                }
+                _tail = next;
+                ServerMessage message = next._message;
+                if (message != null) {
+                    next._message = null;
+                    removed(next);
+                    release(message);
+                    return message;
+                }
+            }
+        }
+    }
+
+    @Override
+    public ServerMessage peek() {
+        synchronized (_consumerLock) {
+            for (Node node = _tail._next; node != null; node = node._next) {
+                ServerMessage message = node._message;
+                if (message != null) {
+                    return message;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * <p>The returned list is allocated for each call, as it is owned by the caller until the
+     * messages are written, possibly asynchronously; callers that write synchronously should
+     * reuse a collection with {@link #drainTo(Collection)}.</p>
+     *
+     * @return all the messages in the queue, in order, removed from the queue along with the references to their frames
+     */
+    public List<ServerMessage> drain() {
+        int size = size();
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        // Allocated before taking the consumer lock, that is only held to unlink the messages.
+        List<ServerMessage> result = new ArrayList<>(size);
+        drainTo(result);
+        return result;
+    }
+
+    /**
+     * <p>Moves all the messages in the queue, in order, to the given collection, along with
+     * the references to their frames.</p>
+     *
+     * @param messages the collection to add the messages to
+     * @return the number of messages moved
+     */
+    public int drainTo(Collection<? super ServerMessage> messages) {
+        synchronized (_consumerLock) {
+            int count = 0;
+            long bytes = 0;
+            Node node = _tail;
+            for (Node next = node._next; next != null; next = next._next) {
+                node = next;
+                ServerMessage message = next._message;
+                if (message != null) {
+                    next._message = null;
+                    bytes += next._bytes;
+                    if (next._key != null) {
+                        _keys.remove(next._key, next);
+                    }
+                    messages.add(message);
+                    ++count;
+                }
+            }
+            _tail = node;
+            _size.addAndGet(-count);
+            _bytes.addAndGet(-bytes);
+            return count;
+        }
+    }
+
+    @Override
+    public void clear() {
+        EncodedFrame.release(drain());
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, _size.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the estimated encoded size, in bytes, of the queued messages
+     */
+    public long getBytes() {
+        return Math.max(0, _bytes.get());
+    }
+
+    /**
+     * <p>Serializes the given message if needed, so it should only be called when the size is
+     * bounded, typically by {@code maxQueueBytes}.</p>
+     *
+     * @param message the message to estimate
+     * @return the estimated encoded size of the given message, in bytes
+     */
+    public static int estimate(ServerMessage message) {
+        if (message instanceof WeakMessage) {
+            WeakMessage weakMessage = (WeakMessage)message;
+            if (weakMessage.isFrozen()) {
+                byte[] rawData = weakMessage.getRawData();
+                if (rawData != null) {
+                    return rawData.length;
+                }
+            }
+        }
+        return DEFAULT_MESSAGE_BYTES;
+    }
+
+    private static int sizeOf(ServerMessage message) {
+        if (message instanceof WeakMessage) {
+            WeakMessage weakMessage = (WeakMessage)message;
+            if (weakMessage.isFrozen()) {
+                byte[] rawData = weakMessage.peekRawData();
+                if (rawData != null) {
+                    return rawData.length;
+                }
+            }
+        }
+        return DEFAULT_MESSAGE_BYTES;
+    }
+
+    private static void retain(ServerMessage message) {
+        EncodedFrame frame = EncodedFrame.of(message);
+        if (frame != null) {
+            frame.retain();
+        }
+    }
+
+    private static void release(ServerMessage message) {
+        EncodedFrame frame = EncodedFrame.of(message);
+        if (frame != null) {
+            frame.release();
+        }
+    }
+
+    private void removed(Node node) {
+        _size.decrementAndGet();
+        _bytes.addAndGet(-node._bytes);
+        if (node._key != null) {
+            _keys.remove(node._key, node);
+        }
+    }
+
+    /**
+     * <p>Returns a weakly consistent iterator: it sees the messages queued when it was created
+     * and may see those queued concurrently.</p>
+     * <p>The iterator must be used by a single thread, typically a queue listener; removal is supported.</p>
+     */
+    @Override
+    public Iterator<ServerMessage> iterator() {
+        return new Iterator<ServerMessage>() {
+            private Node _node;
+            private Node _last;
+            private ServerMessage _nextMessage;
+
+            {
+                synchronized (_consumerLock) {
+                    _node = _tail;
+                }
+                advance();
+            }
+
+            private void advance() {
+                _nextMessage = null;
+                for (Node next = _node._next; next != null; next = next._next) {
+                    _node = next;
+                    ServerMessage message = next._message;
+                    if (message != null) {
+                        _nextMessage = message;
+                        return;
+                    }
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return _nextMessage != null;
+            }
+
+            @Override
+            public ServerMessage next() {
+                ServerMessage message = _nextMessage;
+                if (message == null) {
+                    throw new NoSuchElementException();
+                }
+                _last = _node;
+                advance();
+                return message;
+            }
+
+            @Override
+            public void remove() {
+                Node last = _last;
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                _last = null;
+                ServerMessage message;
+                synchronized (_consumerLock) {
+                    // May have been polled concurrently.
+                    message = last._message;
+                    if (message != null) {
+                        last._message = null;
+                        removed(last);
+                    }
+                }
+                if (message != null) {
+                    release(message);
+                }
+            }
+        };
+    }
+
+    private static class Node {
+        private final int _bytes;
+        private final Object _key;
+        private volatile ServerMessage _message;
+        private volatile Node _next;
+
+        private Node(ServerMessage message, int bytes, Object key) {
+            _message = message;
+            _bytes = bytes;
+            _key = key;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.cometd.server;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>{@link TransportMetrics} recorded in a Micrometer {@code MeterRegistry}, with the meters:</p>
+ * <ul>
+ * <li>{@code cometd.transport.parse}, timer of the parsing of the messages of a request or frame;</li>
+ * <li>{@code cometd.transport.parsed.messages}, counter of the parsed messages;</li>
+ * <li>{@code cometd.transport.process}, timer of the processing of a message, tagged by
+ * {@link TransportMetrics#channelGroup(String) channel group};</li>
+ * <li>{@code cometd.transport.suspended}, timer of the time a {@code /meta/connect} was suspended;</li>
+ * <li>{@code cometd.transport.written}, distribution of the bytes written by a response or frame;</li>
+ * <li>{@code cometd.transport.write.failures} and {@code cometd.transport.rolledback.messages}, counters of the
+ * failed writes and of their messages.</li>
+ * </ul>
+ * <p>All the meters are tagged with the transport name. Micrometer is an optional dependency, so it is
+ * accessed by reflection; the meters are looked up once and recorded through method handles.</p>
+ */
+public class MicrometerTransportMetrics implements TransportMetrics {
+    private static final String PACKAGE = "io.micrometer.core.instrument.";
+
+    private final ConcurrentMap<String, MethodHandle> _processTimers = new ConcurrentHashMap<>();
+    private final Object _registry;
+    private final String _transport;
+    private final Meters _meters;
+    private final MethodHandle _parseTimer;
+    private final MethodHandle _parsedMessages;
+    private final MethodHandle _suspendedTimer;
+    private final MethodHandle _writtenBytes;
+    private final MethodHandle _writeFailures;
+    private final MethodHandle _rolledBackMessages;
+
+    private MicrometerTransportMetrics(Object registry, String transport) throws ReflectiveOperationException {
+        _registry = registry;
+        _transport = transport;
+        _meters = new Meters(registry.getClass().getClassLoader());
+        _parseTimer = _meters.timer(registry, "cometd.transport.parse", "transport", transport);
+        _parsedMessages = _meters.counter(registry, "cometd.transport.parsed.messages", "transport", transport);
+        _suspendedTimer = _meters.timer(registry, "cometd.transport.suspended", "transport", transport);
+        _writtenBytes = _meters.summary(registry, "cometd.transport.written", "bytes", "transport", transport);
+        _writeFailures = _meters.counter(registry, "cometd.transport.write.failures", "transport", transport);
+        _rolledBackMessages = _meters.counter(registry, "cometd.transport.rolledback.messages", "transport", transport);
+    }
+
+    /**
+     * @param registry  the Micrometer {@code MeterRegistry}
+     * @param transport the name of the transport
+     * @return the metrics of the transport recorded in the given registry
+     * @throws IllegalArgumentException if the registry is not a {@code MeterRegistry}
+     */
+    static MicrometerTransportMetrics of(Object registry, String transport) {
+        try {
+            Class<?> registryClass = Class.forName(PACKAGE + "MeterRegistry", false, registry.getClass().getClassLoader());
+            if (!registryClass.isInstance(registry)) {
+                throw new IllegalArgumentException("Invalid transport metrics: " + registry);
+            }
+            return new MicrometerTransportMetrics(registry, transport);
+        } catch (ReflectiveOperationException x) {
+            throw new IllegalArgumentException("Invalid transport metrics: " + registry, x);
+        }
+    }
+
+    /**
+     * @param transport the name of the transport
+     * @return the metrics of the transport recorded in the global registry of Micrometer
+     * @throws IllegalStateException if Micrometer is not available
+     */
+    static MicrometerTransportMetrics global(String transport) {
+        try {
+            Class<?> metrics = Class.forName(PACKAGE + "Metrics", true, MicrometerTransportMetrics.class.getClassLoader());
+            return new MicrometerTransportMetrics(metrics.getField("globalRegistry").get(null), transport);
+        } catch (ReflectiveOperationException | LinkageError x) {
+            throw new IllegalStateException("Micrometer not available", x);
+        }
+    }
+
+    @Override
+    public void parsed(int messages, long nanos) {
+        record(_parseTimer, nanos);
+        increment(_parsedMessages, messages);
+    }
+
+    @Override
+    public void processed(String channel, long nanos) {
+        String group = TransportMetrics.channelGroup(channel);
+        MethodHandle timer = _processTimers.get(group);
+        if (timer == null) {
+            timer = _processTimers.computeIfAbsent(group, key -> {
+                try {
+                    return _meters.timer(_registry, "cometd.transport.process", "transport", _transport, "channel", key);
+                } catch (ReflectiveOperationException x) {
+                    throw new IllegalStateException(x);
+                }
+            });
+        }
+        record(timer, nanos);
+    }
+
+    @Override
+    public void suspended(long nanos) {
+        record(_suspendedTimer, nanos);
+    }
+
+    @Override
+    public void written(long bytes) {
+        increment(_writtenBytes, bytes);
+    }
+
+    @Override
+    public void writeFailed(int messages) {
+        increment(_writeFailures, 1);
+        increment(_rolledBackMessages, messages);
+    }
+
+    private static void record(MethodHandle timer, long nanos) {
+        try {
+            timer.invokeExact(nanos, TimeUnit.NANOSECONDS);
+        } catch (Throwable x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    private static void increment(MethodHandle meter, double amount) {
+        try {
+            meter.invokeExact(amount);
+        } catch (Throwable x) {
+            throw new IllegalStateException(x);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[%s,%s]", getClass().getSimpleName(), hashCode(), _transport, _registry);
+    }
+
+    /**
+     * The reflective access to the meter builders.
+     */
+    private static class Meters {
+        private final Class<?> registryClass;
+        private final Method timerBuilder;
+        private final Method counterBuilder;
+        private final Method summaryBuilder;
+        private final MethodHandle timerRecord;
+        private final MethodHandle counterIncrement;
+        private final MethodHandle summaryRecord;
+
+        private Meters(ClassLoader loader) throws ReflectiveOperationException {
+            registryClass = Class.forName(PACKAGE + "MeterRegistry", false, loader);
+            Class<?> timerClass = Class.forName(PACKAGE + "Timer", false, loader);
+            Class<?> counterClass = Class.forName(PACKAGE + "Counter", false, loader);
+            Class<?> summaryClass = Class.forName(PACKAGE + "DistributionSummary", false, loader);
+            timerBuilder = timerClass.getMethod("builder", String.class);
+            counterBuilder = counterClass.getMethod("builder", String.class);
+            summaryBuilder = summaryClass.getMethod("builder", String.class);
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            timerRecord = lookup.findVirtual(timerClass, "record", MethodType.methodType(void.class, long.class, TimeUnit.class));
+            counterIncrement = lookup.findVirtual(counterClass, "increment", MethodType.methodType(void.class, double.class));
+            summaryRecord = lookup.findVirtual(summaryClass, "record", MethodType.methodType(void.class, double.class));
+        }
+
+        private MethodHandle timer(Object registry, String name, String... tags) throws ReflectiveOperationException {
+            Object timer = register(timerBuilder.invoke(null, name), registry, tags);
+            return timerRecord.bindTo(timer).asType(MethodType.methodType(void.class, long.class, TimeUnit.class));
+        }
+
+        private MethodHandle counter(Object registry, String name, String... tags) throws ReflectiveOperationException {
+            Object counter = register(counterBuilder.invoke(null, name), registry, tags);
+            return counterIncrement.bindTo(counter).asType(MethodType.methodType(void.class, double.class));
+        }
+
+        private MethodHandle summary(Object registry, String name, String unit, String... tags) throws ReflectiveOperationException {
+            Object builder = summaryBuilder.invoke(null, name);
+            builder = builder.getClass().getMethod("baseUnit", String.class).invoke(builder, unit);
+            Object summary = register(builder, registry, tags);
+            return summaryRecord.bindTo(summary).asType(MethodType.methodType(void.class, double.class));
+        }
+
+        private Object register(Object builder, Object registry, String[] tags) throws ReflectiveOperationException {
+            builder = builder.getClass().getMethod("tags", String[].class).invoke(builder, (Object)tags);
+            return builder.getClass().getMethod("register", registryClass).invoke(builder, registry);
+        }
+    }
+}
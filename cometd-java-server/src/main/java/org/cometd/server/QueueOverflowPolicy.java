@@ -0,0 +1,57 @@
+package org.cometd.server;
+
+import java.util.Locale;
+
+/**
+ * <p>What a {@link ServerSessionImpl} does when a message is delivered while its queue is full,
+ * that is when it holds {@code maxQueue} messages or when the estimated encoded size of its
+ * messages would exceed {@link #MAX_QUEUE_BYTES_OPTION}.</p>
+ * <p>The policy is configured per transport with the {@link #POLICY_OPTION} option, using the
+ * lower case, dash separated policy name (e.g. {@code drop-oldest}).</p>
+ */
+public enum QueueOverflowPolicy {
+    /**
+     * Queue size is not enforced, unless a {@code MaxQueueListener} is registered.
+     */
+    NONE,
+    /**
+     * The oldest messages are dropped until the new message fits.
+     */
+    DROP_OLDEST,
+    /**
+     * The new message is dropped.
+     */
+    DROP_NEWEST,
+    /**
+     * Queued messages superseded by the new message (same channel and coalescing key) are
+     * dropped first, then the oldest messages if the new message still does not fit.
+     */
+    COALESCE,
+    /**
+     * The new message is dropped and the session is disconnected, so that the client
+     * handshakes again and recovers its state.
+     */
+    DISCONNECT;
+
+    public static final String POLICY_OPTION = "queueOverflowPolicy";
+    public static final String MAX_QUEUE_BYTES_OPTION = "maxQueueBytes";
+
+    /**
+     * @param value the policy name, such as {@code drop-oldest}, or null
+     * @return the policy with the given name, {@link #NONE} if the value is null or empty
+     * @throws IllegalArgumentException if the value is not a valid policy name
+     */
+    public static QueueOverflowPolicy from(Object value) {
+        if (value == null) {
+            return NONE;
+        }
+        if (value instanceof QueueOverflowPolicy) {
+            return (QueueOverflowPolicy)value;
+        }
+        String name = value.toString().trim();
+        if (name.isEmpty()) {
+            return NONE;
+        }
+        return valueOf(name.replace('-', '_').toUpperCase(Locale.ENGLISH));
+    }
+}
@@ -28,25 +28,28 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public class ServerChannelImpl implements ServerChannel, Dumpable {
     private static final Logger _logger = LoggerFactory.getLogger(ServerChannel.class);
     private final BayeuxServerImpl _bayeux;
     private final ChannelId _id;
     private final AttributesMap _attributes = new AttributesMap();
-    private final Set<ServerSession> _subscribers = new CopyOnWriteArraySet<>();
+    private final ShardedSubscriberSet _subscribers = new ShardedSubscriberSet();
     private final List<ServerChannelListener> _listeners = new CopyOnWriteArrayList<>();
     private final List<Authorizer> _authorizers = new CopyOnWriteArrayList<>();
     private final CountDownLatch _initialized = new CountDownLatch(1);
     private final AtomicInteger _sweeperPasses = new AtomicInteger();
+    private final ChannelStatistics _statistics = new ChannelStatistics();
     private boolean _lazy;
     private long _lazyTimeout = -1;
+    private volatile Function<ServerMessage, Object> _coalescingKey;
     private boolean _persistent;
 
     protected ServerChannelImpl(BayeuxServerImpl bayeux, ChannelId id) {
@@ -79,6 +82,7 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
     void initialized() {
         resetSweeperPasses();
         _initialized.countDown();
+        _bayeux.channelSweepable(this);
     }
 
     void resetSweeperPasses() {
@@ -157,6 +161,9 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
 
         if (_subscribers.remove(session)) {
             session.unsubscribedFrom(this);
+            if (_subscribers.isEmpty()) {
+                _bayeux.channelSweepable(this);
+            }
             for (ServerChannelListener listener : _listeners) {
                 if (listener instanceof SubscriptionListener) {
                     notifyUnsubscribed((SubscriptionListener)listener, session, this, message);
@@ -188,6 +195,44 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
         }
     }
 
+    /**
+     * Records the time taken to deliver a message published to this channel to all its subscribers.
+     *
+     * @param deliveries the number of subscribers the message was delivered to
+     * @param nanos      the publish latency, in nanoseconds
+     */
+    void published(int deliveries, long nanos) {
+        _statistics.published(deliveries, nanos);
+    }
+
+    /**
+     * @return the publish and delivery statistics of this channel
+     */
+    public ChannelStatistics getStatistics() {
+        return _statistics;
+    }
+
+    /**
+     * @return the number of messages published to this channel
+     */
+    public long getPublishCount() {
+        return _statistics.getPublishes();
+    }
+
+    /**
+     * @return the average time, in milliseconds, taken to deliver a message to all the subscribers of this channel
+     */
+    public double getAveragePublishLatency() {
+        return _statistics.getAveragePublishLatency();
+    }
+
+    /**
+     * @return the maximum time, in milliseconds, taken to deliver a message to all the subscribers of this channel
+     */
+    public double getMaxPublishLatency() {
+        return _statistics.getMaxPublishLatency();
+    }
+
     public Set<ServerSession> getSubscribers() {
         return Collections.unmodifiableSet(subscribers());
     }
@@ -232,9 +277,65 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
         setLazy(lazyTimeout > 0);
     }
 
+    /**
+     * <p>Enables coalescing of the lazy messages published to this channel: a message replaces
+     * the message with the same key still queued for a session, so that a session that is
+     * sent messages lazily only receives the latest message for each key.</p>
+     * <p>Coalescing only applies to lazy messages; the key is extracted once per publish,
+     * and messages with a null key are never coalesced.</p>
+     *
+     * @param coalescingKey the function extracting the coalescing key of a message, or null to disable coalescing
+     * @see #dataField(String)
+     */
+    public void setCoalescingKey(Function<ServerMessage, Object> coalescingKey) {
+        _coalescingKey = coalescingKey;
+    }
+
+    public Function<ServerMessage, Object> getCoalescingKey() {
+        return _coalescingKey;
+    }
+
+    /**
+     * @param message the message published to this channel
+     * @return the coalescing key of the given message, or null if the message must not be coalesced
+     */
+    Object coalescingKey(ServerMessage message) {
+        Function<ServerMessage, Object> coalescingKey = _coalescingKey;
+        if (coalescingKey == null || !message.isLazy()) {
+            return null;
+        }
+        try {
+            return coalescingKey.apply(message);
+        } catch (Throwable x) {
+            _logger.info("Exception while extracting coalescing key of " + message, x);
+            return null;
+        }
+    }
+
+    /**
+     * @param path the dot separated path of a field of the message data, e.g. {@code id} or {@code source.id}
+     * @return a coalescing key extracting the given data field
+     */
+    public static Function<ServerMessage, Object> dataField(String path) {
+        String[] segments = path.split("\\.");
+        return message -> {
+            Object value = message.getData();
+            for (String segment : segments) {
+                if (!(value instanceof Map)) {
+                    return null;
+                }
+                value = ((Map<?, ?>)value).get(segment);
+            }
+            return value;
+        };
+    }
+
     public void setPersistent(boolean persistent) {
         resetSweeperPasses();
         _persistent = persistent;
+        if (!persistent) {
+            _bayeux.channelSweepable(this);
+        }
     }
 
     public void addListener(ServerChannelListener listener) {
@@ -243,7 +344,9 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
     }
 
     public void removeListener(ServerChannelListener listener) {
-        _listeners.remove(listener);
+        if (_listeners.remove(listener)) {
+            _bayeux.channelSweepable(this);
+        }
     }
 
     public List<ServerChannelListener> getListeners() {
@@ -321,31 +424,47 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
             }
         }
 
-        if (isPersistent()) {
+        if (!isSweepable()) {
             return;
         }
 
-        if (!_subscribers.isEmpty()) {
+        if (_sweeperPasses.incrementAndGet() < 3) {
             return;
         }
 
+        remove();
+    }
+
+    /**
+     * <p>A channel is sweepable when nothing keeps it alive: it is not persistent and it has
+     * no subscribers, no authorizers and only weak listeners. A channel that is not sweepable
+     * becomes sweepable again only when one of those conditions changes, and notifies the
+     * {@link BayeuxServerImpl} so that the periodic sweep only visits sweepable channels.</p>
+     *
+     * @return whether this channel may be removed by the sweeper
+     */
+    boolean isSweepable() {
+        if (isPersistent()) {
+            return false;
+        }
+
+        if (!_subscribers.isEmpty()) {
+            return false;
+        }
+
         if (!_authorizers.isEmpty()) {
-            return;
+            return false;
         }
 
         if (!_listeners.isEmpty()) {
             for (ServerChannelListener listener : _listeners) {
                 if (!(listener instanceof ServerChannelListener.Weak)) {
-                    return;
+                    return false;
                 }
             }
         }
 
-        if (_sweeperPasses.incrementAndGet() < 3) {
-            return;
-        }
-
-        remove();
+        return true;
     }
 
     public void remove() {
@@ -382,7 +501,9 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
     }
 
     public void removeAuthorizer(Authorizer authorizer) {
-        _authorizers.remove(authorizer);
+        if (_authorizers.remove(authorizer)) {
+            _bayeux.channelSweepable(this);
+        }
     }
 
     public List<Authorizer> getAuthorizers() {
@@ -445,7 +566,7 @@ public class ServerChannelImpl implements ServerChannel, Dumpable {
             @Override
             public void dump(Appendable out, String indent) throws IOException {
                 Set<ServerSession> subscribers = getSubscribers();
-                ContainerLifeCycle.dumpObject(out, "subscribers: " + subscribers.size());
+                ContainerLifeCycle.dumpObject(out, String.format("subscribers: %d, %s", subscribers.size(), _statistics));
                 if (_bayeux.isDetailedDump()) {
                     ContainerLifeCycle.dump(out, indent, subscribers);
                 }
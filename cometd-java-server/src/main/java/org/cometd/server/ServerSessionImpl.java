@@ -32,6 +32,7 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -47,15 +48,21 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
     private final String _id;
     private final List<ServerSessionListener> _listeners = new CopyOnWriteArrayList<>();
     private final List<Extension> _extensions = new CopyOnWriteArrayList<>();
-    private final Queue<ServerMessage> _queue = new ArrayDeque<>();
+    private final MessageQueue _queue = new MessageQueue();
     private final LocalSessionImpl _localSession;
     private final AttributesMap _attributes = new AttributesMap();
     private final AtomicReference<SessionState> _sessionState = new AtomicReference<>(UNINITILIZED);
     private final Map<ServerChannelImpl, Boolean> _subscribedTo = new ConcurrentHashMap<>();
     private final LazyTask _lazyTask = new LazyTask();
+    private final AtomicLong _sweepTick = new AtomicLong(SessionSweeper.NONE);
     private volatile Scheduler _scheduler;
     private ServerTransport _advisedTransport;
     private int _maxQueue = -1;
+    private long _maxQueueBytes = -1;
+    private QueueOverflowPolicy _overflowPolicy = QueueOverflowPolicy.NONE;
+    private final AtomicLong _droppedMessages = new AtomicLong();
+    private final AtomicLong _coalescedMessages = new AtomicLong();
+    private final AtomicBoolean _overflowDisconnect = new AtomicBoolean();
     private long _transientTimeout = -1;
     private long _transientInterval = -1;
     private long _timeout = -1;
@@ -64,11 +71,11 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
     private long _maxServerInterval = -1;
     private long _maxLazy = -1;
     private boolean _metaConnectDelivery;
-    private int _batch;
+    private volatile int _batch;
     private String _userAgent;
     private long _connectTimestamp = -1;
     private long _intervalTimestamp;
-    private boolean _nonLazyMessages;
+    private volatile boolean _nonLazyMessages;
     private boolean _broadcastToPublisher;
     private long _inactiveInterval = -1;
     private final long _creationTime;
@@ -146,6 +153,29 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
         }
     }
 
+    /**
+     * @return the time after which {@link #sweep(long)} may expire this session, or -1 if it cannot expire
+     */
+    long getSweepDeadline() {
+        if (isLocalSession()) {
+            return -1;
+        }
+        synchronized (getLock()) {
+            if (_intervalTimestamp == 0) {
+                return _maxServerInterval > 0 ? _connectTimestamp + _maxServerInterval : -1;
+            }
+            return _intervalTimestamp;
+        }
+    }
+
+    long getSweepTick() {
+        return _sweepTick.get();
+    }
+
+    boolean compareAndSetSweepTick(long expected, long tick) {
+        return _sweepTick.compareAndSet(expected, tick);
+    }
+
     public Set<ServerChannel> getSubscriptions() {
         return Collections.<ServerChannel>unmodifiableSet(_subscribedTo.keySet());
     }
@@ -236,7 +266,19 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
     }
 
     private Boolean enqueueMessage(ServerSession sender, ServerMessage.Mutable message) {
+        boolean bounded = _overflowPolicy != QueueOverflowPolicy.NONE;
+        if (!bounded && _listeners.isEmpty()) {
+            // The queue is lock free, the session lock is only needed to serialize listeners and the overflow policy.
+            addMessage(message);
+            return _batch == 0;
+        }
+        // Estimated outside of the lock, since it may serialize the message.
+        int bytes = bounded && _maxQueueBytes > 0 ? MessageQueue.estimate(message) : 0;
         synchronized (getLock()) {
+            // Under the same lock as the enqueue, so that concurrent publishers do not make room for each other.
+            if (bounded && !applyOverflowPolicy(message, bytes)) {
+                return null;
+            }
             if (!_listeners.isEmpty()) {
                 for (ServerSessionListener listener : _listeners) {
                     if (listener instanceof MaxQueueListener) {
@@ -274,6 +316,113 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
         return message;
     }
 
+    /**
+     * <p>Makes room for the given message according to the {@link QueueOverflowPolicy overflow policy},
+     * if the queue holds {@code maxQueue} messages or if the message would exceed {@code maxQueueBytes}.</p>
+     * <p>Must be called with the session lock held, along with the enqueue of the message.</p>
+     *
+     * @param message the message to queue
+     * @param bytes   the estimated size of the message, or 0 if {@code maxQueueBytes} is not set
+     * @return whether the message should be queued
+     */
+    private boolean applyOverflowPolicy(ServerMessage message, int bytes) {
+        if (!isOverflowing(bytes)) {
+            return true;
+        }
+
+        QueueOverflowPolicy policy = _overflowPolicy;
+        int dropped = 0;
+        boolean queue = true;
+        switch (policy) {
+            case DROP_NEWEST:
+                queue = false;
+                break;
+            case COALESCE:
+                // The older version of the message, if still queued, is found through the key index of the queue.
+                Object key = queueKeyOf(message);
+                if (key != null && _queue.removeKey(key) != null) {
+                    ++dropped;
+                }
+                dropped += dropOldest(bytes);
+                break;
+            case DROP_OLDEST:
+                dropped += dropOldest(bytes);
+                break;
+            case DISCONNECT:
+                queue = false;
+                if (_overflowDisconnect.compareAndSet(false, true)) {
+                    _logger.info("Disconnecting session {}, queue overflow: {} messages, {} bytes", getId(), _queue.size(), _queue.getBytes());
+                    _bayeux.overflowDisconnected();
+                    // Not from the publishing thread, that may hold locks or iterate the subscribers.
+                    _bayeux.schedule(this::disconnect, 0);
+                }
+                break;
+            default:
+                break;
+        }
+        if (!queue) {
+            ++dropped;
+        }
+        if (dropped > 0) {
+            _droppedMessages.addAndGet(dropped);
+            _bayeux.messagesDropped(dropped);
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Queue overflow for session {}, policy {}, dropped {} messages", getId(), policy, dropped);
+            }
+        }
+        return queue;
+    }
+
+    private boolean isOverflowing(int bytes) {
+        return (_maxQueue > 0 && _queue.size() >= _maxQueue) ||
+                (_maxQueueBytes > 0 && _queue.getBytes() + bytes > _maxQueueBytes);
+    }
+
+    private int dropOldest(int bytes) {
+        int dropped = 0;
+        while (isOverflowing(bytes)) {
+            if (_queue.poll() == null) {
+                break;
+            }
+            ++dropped;
+        }
+        return dropped;
+    }
+
+    private static Object coalescingKeyOf(ServerMessage message) {
+        if (message instanceof WeakMessage && message.isLazy()) {
+            return ((WeakMessage)message).getCoalescingKey();
+        }
+        return null;
+    }
+
+    /**
+     * @param message the message to queue
+     * @return the key of the given message in the queue, that is its channel and its coalescing key, or null
+     */
+    private static Object queueKeyOf(ServerMessage message) {
+        Object key = coalescingKeyOf(message);
+        return key == null ? null : new AbstractMap.SimpleImmutableEntry<>(message.getChannel(), key);
+    }
+
+    /**
+     * @return the number of queued lazy messages replaced by a newer message with the same coalescing key
+     */
+    public long getCoalescedMessages() {
+        return _coalescedMessages.get();
+    }
+
+    /**
+     * @return the number of messages dropped by the {@link QueueOverflowPolicy queue overflow policy} of this session
+     */
+    public long getDroppedMessages() {
+        return _droppedMessages.get();
+    }
+
+    public QueueOverflowPolicy getQueueOverflowPolicy() {
+        return _overflowPolicy;
+    }
+
     private boolean notifyQueueMaxed(MaxQueueListener listener, ServerSession session, Queue<ServerMessage> queue, ServerSession sender, ServerMessage message) {
         _logger.debug("queue exceeded max size session : {}", getId());
         try {
@@ -308,11 +457,14 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
 
         if (transport != null) {
             _maxQueue = transport.getOption(AbstractServerTransport.MAX_QUEUE_OPTION, -1);
+            _maxQueueBytes = transport.getOption(QueueOverflowPolicy.MAX_QUEUE_BYTES_OPTION, -1L);
+            _overflowPolicy = QueueOverflowPolicy.from(transport.getOption(QueueOverflowPolicy.POLICY_OPTION));
             _maxInterval = transport.getMaxInterval();
             _maxServerInterval = transport.getOption("maxServerInterval", -1);
             _maxLazy = transport.getMaxLazyTimeout();
             _inactiveInterval = transport.getOption("inactiveInterval", TimeUnit.MINUTES.toMillis(DEFAULT_INACTIVE_INTERVAL));
         }
+        _bayeux.scheduleSweep(this);
     }
 
     protected void connected() {
@@ -383,45 +535,99 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
     }
 
     public boolean hasNonLazyMessages() {
-        synchronized (getLock()) {
-            return _nonLazyMessages;
-        }
+        return _nonLazyMessages;
     }
 
     public void addMessage(ServerMessage message) {
         if (_logger.isDebugEnabled()) { // additional check, because `WeakMessage.getJSON() is lazy`
             _logger.debug("enqueue message {} - {}", getId(), message.getJSON());
         }
-        synchronized (getLock()) {
-            _queue.add(message);
-            _nonLazyMessages |= !message.isLazy();
+        // The queue retains the frame of the message, the transport
+        // releases it once the message has been taken and written.
+        Object key = queueKeyOf(message);
+        if (key == null) {
+            _queue.offer(message);
+        } else {
+            ServerMessage replaced = _queue.offer(message, key);
+            if (replaced != null) {
+                _coalescedMessages.incrementAndGet();
+            }
+        }
+        // Set after the message is queued, so that a concurrent takeQueue() cannot miss it.
+        if (!message.isLazy()) {
+            _nonLazyMessages = true;
+        }
+    }
+
+    /**
+     * <p>Puts back in the queue messages returned by {@link #takeQueue()} whose write failed,
+     * handing the references to their frames back to the queue instead of releasing them.</p>
+     *
+     * @param messages the messages to put back in the queue
+     */
+    public void requeue(List<ServerMessage> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        _queue.requeue(messages);
+        for (int i = 0, size = messages.size(); i < size; ++i) {
+            if (!messages.get(i).isLazy()) {
+                _nonLazyMessages = true;
+                break;
+            }
         }
     }
 
     public List<ServerMessage> takeQueue() {
-        List<ServerMessage> copy = Collections.emptyList();
+        if (_listeners.isEmpty()) {
+            return drainQueue();
+        }
 
         synchronized (getLock()) {
-            // Always call listeners, even if the queue is
-            // empty since they may add messages to the queue.
-            if (!_listeners.isEmpty()) {
-                for (ServerSessionListener listener : _listeners) {
-                    if (listener instanceof DeQueueListener) {
-                        notifyDeQueue((DeQueueListener) listener, this, _queue);
-                    }
-                }
-            }
+            notifyDeQueue();
+            return drainQueue();
+        }
+    }
 
-            int size = _queue.size();
-            if (size > 0) {
-                copy = new ArrayList<>(size);
-                copy.addAll(_queue);
-                _queue.clear();
-            }
+    /**
+     * <p>Moves the queued messages to the given collection, along with the references to their
+     * frames, so that callers writing the messages synchronously can reuse the same collection
+     * instead of allocating a new list on every {@link #takeQueue()}.</p>
+     *
+     * @param messages the collection to add the messages to
+     * @return the number of messages taken
+     */
+    public int takeQueue(Collection<? super ServerMessage> messages) {
+        if (_listeners.isEmpty()) {
+            return drainQueue(messages);
+        }
 
-            _nonLazyMessages = false;
+        synchronized (getLock()) {
+            notifyDeQueue();
+            return drainQueue(messages);
         }
-        return copy;
+    }
+
+    private void notifyDeQueue() {
+        // Always call listeners, even if the queue is
+        // empty since they may add messages to the queue.
+        for (ServerSessionListener listener : _listeners) {
+            if (listener instanceof DeQueueListener) {
+                notifyDeQueue((DeQueueListener) listener, this, _queue);
+            }
+        }
+    }
+
+    private List<ServerMessage> drainQueue() {
+        // Reset before draining: a message queued concurrently either
+        // is drained or sets the flag again after this reset.
+        _nonLazyMessages = false;
+        return _queue.drain();
+    }
+
+    private int drainQueue(Collection<? super ServerMessage> messages) {
+        _nonLazyMessages = false;
+        return _queue.drainTo(messages);
     }
 
     private void notifyDeQueue(DeQueueListener listener, ServerSession serverSession, Queue<ServerMessage> queue) {
@@ -482,13 +688,15 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
 
         // do local delivery
         if (_localSession != null && hasNonLazyMessages()) {
-            for (ServerMessage msg : takeQueue()) {
+            List<ServerMessage> messages = takeQueue();
+            for (ServerMessage msg : messages) {
                 if (msg instanceof WeakMessage) {
                     _localSession.receive(((WeakMessage) msg).copy());
                 } else {
                     _localSession.receive(new HashMapMessage(msg));
                 }
             }
+            EncodedFrame.release(messages);
         }
     }
 
@@ -532,6 +740,7 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
             _connectTimestamp = now;
             _intervalTimestamp = 0;
         }
+        _bayeux.scheduleSweep(this);
     }
 
     public void startIntervalTimeout(long defaultInterval) {
@@ -540,6 +749,7 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
         synchronized (getLock()) {
             _intervalTimestamp = now + interval + _maxInterval;
         }
+        _bayeux.scheduleSweep(this);
     }
 
     public SessionState getState() {
@@ -829,18 +1039,20 @@ public class ServerSessionImpl implements ServerSession, Dumpable {
     public void activate() {
         _logger.debug("changing session {} state {} -> {}", getId(), _sessionState.get(), ACTIVE);
         if (_sessionState.getAndSet(ACTIVE) != ACTIVE) {
-            synchronized (_queue) {
+            synchronized (getLock()) {
                 _intervalTimestamp = System.currentTimeMillis() + _maxInterval;
             }
+            _bayeux.scheduleSweep(this);
         }
     }
 
     public void deactivate() {
         _logger.debug("changing session {} state {} -> {}", getId(), _sessionState.get(), INACTIVE);
         if (_sessionState.getAndSet(INACTIVE) != INACTIVE) {
-            synchronized (_queue) {
+            synchronized (getLock()) {
                 _intervalTimestamp = System.currentTimeMillis() + calculateInterval(0) + _inactiveInterval;
             }
+            _bayeux.scheduleSweep(this);
         }
     }
 
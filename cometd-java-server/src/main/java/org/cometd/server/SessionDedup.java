@@ -0,0 +1,119 @@
+package org.cometd.server;
+
+/**
+ * <p>Identity set of the sessions a broadcast has already been delivered to, used to avoid
+ * delivering a message twice to a session that subscribed both a wildcard and a leaf channel.</p>
+ * <p>Instances are reused per thread via {@link #acquire()} and {@link #release()}, so that a
+ * publish allocates nothing once the table of the thread has grown to the size of its largest
+ * fan-out. Publishes nested in a delivery on the same thread (e.g. from a listener) get a fresh
+ * instance.</p>
+ */
+final class SessionDedup {
+    private static final int INITIAL_CAPACITY = 64;
+    // Tables above this size are dropped on release, not to retain memory after a huge publish.
+    private static final int MAX_RETAINED_CAPACITY = 1 << 16;
+    private static final ThreadLocal<SessionDedup> CACHE = ThreadLocal.withInitial(SessionDedup::new);
+
+    private Object[] _table = new Object[INITIAL_CAPACITY];
+    // Indexes of the occupied slots of the table, at most half of them, so that release() only clears those.
+    private int[] _slots = new int[INITIAL_CAPACITY / 2];
+    private int _size;
+    private boolean _inUse;
+
+    static SessionDedup acquire() {
+        SessionDedup dedup = CACHE.get();
+        if (dedup._inUse) {
+            dedup = new SessionDedup();
+        }
+        dedup._inUse = true;
+        return dedup;
+    }
+
+    /**
+     * @param session the session to add
+     * @return true if the session was not already present
+     */
+    boolean add(Object session) {
+        if ((_size + 1) * 2 > _table.length) {
+            resize();
+        }
+        Object[] table = _table;
+        int mask = table.length - 1;
+        int index = indexOf(session, mask);
+        while (true) {
+            Object existing = table[index];
+            if (existing == null) {
+                table[index] = session;
+                _slots[_size++] = index;
+                return true;
+            }
+            if (existing == session) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    boolean contains(Object session) {
+        Object[] table = _table;
+        int mask = table.length - 1;
+        int index = indexOf(session, mask);
+        while (true) {
+            Object existing = table[index];
+            if (existing == null) {
+                return false;
+            }
+            if (existing == session) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    int size() {
+        return _size;
+    }
+
+    void release() {
+        if (_size > 0) {
+            if (_table.length > MAX_RETAINED_CAPACITY) {
+                _table = new Object[INITIAL_CAPACITY];
+                _slots = new int[INITIAL_CAPACITY / 2];
+            } else {
+                Object[] table = _table;
+                int[] slots = _slots;
+                for (int i = 0; i < _size; ++i) {
+                    table[slots[i]] = null;
+                }
+            }
+            _size = 0;
+        }
+        _inUse = false;
+    }
+
+    private static int indexOf(Object session, int mask) {
+        int hash = System.identityHashCode(session);
+        // Spread the bits, identity hashes are not uniformly distributed in the low bits.
+        hash *= 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void resize() {
+        Object[] old = _table;
+        int[] oldSlots = _slots;
+        Object[] table = new Object[old.length * 2];
+        int[] slots = new int[table.length / 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < _size; ++i) {
+            Object session = old[oldSlots[i]];
+            int index = indexOf(session, mask);
+            while (table[index] != null) {
+                index = (index + 1) & mask;
+            }
+            table[index] = session;
+            slots[i] = index;
+        }
+        _table = table;
+        _slots = slots;
+    }
+}
@@ -0,0 +1,109 @@
+package org.cometd.server;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * <p>Deadline queue of the sessions to sweep, so that the periodic sweep only visits the
+ * sessions whose interval (or max server interval) may have expired, instead of scanning
+ * and locking every session.</p>
+ * <p>Deadlines are rounded up to ticks of the sweep period, and each tick maps to the
+ * sessions due at that tick. A session is registered at most once: when its deadline moves
+ * later it keeps its earlier registration, and is re-registered with its current deadline
+ * when visited; when its deadline moves earlier it is registered again at the earlier tick
+ * and the later entry becomes stale, and is skipped when its tick is reached.</p>
+ */
+class SessionSweeper {
+    static final long NONE = Long.MAX_VALUE;
+
+    private final ConcurrentSkipListMap<Long, Set<ServerSessionImpl>> _ticks = new ConcurrentSkipListMap<>();
+    private final long _tickMillis;
+
+    SessionSweeper(long tickMillis) {
+        _tickMillis = Math.max(1, tickMillis);
+    }
+
+    /**
+     * <p>Registers the given session to be visited once its current sweep deadline has passed.</p>
+     *
+     * @param session the session to register
+     */
+    void register(ServerSessionImpl session) {
+        long deadline = session.getSweepDeadline();
+        if (deadline < 0) {
+            return;
+        }
+        // Sessions are swept when the time is strictly after the deadline.
+        long tick = (deadline + 1 + _tickMillis - 1) / _tickMillis;
+        while (true) {
+            long registered = session.getSweepTick();
+            if (registered <= tick) {
+                return;
+            }
+            if (session.compareAndSetSweepTick(registered, tick)) {
+                add(tick, session);
+                return;
+            }
+        }
+    }
+
+    private void add(long tick, ServerSessionImpl session) {
+        while (true) {
+            Set<ServerSessionImpl> sessions = _ticks.computeIfAbsent(tick, key -> ConcurrentHashMap.newKeySet());
+            sessions.add(session);
+            // A sweep that polled the set before the session was added may have missed it,
+            // so add it to the set that replaced it; a second visit is skipped as stale.
+            if (_ticks.get(tick) == sessions) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * <p>Visits the sessions whose tick has been reached.</p>
+     *
+     * @param now     the current time
+     * @param visitor the function that sweeps a session, returning whether the session is still alive
+     * @return the number of sessions visited
+     */
+    int sweep(long now, Visitor visitor) {
+        int visited = 0;
+        ConcurrentNavigableMap<Long, Set<ServerSessionImpl>> due = _ticks.headMap(now / _tickMillis, true);
+        Map.Entry<Long, Set<ServerSessionImpl>> entry;
+        // Each set is removed before it is iterated, so that registrations racing
+        // with this sweep either are seen by the iteration or go to a new set.
+        while ((entry = due.pollFirstEntry()) != null) {
+            long tick = entry.getKey();
+            for (ServerSessionImpl session : entry.getValue()) {
+                // Skip stale entries, the session was registered again at an earlier tick.
+                if (!session.compareAndSetSweepTick(tick, NONE)) {
+                    continue;
+                }
+                ++visited;
+                if (visitor.visit(session, now)) {
+                    register(session);
+                }
+            }
+        }
+        return visited;
+    }
+
+    int size() {
+        int size = 0;
+        for (Set<ServerSessionImpl> sessions : _ticks.values()) {
+            size += sessions.size();
+        }
+        return size;
+    }
+
+    void clear() {
+        _ticks.clear();
+    }
+
+    interface Visitor {
+        boolean visit(ServerSessionImpl session, long now);
+    }
+}
@@ -0,0 +1,152 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerSession;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Concurrent set of the subscribers of a channel.</p>
+ * <p>Sessions are spread over a fixed number of concurrent hash sets, so that subscribing and
+ * unsubscribing are O(1) and do not contend with each other, unlike a copy-on-write set that
+ * copies the whole array and scans it on every change, which is quadratic during a reconnect
+ * storm on a channel with many subscribers.</p>
+ * <p>Iteration is weakly consistent: it never throws {@link java.util.ConcurrentModificationException},
+ * sees every session that was subscribed for the whole iteration and may or may not see sessions
+ * subscribed or unsubscribed concurrently. The {@link #getShards() shards} can be iterated
+ * independently to fan out a publish in parallel.</p>
+ */
+public class ShardedSubscriberSet extends AbstractSet<ServerSession> {
+    private final Set<ServerSession>[] shards;
+    private final List<Set<ServerSession>> shardList;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public ShardedSubscriberSet() {
+        this(defaultShards());
+    }
+
+    public ShardedSubscriberSet(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Invalid shard count: " + shardCount);
+        }
+        // Power of two, so that the shard index is a simple mask.
+        int count = Integer.highestOneBit(shardCount);
+        if (count < shardCount) {
+            count <<= 1;
+        }
+        @SuppressWarnings("unchecked")
+        Set<ServerSession>[] sets = (Set<ServerSession>[])new Set<?>[count];
+        for (int i = 0; i < count; ++i) {
+            sets[i] = ConcurrentHashMap.newKeySet();
+        }
+        shards = sets;
+        shardList = Collections.unmodifiableList(Arrays.asList(sets));
+    }
+
+    private static int defaultShards() {
+        return Math.min(16, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    private Set<ServerSession> shardOf(Object session) {
+        int hash = session.hashCode();
+        hash ^= hash >>> 16;
+        return shards[hash & (shards.length - 1)];
+    }
+
+    @Override
+    public boolean add(ServerSession session) {
+        if (shardOf(session).add(session)) {
+            size.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean remove(Object session) {
+        if (session != null && shardOf(session).remove(session)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(Object session) {
+        return session != null && shardOf(session).contains(session);
+    }
+
+    @Override
+    public int size() {
+        return Math.max(0, size.get());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public void clear() {
+        for (Set<ServerSession> shard : shards) {
+            for (ServerSession session : shard) {
+                // Only count the removals performed here, others may be removing concurrently.
+                if (shard.remove(session)) {
+                    size.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the shards of this set, each one a weakly consistent concurrent set that must not be modified directly
+     */
+    public List<Set<ServerSession>> getShards() {
+        return shardList;
+    }
+
+    @Override
+    public Iterator<ServerSession> iterator() {
+        return new Iterator<ServerSession>() {
+            private int index;
+            private Iterator<ServerSession> current = shards[0].iterator();
+            private ServerSession last;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (index + 1 == shards.length) {
+                        return false;
+                    }
+                    current = shards[++index].iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public ServerSession next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = current.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                ShardedSubscriberSet.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,256 @@
+package org.cometd.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Runs the tasks of a transport on virtual threads, see {@link ExecutionMode#VIRTUAL}.</p>
+ * <p>Virtual threads are created by reflection, since they are not available on all the supported JVMs;
+ * when they are not, the tasks run on a pool of platform threads bounded by the concurrency cap, or by
+ * {@link ExecutionMode#DEFAULT_MAX_CONCURRENCY} threads when there is no cap.
+ * The number of tasks running at once is capped by a semaphore rather than by the size of a pool:
+ * the tasks exceeding the cap are queued, and run as the running ones complete.</p>
+ * <p>The tasks submitted with {@link #execute(Object, Runnable)} run one at a time and in submission
+ * order for the same key, such as a session id, so that the handling of the messages of a session
+ * keeps its order while different sessions run concurrently.</p>
+ */
+public class TransportExecutor extends AbstractLifeCycle implements Executor {
+    private static final Logger _logger = LoggerFactory.getLogger(TransportExecutor.class);
+
+    private final Queue<Runnable> _queue = new ConcurrentLinkedQueue<>();
+    private final ConcurrentMap<Object, SerialQueue> _serials = new ConcurrentHashMap<>();
+    private final AtomicInteger _active = new AtomicInteger();
+    private final String _name;
+    private final int _maxConcurrency;
+    private final Semaphore _permits;
+    private volatile ExecutorService _threads;
+    private volatile boolean _virtual;
+
+    /**
+     * @param name           the name prefix of the platform threads
+     * @param maxConcurrency the maximum number of tasks running at once, or 0 for no limit on virtual threads
+     */
+    public TransportExecutor(String name, int maxConcurrency) {
+        _name = name;
+        _maxConcurrency = Math.max(0, maxConcurrency);
+        _permits = _maxConcurrency > 0 ? new Semaphore(_maxConcurrency) : null;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        ExecutorService threads = newVirtualThreadExecutor();
+        _virtual = threads != null;
+        if (threads == null) {
+            int size = _maxConcurrency > 0 ? _maxConcurrency : ExecutionMode.DEFAULT_MAX_CONCURRENCY;
+            _logger.info("Virtual threads not supported, running {} on at most {} platform threads", _name, size);
+            AtomicInteger ids = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), task -> {
+                Thread thread = new Thread(task, _name + "-" + ids.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Threads are created on demand and released when idle, like those of a cached pool.
+            pool.allowCoreThreadTimeOut(true);
+            threads = pool;
+        }
+        _threads = threads;
+        super.doStart();
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Throwable x) {
+            _logger.trace("", x);
+            return null;
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        ExecutorService threads = _threads;
+        _threads = null;
+        if (threads != null) {
+            threads.shutdown();
+            if (!threads.awaitTermination(5, TimeUnit.SECONDS)) {
+                threads.shutdownNow();
+            }
+        }
+        _queue.clear();
+        _serials.clear();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (_permits == null) {
+            run(task);
+        } else {
+            _queue.offer(task);
+            drain();
+        }
+    }
+
+    /**
+     * @param key  the key of the tasks that must run one at a time, in submission order
+     * @param task the task to run
+     */
+    public void execute(Object key, Runnable task) {
+        while (true) {
+            SerialQueue serial = _serials.computeIfAbsent(key, SerialQueue::new);
+            if (serial.offer(task)) {
+                return;
+            }
+            // The queue was drained and removed concurrently, retry with a new one.
+        }
+    }
+
+    private void drain() {
+        while (!_queue.isEmpty() && _permits.tryAcquire()) {
+            Runnable task = _queue.poll();
+            if (task == null) {
+                _permits.release();
+                continue;
+            }
+            run(task);
+        }
+    }
+
+    private void run(Runnable task) {
+        ExecutorService threads = _threads;
+        if (threads == null) {
+            // Rejected before being counted as active: only the permit is given back.
+            _logger.debug("Could not run task {}, {} is not started", task, this);
+            releasePermit();
+            return;
+        }
+        _active.incrementAndGet();
+        try {
+            threads.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable x) {
+                    _logger.info("Exception while running task " + task, x);
+                } finally {
+                    complete();
+                }
+            });
+        } catch (RejectedExecutionException x) {
+            _logger.debug("Could not run task " + task, x);
+            _active.decrementAndGet();
+            releasePermit();
+        }
+    }
+
+    private void complete() {
+        _active.decrementAndGet();
+        if (_permits != null) {
+            _permits.release();
+            drain();
+        }
+    }
+
+    /**
+     * <p>Gives back the permit of a task that was not run, without draining: the caller is either
+     * {@link #drain()} itself, or {@link #execute(Runnable)} without a concurrency cap.</p>
+     */
+    private void releasePermit() {
+        if (_permits != null) {
+            _permits.release();
+        }
+    }
+
+    /**
+     * @return whether the tasks run on virtual threads
+     */
+    public boolean isVirtual() {
+        return _virtual;
+    }
+
+    public int getMaxConcurrency() {
+        return _maxConcurrency;
+    }
+
+    /**
+     * @return the number of tasks running
+     */
+    public int getActiveTasks() {
+        return _active.get();
+    }
+
+    /**
+     * @return the number of tasks waiting for the concurrency cap
+     */
+    public int getQueuedTasks() {
+        return _queue.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[%s,virtual=%b,max=%d,active=%d,queued=%d]", getClass().getSimpleName(), hashCode(),
+                _name, _virtual, _maxConcurrency, _active.get(), _queue.size());
+    }
+
+    private class SerialQueue implements Runnable {
+        private final Queue<Runnable> _tasks = new ArrayDeque<>();
+        private final Object _key;
+        private boolean _running;
+        private boolean _closed;
+
+        private SerialQueue(Object key) {
+            _key = key;
+        }
+
+        private boolean offer(Runnable task) {
+            synchronized (this) {
+                if (_closed) {
+                    return false;
+                }
+                _tasks.offer(task);
+                if (_running) {
+                    return true;
+                }
+                _running = true;
+            }
+            execute(this);
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                synchronized (this) {
+                    task = _tasks.poll();
+                    if (task == null) {
+                        _running = false;
+                        _closed = true;
+                        _serials.remove(_key, this);
+                        return;
+                    }
+                }
+                try {
+                    task.run();
+                } catch (Throwable x) {
+                    _logger.info("Exception while running task " + task, x);
+                }
+            }
+        }
+    }
+}
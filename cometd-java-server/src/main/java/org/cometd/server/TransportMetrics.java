@@ -0,0 +1,139 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.Channel;
+
+import java.util.Locale;
+
+/**
+ * <p>Receives the measures of the hot paths of a transport: parsing, processing, suspended
+ * {@code /meta/connect}, and writes.</p>
+ * <p>The implementation is configured with the {@link #OPTION} transport option:</p>
+ * <ul>
+ * <li>{@code none}, the default, measures nothing, and the transports do not even read the clock;</li>
+ * <li>{@code jmx} records the measures in {@link Histogram}s exposed as a platform MBean, see {@link JMXTransportMetrics};</li>
+ * <li>{@code micrometer} records the measures in the global Micrometer registry, see {@link MicrometerTransportMetrics};</li>
+ * <li>a Micrometer {@code MeterRegistry} records the measures in that registry;</li>
+ * <li>a {@link TransportMetrics} instance is used as it is.</li>
+ * </ul>
+ * <p>Methods are invoked concurrently, and must return quickly.</p>
+ */
+public interface TransportMetrics {
+    String OPTION = "metrics";
+
+    /**
+     * Measures nothing.
+     */
+    TransportMetrics NONE = new TransportMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void parsed(int messages, long nanos) {
+        }
+
+        @Override
+        public void processed(String channel, long nanos) {
+        }
+
+        @Override
+        public void suspended(long nanos) {
+        }
+
+        @Override
+        public void written(long bytes) {
+        }
+
+        @Override
+        public void writeFailed(int messages) {
+        }
+    };
+
+    /**
+     * @return whether the transports must measure, false to skip reading the clock
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * @param messages the number of messages parsed
+     * @param nanos    the time taken to parse them
+     */
+    void parsed(int messages, long nanos);
+
+    /**
+     * @param channel the channel of the processed message
+     * @param nanos   the time taken to process the message, including the extensions and the listeners
+     */
+    void processed(String channel, long nanos);
+
+    /**
+     * @param nanos the time a {@code /meta/connect} has been suspended before being resumed
+     */
+    void suspended(long nanos);
+
+    /**
+     * @param bytes the number of bytes written by a response or a frame
+     */
+    void written(long bytes);
+
+    /**
+     * @param messages the number of messages of the failed write, put back in the session queue by the HTTP transports
+     */
+    void writeFailed(int messages);
+
+    /**
+     * Releases the resources of this instance, when the transport is destroyed.
+     */
+    default void close() {
+    }
+
+    /**
+     * @param channel a channel name
+     * @return the group of the channel the measures are aggregated by: meta channels as they are,
+     * other channels by their first segment (e.g. {@code /devices/**}), to bound the number of groups
+     */
+    static String channelGroup(String channel) {
+        if (channel == null) {
+            return "unknown";
+        }
+        if (channel.startsWith(Channel.META)) {
+            return channel;
+        }
+        int slash = channel.indexOf('/', 1);
+        return slash < 0 ? channel : channel.substring(0, slash) + "/**";
+    }
+
+    /**
+     * @param value     the value of the {@link #OPTION} option
+     * @param transport the name of the transport
+     * @return the metrics of the transport
+     * @throws IllegalArgumentException if the value is not valid
+     * @throws IllegalStateException    if Micrometer is requested but not available
+     */
+    static TransportMetrics from(Object value, String transport) {
+        if (value == null) {
+            return NONE;
+        }
+        if (value instanceof TransportMetrics) {
+            return (TransportMetrics)value;
+        }
+        if (!(value instanceof String)) {
+            return MicrometerTransportMetrics.of(value, transport);
+        }
+        String name = value.toString().trim().toLowerCase(Locale.ENGLISH);
+        switch (name) {
+            case "":
+            case "none":
+                return NONE;
+            case "jmx":
+                return JMXTransportMetrics.register(transport);
+            case "micrometer":
+                return MicrometerTransportMetrics.global(transport);
+            default:
+                throw new IllegalArgumentException("Invalid transport metrics: " + value);
+        }
+    }
+}
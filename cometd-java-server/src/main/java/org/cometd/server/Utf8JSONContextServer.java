@@ -0,0 +1,426 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>{@link JettyJSONContextServer} that also parses Bayeux messages straight from their UTF-8 bytes,
+ * without decoding them to characters first, see {@link #parse(byte[], int, int)}.</p>
+ * <p>The result is the same as the one of {@link JettyJSONContextServer}: messages are
+ * {@link ServerMessageImpl}s, objects are {@link HashMap}s, arrays are {@code Object[]}, integers are
+ * {@link Long}s and decimals are {@link Double}s. The common Bayeux field names are interned, so that
+ * parsing them does not allocate.</p>
+ * <p>Configure it with the {@code jsonContext} option, the HTTP transports then use it for the
+ * UTF-8 request bodies.</p>
+ */
+public class Utf8JSONContextServer extends JettyJSONContextServer {
+    private static final String[] KEYS = {
+            "channel", "clientId", "id", "data", "ext", "advice", "successful", "subscription", "error",
+            "version", "minimumVersion", "supportedConnectionTypes", "connectionType", "timestamp",
+            "reconnect", "interval", "timeout", "ack", "timesync", "self", "authentication"
+    };
+    private static final byte[][] KEY_BYTES = new byte[KEYS.length][];
+
+    static {
+        for (int i = 0; i < KEYS.length; ++i) {
+            KEY_BYTES[i] = KEYS[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * @param buffer the UTF-8 bytes of a JSON array of messages, or of a single message, from position to limit
+     * @return the parsed messages
+     * @throws ParseException if the bytes are not valid JSON messages
+     */
+    public ServerMessage.Mutable[] parse(ByteBuffer buffer) throws ParseException {
+        if (buffer.hasArray()) {
+            return parse(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return parse(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param bytes  the UTF-8 bytes of a JSON array of messages, or of a single message
+     * @param offset the offset of the JSON text
+     * @param length the length of the JSON text
+     * @return the parsed messages, or null if the JSON text is empty
+     * @throws ParseException if the bytes are not valid JSON messages
+     */
+    public ServerMessage.Mutable[] parse(byte[] bytes, int offset, int length) throws ParseException {
+        return new Parser(bytes, offset, offset + length).parseMessages();
+    }
+
+    /**
+     * @param bytes  the UTF-8 bytes of a JSON value
+     * @param offset the offset of the JSON value
+     * @param length the length of the JSON value
+     * @return the parsed value, with the same types as the messages parsed by this context
+     * @throws ParseException if the bytes are not a valid JSON value
+     */
+    static Object parseValue(byte[] bytes, int offset, int length) throws ParseException {
+        return new Parser(bytes, offset, offset + length).parseSingleValue();
+    }
+
+    private static class Parser {
+        private final byte[] bytes;
+        private final int end;
+        private int index;
+        private StringBuilder builder;
+
+        private Parser(byte[] bytes, int offset, int end) {
+            this.bytes = bytes;
+            this.index = offset;
+            this.end = end;
+        }
+
+        private ServerMessage.Mutable[] parseMessages() throws ParseException {
+            skipWhitespace();
+            if (index == end) {
+                return null;
+            }
+            ServerMessage.Mutable[] result;
+            byte b = bytes[index];
+            if (b == '[') {
+                ++index;
+                List<ServerMessage.Mutable> messages = new ArrayList<>(4);
+                skipWhitespace();
+                if (peek() == ']') {
+                    ++index;
+                } else {
+                    while (true) {
+                        skipWhitespace();
+                        expect('{');
+                        messages.add(parseObject(new ServerMessageImpl()));
+                        skipWhitespace();
+                        byte next = next();
+                        if (next == ']') {
+                            break;
+                        }
+                        if (next != ',') {
+                            throw error("Expected ',' or ']'");
+                        }
+                    }
+                }
+                result = messages.toArray(new ServerMessage.Mutable[messages.size()]);
+            } else if (b == '{') {
+                ++index;
+                result = new ServerMessage.Mutable[]{parseObject(new ServerMessageImpl())};
+            } else {
+                throw error("Expected JSON array or object");
+            }
+            skipWhitespace();
+            if (index != end) {
+                throw error("Unexpected content");
+            }
+            return result;
+        }
+
+        private Object parseSingleValue() throws ParseException {
+            Object value = parseValue();
+            skipWhitespace();
+            if (index != end) {
+                throw error("Unexpected content");
+            }
+            return value;
+        }
+
+        private <M extends Map<String, Object>> M parseObject(M map) throws ParseException {
+            // The opening brace has been consumed.
+            skipWhitespace();
+            if (peek() == '}') {
+                ++index;
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                expect('"');
+                String key = parseKey();
+                skipWhitespace();
+                expect(':');
+                map.put(key, parseValue());
+                skipWhitespace();
+                byte next = next();
+                if (next == '}') {
+                    return map;
+                }
+                if (next != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private Object[] parseArray() throws ParseException {
+            // The opening bracket has been consumed.
+            skipWhitespace();
+            if (peek() == ']') {
+                ++index;
+                return new Object[0];
+            }
+            List<Object> list = new ArrayList<>();
+            while (true) {
+                list.add(parseValue());
+                skipWhitespace();
+                byte next = next();
+                if (next == ']') {
+                    return list.toArray();
+                }
+                if (next != ',') {
+                    throw error("Expected ',' or ']'");
+                }
+            }
+        }
+
+        private Object parseValue() throws ParseException {
+            skipWhitespace();
+            byte b = next();
+            switch (b) {
+                case '{':
+                    return parseObject(new HashMap<>());
+                case '[':
+                    return parseArray();
+                case '"':
+                    return parseString();
+                case 't':
+                    literal("rue");
+                    return Boolean.TRUE;
+                case 'f':
+                    literal("alse");
+                    return Boolean.FALSE;
+                case 'n':
+                    literal("ull");
+                    return null;
+                default:
+                    if (b == '-' || (b >= '0' && b <= '9')) {
+                        --index;
+                        return parseNumber();
+                    }
+                    --index;
+                    throw error("Unexpected character");
+            }
+        }
+
+        private String parseKey() throws ParseException {
+            // The opening quote has been consumed.
+            int start = index;
+            while (index < end) {
+                byte b = bytes[index];
+                if (b == '"') {
+                    String key = intern(start, index - start);
+                    if (key != null) {
+                        ++index;
+                        return key;
+                    }
+                    break;
+                }
+                if (b == '\\' || b < 0) {
+                    break;
+                }
+                ++index;
+            }
+            index = start;
+            return parseString();
+        }
+
+        private String parseString() throws ParseException {
+            // The opening quote has been consumed.
+            int start = index;
+            boolean ascii = true;
+            while (index < end) {
+                byte b = bytes[index];
+                if (b == '"') {
+                    String result = new String(bytes, start, index - start, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+                    ++index;
+                    return result;
+                }
+                if (b == '\\') {
+                    return parseEscapedString(start);
+                }
+                if (b < 0) {
+                    ascii = false;
+                }
+                ++index;
+            }
+            throw error("Unterminated string");
+        }
+
+        private String parseEscapedString(int start) throws ParseException {
+            StringBuilder builder = this.builder;
+            if (builder == null) {
+                builder = this.builder = new StringBuilder(64);
+            }
+            builder.setLength(0);
+            int segment = start;
+            while (index < end) {
+                byte b = bytes[index];
+                if (b == '"') {
+                    builder.append(new String(bytes, segment, index - segment, StandardCharsets.UTF_8));
+                    ++index;
+                    return builder.toString();
+                }
+                if (b == '\\') {
+                    builder.append(new String(bytes, segment, index - segment, StandardCharsets.UTF_8));
+                    ++index;
+                    byte escaped = next();
+                    switch (escaped) {
+                        case '"':
+                        case '\\':
+                        case '/':
+                            builder.append((char)escaped);
+                            break;
+                        case 'b':
+                            builder.append('\b');
+                            break;
+                        case 'f':
+                            builder.append('\f');
+                            break;
+                        case 'n':
+                            builder.append('\n');
+                            break;
+                        case 'r':
+                            builder.append('\r');
+                            break;
+                        case 't':
+                            builder.append('\t');
+                            break;
+                        case 'u':
+                            builder.append(parseUnicode());
+                            break;
+                        default:
+                            throw error("Invalid escape");
+                    }
+                    segment = index;
+                } else {
+                    ++index;
+                }
+            }
+            throw error("Unterminated string");
+        }
+
+        private char parseUnicode() throws ParseException {
+            if (end - index < 4) {
+                throw error("Invalid unicode escape");
+            }
+            int value = 0;
+            for (int i = 0; i < 4; ++i) {
+                int digit = Character.digit(bytes[index++], 16);
+                if (digit < 0) {
+                    throw error("Invalid unicode escape");
+                }
+                value = (value << 4) | digit;
+            }
+            return (char)value;
+        }
+
+        private Object parseNumber() throws ParseException {
+            int start = index;
+            boolean decimal = false;
+            if (peek() == '-') {
+                ++index;
+            }
+            long value = 0;
+            int digits = 0;
+            while (index < end) {
+                byte b = bytes[index];
+                if (b >= '0' && b <= '9') {
+                    value = value * 10 + (b - '0');
+                    ++digits;
+                    ++index;
+                } else if (b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                    decimal = true;
+                    ++index;
+                } else {
+                    break;
+                }
+            }
+            if (digits == 0) {
+                throw error("Invalid number");
+            }
+            if (!decimal && digits < 19) {
+                return bytes[start] == '-' ? -value : value;
+            }
+            String text = new String(bytes, start, index - start, StandardCharsets.ISO_8859_1);
+            try {
+                if (!decimal) {
+                    try {
+                        return Long.parseLong(text);
+                    } catch (NumberFormatException x) {
+                        // Too large for a long.
+                    }
+                }
+                return Double.parseDouble(text);
+            } catch (NumberFormatException x) {
+                throw error("Invalid number");
+            }
+        }
+
+        private String intern(int start, int length) {
+            for (int i = 0; i < KEY_BYTES.length; ++i) {
+                byte[] key = KEY_BYTES[i];
+                if (key.length == length && regionEquals(key, start)) {
+                    return KEYS[i];
+                }
+            }
+            return null;
+        }
+
+        private boolean regionEquals(byte[] key, int start) {
+            for (int i = 0; i < key.length; ++i) {
+                if (bytes[start + i] != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void literal(String rest) throws ParseException {
+            for (int i = 0; i < rest.length(); ++i) {
+                if (next() != rest.charAt(i)) {
+                    throw error("Invalid literal");
+                }
+            }
+        }
+
+        private void expect(char c) throws ParseException {
+            if (next() != c) {
+                --index;
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private byte peek() throws ParseException {
+            if (index == end) {
+                throw error("Unexpected end of JSON");
+            }
+            return bytes[index];
+        }
+
+        private byte next() throws ParseException {
+            byte b = peek();
+            ++index;
+            return b;
+        }
+
+        private void skipWhitespace() {
+            while (index < end) {
+                byte b = bytes[index];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+                    return;
+                }
+                ++index;
+            }
+        }
+
+        private ParseException error(String message) {
+            return new ParseException(message, index);
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package org.cometd.server;
 
-import org.apache.commons.io.IOUtils;
 import org.cometd.bayeux.Message;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.common.JSONContext;
@@ -8,17 +7,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.lang.ref.Reference;
 import java.lang.ref.WeakReference;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
 
 import static java.util.Objects.isNull;
 
@@ -31,19 +29,38 @@ public class WeakMessage extends ServerMessageImpl {
     private String _json;
     private transient byte[] _jsonBytes;
     private transient boolean _local;
-    private MessageFormat messageFormat;
+    private volatile MessageFormat messageFormat;
+    private transient volatile EncodedFrame _frame;
+    private transient Object _coalescingKey;
+    private transient volatile JSONFieldIndex _dataIndex;
+    private transient volatile boolean _dataIndexed;
+    private transient volatile Reference<Object> _dataCache;
+    private DataCachePolicy _dataCachePolicy = DataCachePolicy.SOFT;
+    private DataRetention _dataRetention = DataRetention.DEFAULT;
+    private transient ChannelStatistics _statistics;
     private final long _zipMessageSizeThreshold;
+    private final MessageCompression _compression;
     private final JSONContext.Server jsonContext;
     private final boolean ignoreNullDataField;
 
     public WeakMessage(long zipMessageSizeThreshold, JSONContext.Server jsonContext, boolean ignoreNullDataField) {
+        this(zipMessageSizeThreshold, MessageCompression.GZIP, jsonContext, ignoreNullDataField);
+    }
+
+    public WeakMessage(long zipMessageSizeThreshold, MessageCompression compression, JSONContext.Server jsonContext, boolean ignoreNullDataField) {
         this._zipMessageSizeThreshold = zipMessageSizeThreshold;
+        this._compression = compression;
         this.jsonContext = jsonContext;
         this.ignoreNullDataField = ignoreNullDataField;
     }
 
     public WeakMessage(Message message, long zipMessageSizeThreshold, JSONContext.Server jsonContext, boolean ignoreNullDataField) {
+        this(message, zipMessageSizeThreshold, MessageCompression.GZIP, jsonContext, ignoreNullDataField);
+    }
+
+    public WeakMessage(Message message, long zipMessageSizeThreshold, MessageCompression compression, JSONContext.Server jsonContext, boolean ignoreNullDataField) {
         this._zipMessageSizeThreshold = zipMessageSizeThreshold;
+        this._compression = compression;
         this.putAll(message);
         this.jsonContext = jsonContext;
         this.ignoreNullDataField = ignoreNullDataField;
@@ -88,23 +105,33 @@ public class WeakMessage extends ServerMessageImpl {
     }
 
     public WeakMessage copy() {
-        WeakMessage weakMessage = new WeakMessage(this, this._zipMessageSizeThreshold, this.jsonContext, this.ignoreNullDataField);
+        WeakMessage weakMessage = new WeakMessage(this, this._zipMessageSizeThreshold, this._compression, this.jsonContext, this.ignoreNullDataField);
         weakMessage._jsonBytes = this._jsonBytes;
         weakMessage._json = this._json;
         weakMessage.messageFormat = this.messageFormat;
         weakMessage.frozen = this.frozen;
+        weakMessage._frame = this._frame;
+        weakMessage._coalescingKey = this._coalescingKey;
+        weakMessage._dataIndex = this._dataIndex;
+        weakMessage._dataIndexed = this._dataIndexed;
+        weakMessage._dataCache = this._dataCache;
+        weakMessage._dataCachePolicy = this._dataCachePolicy;
+        weakMessage._dataRetention = this._dataRetention;
+        weakMessage._statistics = this._statistics;
         return weakMessage;
     }
 
-    private void setMessageFormat(String json) {
-        if (json.getBytes().length > _zipMessageSizeThreshold) {
-            _jsonBytes = zipData(json);
+    private int setMessageFormat(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > _zipMessageSizeThreshold) {
+            _jsonBytes = zipData(bytes);
             messageFormat = new ZipFormat();
         } else {
             _json = json;
-            _jsonBytes = json.getBytes(StandardCharsets.UTF_8);
+            _jsonBytes = bytes;
             messageFormat = new JsonFormat();
         }
+        return bytes.length;
     }
 
     @Override
@@ -118,31 +145,134 @@ public class WeakMessage extends ServerMessageImpl {
 
     @Override
     public String getJSON() {
+        EncodedFrame frame = getEncodedFrame();
+        if (frame != null) {
+            return frame.getJSON();
+        }
         serializeIfNeeded();
         return messageFormat.getJSON();
     }
 
     @Override
     public byte[] getJSONBytes() {
+        EncodedFrame frame = getEncodedFrame();
+        if (frame != null) {
+            return frame.getBytes();
+        }
         serializeIfNeeded();
         return messageFormat.getJSONBytes();
     }
 
+    /**
+     * @return the encoded frame shared by all the sessions this message is delivered to,
+     * or {@code null} if this message is not frozen yet
+     */
+    public EncodedFrame getEncodedFrame() {
+        if (!isFrozen()) {
+            return null;
+        }
+        EncodedFrame frame = _frame;
+        if (frame == null) {
+            synchronized (this) {
+                frame = _frame;
+                if (frame == null) {
+                    frame = new EncodedFrame(this);
+                    _frame = frame;
+                }
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * @return the key of this message when coalescing lazy messages, see {@link ServerChannelImpl#setCoalescingKey}
+     */
+    Object getCoalescingKey() {
+        return _coalescingKey;
+    }
+
+    void setCoalescingKey(Object coalescingKey) {
+        _coalescingKey = coalescingKey;
+    }
+
+    /**
+     * @return how the data parsed back from the JSON of this message is cached
+     */
+    public DataCachePolicy getDataCachePolicy() {
+        return _dataCachePolicy;
+    }
+
+    void setDataCachePolicy(DataCachePolicy dataCachePolicy) {
+        _dataCachePolicy = dataCachePolicy;
+    }
+
+    /**
+     * @return how the data of this message is retained once its JSON has been generated
+     */
+    public DataRetention getDataRetention() {
+        return _dataRetention;
+    }
+
+    void setDataRetention(DataRetention dataRetention) {
+        _dataRetention = dataRetention;
+    }
+
+    /**
+     * @param statistics the statistics of the channel this message is published to,
+     *                   that record the generation of its JSON
+     */
+    void setStatistics(ChannelStatistics statistics) {
+        _statistics = statistics;
+    }
+
+    /**
+     * @return the compression of the raw data of this message, when above the zip message size threshold
+     */
+    public MessageCompression getCompression() {
+        return _compression;
+    }
+
     public byte[] getRawData() {
         serializeIfNeeded();
         return _jsonBytes;
     }
 
+    /**
+     * @return the raw data of this message if its JSON has already been generated, or {@code null}
+     */
+    byte[] peekRawData() {
+        return messageFormat != null ? _jsonBytes : null;
+    }
+
+    MessageFormat getMessageFormat() {
+        serializeIfNeeded();
+        return messageFormat;
+    }
+
     private void serializeIfNeeded() {
-        if (!isJsonGenerated()) {
-            _json = jsonContext.generate(frozen);
-            setWeakReference(frozen, frozen.get(DATA_FIELD));
-            setMessageFormat(_json);
+        if (messageFormat != null && isJsonGenerated()) {
+            return;
+        }
+        // The same frozen message is written concurrently by the transports of all its subscribers.
+        synchronized (this) {
+            if (!isJsonGenerated()) {
+                long begin = System.nanoTime();
+                _json = jsonContext.generate(frozen);
+                Object data = frozen.get(DATA_FIELD);
+                if (data != null && !(data instanceof Reference)) {
+                    frozen.put(DATA_FIELD, _dataRetention.retain(data, _json.length()));
+                }
+                int bytes = setMessageFormat(_json);
+                ChannelStatistics statistics = _statistics;
+                if (statistics != null) {
+                    statistics.encoded(bytes, System.nanoTime() - begin);
+                }
+            }
         }
     }
 
     private void setWeakReference(ServerMessage.Mutable message, Object data) {
-        if (data instanceof WeakReference) {
+        if (data instanceof Reference) {
             message.put(DATA_FIELD, data);
         } else if (data != null) {
             message.put(DATA_FIELD, new WeakReference(data));
@@ -164,12 +294,26 @@ public class WeakMessage extends ServerMessageImpl {
             Object data = frozen.get(DATA_FIELD);
             data = getDataFromWeakReference(data);
             if (data != null) {
+                if (isJsonGenerated()) {
+                    _dataRetention.retained();
+                }
                 return data;
             }
         }
         if (isJsonGenerated() && DATA_FIELD.equals(key)) {
+            Object data = getDataFromCache();
+            if (data != null) {
+                _dataRetention.retained();
+                return data;
+            }
             try {
-                return getDataFromJson();
+                long begin = System.nanoTime();
+                data = getDataFromJson();
+                _dataRetention.regenerated(System.nanoTime() - begin);
+                if (data != null) {
+                    _dataCache = _dataCachePolicy.newReference(data);
+                }
+                return data;
             } catch (ParseException e) {
                 _logger.error("Error while parsing json data from WeakMessage", e);
             }
@@ -178,9 +322,93 @@ public class WeakMessage extends ServerMessageImpl {
         return super.get(key);
     }
 
+    /**
+     * <p>Returns a single field of the data of this message, e.g. {@code source.id}.</p>
+     * <p>When the data has been collected, the field is parsed alone from the JSON of this message,
+     * using an index of the data fields built on the first call, instead of parsing the whole data.</p>
+     *
+     * @param path the dotted path of the field in the data object
+     * @return the value of the field, or null if the data is not an object or has no such field
+     */
+    public Object getDataField(String path) {
+        Object data = getMaterializedData();
+        if (data == null && isJsonGenerated()) {
+            byte[] json = null;
+            JSONFieldIndex index = _dataIndex;
+            if (!_dataIndexed) {
+                json = getJSONBytes();
+                index = indexData(json);
+            }
+            if (index != null) {
+                int field = index.find(path);
+                if (field >= 0) {
+                    try {
+                        return Utf8JSONContextServer.parseValue(json != null ? json : getJSONBytes(), index.getOffset(field), index.getLength(field));
+                    } catch (ParseException e) {
+                        _logger.error("Error while parsing json data field " + path + " from WeakMessage", e);
+                        return null;
+                    }
+                }
+                if (index.isAbsent(path)) {
+                    return null;
+                }
+            }
+            data = get(DATA_FIELD);
+        }
+        return getField(data, path);
+    }
+
+    /**
+     * @return the index of the data fields, null until {@link #getDataField(String)} is first called
+     */
+    JSONFieldIndex getDataIndex() {
+        return _dataIndex;
+    }
+
+    /**
+     * <p>Indexes the data fields once, rather than for every message serialized, since most messages
+     * are never asked for a field; concurrent first calls may both index, with the same result.</p>
+     */
+    private JSONFieldIndex indexData(byte[] json) {
+        JSONFieldIndex index = JSONFieldIndex.index(json);
+        _dataIndex = index;
+        _dataIndexed = true;
+        return index;
+    }
+
+    private Object getMaterializedData() {
+        if (isFrozen()) {
+            Object data = getDataFromWeakReference(frozen.get(DATA_FIELD));
+            return data != null ? data : getDataFromCache();
+        }
+        if (isJsonGenerated()) {
+            return getDataFromCache();
+        }
+        return super.get(DATA_FIELD);
+    }
+
+    private Object getDataFromCache() {
+        Reference<Object> cache = _dataCache;
+        return cache == null ? null : cache.get();
+    }
+
+    private static Object getField(Object data, String path) {
+        int start = 0;
+        while (data instanceof Map) {
+            int dot = path.indexOf('.', start);
+            String name = dot < 0 ? path.substring(start) : path.substring(start, dot);
+            data = ((Map<?, ?>)data).get(name);
+            if (dot < 0) {
+                return data;
+            }
+            start = dot + 1;
+        }
+        return null;
+    }
+
     Object getDataFromWeakReference(Object data) {
-        if (data instanceof WeakReference) {
-            data = ((WeakReference) data).get();
+        if (data instanceof Reference) {
+            data = ((Reference) data).get();
         }
         return data;
     }
@@ -257,17 +485,12 @@ public class WeakMessage extends ServerMessageImpl {
         return advice;
     }
 
-    byte[] zipData(String json) {
+    byte[] zipData(byte[] json) {
         try {
-            ByteArrayOutputStream obj = new ByteArrayOutputStream();
-            GZIPOutputStream gzip = new GZIPOutputStream(obj);
-            gzip.write(json.getBytes(StandardCharsets.UTF_8));
-            gzip.flush();
-            gzip.close();
-            return obj.toByteArray();
-        } catch (IOException e) {
+            return _compression.compress(json);
+        } catch (RuntimeException e) {
             _logger.error("Unable to zip json data", e);
-            throw new RuntimeException(e);
+            throw e;
         }
     }
 
@@ -275,28 +498,42 @@ public class WeakMessage extends ServerMessageImpl {
         String getJSON();
 
         byte[] getJSONBytes();
+
+        /**
+         * @param bufferSize the size of the input buffer of incremental decompression
+         * @return a stream of the UTF-8 JSON bytes, decompressed incrementally when possible
+         * @throws IOException if the stream cannot be created
+         */
+        InputStream openStream(int bufferSize) throws IOException;
+
+        boolean isCompressed();
     }
 
     class ZipFormat implements MessageFormat {
         @Override
         public String getJSON() {
-            try {
-                return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(_jsonBytes)));
-            } catch (IOException e) {
-                _logger.error("Unable to unzip json data", e);
-                throw new RuntimeException(e);
-            }
+            return new String(getJSONBytes(), StandardCharsets.UTF_8);
         }
 
         @Override
         public byte[] getJSONBytes() {
             try {
-                return IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(_jsonBytes)));
-            } catch (IOException e) {
+                return _compression.decompress(_jsonBytes);
+            } catch (RuntimeException e) {
                 _logger.error("Unable to unzip json data", e);
-                throw new RuntimeException(e);
+                throw e;
             }
         }
+
+        @Override
+        public InputStream openStream(int bufferSize) throws IOException {
+            return _compression.newInputStream(_jsonBytes, bufferSize);
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return true;
+        }
     }
 
     class JsonFormat implements MessageFormat {
@@ -309,5 +546,15 @@ public class WeakMessage extends ServerMessageImpl {
         public byte[] getJSONBytes() {
             return _jsonBytes;
         }
+
+        @Override
+        public InputStream openStream(int bufferSize) {
+            return new ByteArrayInputStream(_jsonBytes);
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return false;
+        }
     }
 }
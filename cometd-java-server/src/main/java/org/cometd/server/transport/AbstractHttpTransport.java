@@ -22,8 +22,16 @@ import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.server.AbstractServerTransport;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.EncodedFrame;
+import org.cometd.server.ExecutionMode;
+import org.cometd.server.MessageCompression;
 import org.cometd.server.ServerSessionImpl;
+import org.cometd.server.TransportExecutor;
+import org.cometd.server.TransportMetrics;
+import org.cometd.server.Utf8JSONContextServer;
+import org.cometd.server.WeakMessage;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeUtils;
 import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.slf4j.Logger;
@@ -35,11 +43,15 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Writer;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.security.Principal;
+import java.text.ParseException;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -52,13 +64,50 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
     public static final String MESSAGE_PARAM = "message";
     public final static String AUTOBATCH_OPTION = "autoBatch";
     public final static String TRUST_CLIENT_SESSION = "trustClientSession";
+    /**
+     * Size of the pooled buffers through which compressed messages are inflated into the response.
+     */
+    public static final String STREAM_BUFFER_SIZE_OPTION = "streamBufferSize";
+    /**
+     * Size of the pooled buffers in which small writes are aggregated before being written to the response.
+     */
+    public static final String WRITE_BUFFER_SIZE_OPTION = "writeBufferSize";
+    private static final int MIN_POOLED_BUFFER_SIZE = 512;
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 128;
+    /**
+     * Whether responses containing gzip compressed messages are sent with {@code Content-Encoding: gzip}
+     * to the clients accepting it, splicing the compressed messages in as they are.
+     */
+    public static final String GZIP_PASS_THROUGH_OPTION = "gzipPassThrough";
+    /**
+     * Whether the timeouts of the suspended {@code /meta/connect} are scheduled on a {@link HashedWheelScheduler}
+     * of this transport, rather than on the scheduler of the {@link BayeuxServerImpl}.
+     */
+    public static final String HASHED_WHEEL_TIMER_OPTION = "hashedWheelTimer";
+    /**
+     * Tick duration, in milliseconds, of the hashed wheel timer.
+     */
+    public static final String HASHED_WHEEL_TICK_OPTION = "hashedWheelTick";
+    /**
+     * Number of buckets of the hashed wheel timer.
+     */
+    public static final String HASHED_WHEEL_SIZE_OPTION = "hashedWheelSize";
 
     protected final Logger _logger = LoggerFactory.getLogger(getClass());
     private final ThreadLocal<HttpServletRequest> _currentRequest = new ThreadLocal<>();
-    private final Collection<LongPollScheduler> _schedulers = new CopyOnWriteArrayList<>();
+    private final SchedulerRegistry<LongPollScheduler> _schedulers = new SchedulerRegistry<>();
     private boolean _autoBatch;
     private boolean _trustClientSession;
     private Integer _heartbeatMinutes;
+    private final ByteArrayPool _buffers = new ByteArrayPool(MIN_POOLED_BUFFER_SIZE, MAX_POOLED_BUFFER_SIZE, MAX_POOLED_BUFFERS);
+    private int _streamBufferSize;
+    private int _writeBufferSize;
+    private boolean _gzipPassThrough;
+    private Utf8JSONContextServer _utf8JSONContext;
+    private HashedWheelScheduler _connectScheduler;
+    private TransportExecutor _executor;
+    private TransportMetrics _metrics = TransportMetrics.NONE;
 
     protected AbstractHttpTransport(BayeuxServerImpl bayeux, String name, Integer heartbeatMinutes) {
         super(bayeux, name);
@@ -71,10 +120,145 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
         super.init();
         _autoBatch = getOption(AUTOBATCH_OPTION, true);
         _trustClientSession = getOption(TRUST_CLIENT_SESSION, true);
+        _gzipPassThrough = getOption(GZIP_PASS_THROUGH_OPTION, false);
+        _streamBufferSize = bufferSize(getOption(STREAM_BUFFER_SIZE_OPTION, 8192));
+        _writeBufferSize = bufferSize(getOption(WRITE_BUFFER_SIZE_OPTION, 32 * 1024));
+        Object jsonContext = getOption(JSON_CONTEXT_OPTION);
+        _utf8JSONContext = jsonContext instanceof Utf8JSONContextServer ? (Utf8JSONContextServer)jsonContext : null;
+        if (getOption(HASHED_WHEEL_TIMER_OPTION, false)) {
+            HashedWheelScheduler scheduler = new HashedWheelScheduler(getName() + "-connect-timer",
+                    getOption(HASHED_WHEEL_TICK_OPTION, 10L), getOption(HASHED_WHEEL_SIZE_OPTION, 512));
+            try {
+                scheduler.start();
+            } catch (Exception x) {
+                throw new IllegalStateException(x);
+            }
+            _connectScheduler = scheduler;
+        }
+        _metrics = TransportMetrics.from(getOption(TransportMetrics.OPTION), getName());
+        if (ExecutionMode.from(getOption(ExecutionMode.OPTION)) == ExecutionMode.VIRTUAL) {
+            TransportExecutor executor = new TransportExecutor(getName() + "-executor", getOption(ExecutionMode.MAX_CONCURRENCY_OPTION, ExecutionMode.DEFAULT_MAX_CONCURRENCY));
+            try {
+                executor.start();
+            } catch (Exception x) {
+                throw new IllegalStateException(x);
+            }
+            _executor = executor;
+        }
+    }
+
+    @Override
+    public void destroy() {
+        HashedWheelScheduler scheduler = _connectScheduler;
+        _connectScheduler = null;
+        if (scheduler != null) {
+            try {
+                scheduler.stop();
+            } catch (Exception x) {
+                _logger.debug("Could not stop " + scheduler, x);
+            }
+        }
+        TransportExecutor executor = _executor;
+        _executor = null;
+        if (executor != null) {
+            try {
+                executor.stop();
+            } catch (Exception x) {
+                _logger.debug("Could not stop " + executor, x);
+            }
+        }
+        _metrics.close();
+        _metrics = TransportMetrics.NONE;
+        super.destroy();
+    }
+
+    /**
+     * @param task    the timeout task of a suspended {@code /meta/connect}
+     * @param timeout the timeout in milliseconds
+     * @return the scheduled task
+     */
+    protected org.eclipse.jetty.util.thread.Scheduler.Task scheduleTimeout(Runnable task, long timeout) {
+        HashedWheelScheduler scheduler = _connectScheduler;
+        if (scheduler != null) {
+            return scheduler.schedule(task, timeout, TimeUnit.MILLISECONDS);
+        }
+        return getBayeux().schedule(task, timeout);
+    }
+
+    /**
+     * @return the executor that runs message handling and the resume of suspended {@code /meta/connect}
+     * in the {@link ExecutionMode#VIRTUAL} mode, or null in the {@link ExecutionMode#PLATFORM} mode
+     */
+    protected TransportExecutor getTransportExecutor() {
+        return _executor;
+    }
+
+    /**
+     * @return the metrics of this transport, {@link TransportMetrics#NONE} unless configured
+     */
+    protected TransportMetrics getMetrics() {
+        return _metrics;
+    }
+
+    private static int bufferSize(int size) {
+        return Math.min(MAX_POOLED_BUFFER_SIZE, Math.max(MIN_POOLED_BUFFER_SIZE, size));
+    }
+
+    protected ByteArrayPool getBufferPool() {
+        return _buffers;
     }
 
+    protected int getStreamBufferSize() {
+        return _streamBufferSize;
+    }
+
+    protected int getWriteBufferSize() {
+        return _writeBufferSize;
+    }
+
+    protected boolean isGzipPassThrough() {
+        return _gzipPassThrough;
+    }
+
+    /**
+     * @return whether UTF-8 request bodies are parsed from their bytes, see {@link Utf8JSONContextServer}
+     */
+    protected boolean isUtf8Parsing() {
+        return _utf8JSONContext != null;
+    }
+
+    /**
+     * <p>Parses the messages from the UTF-8 bytes of a request body, without decoding them to
+     * characters first when the configured JSON context is a {@link Utf8JSONContextServer}.</p>
+     *
+     * @param bytes  the UTF-8 bytes
+     * @param offset the offset of the JSON text
+     * @param length the length of the JSON text
+     * @return the parsed messages, or null if there are none
+     * @throws ParseException if the bytes are not valid JSON messages
+     */
+    protected ServerMessage.Mutable[] parseMessages(byte[] bytes, int offset, int length) throws ParseException {
+        if (_utf8JSONContext != null) {
+            return _utf8JSONContext.parse(bytes, offset, length);
+        }
+        return parseMessages(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a read-only view of the schedulers of the suspended {@code /meta/connect}
+     */
     protected Collection<LongPollScheduler> getSchedulers() {
-        return _schedulers;
+        return _schedulers.getSchedulers();
+    }
+
+    /**
+     * <p>Registers the scheduler of a suspended {@code /meta/connect}, replacing the previous
+     * scheduler of the same session, so that it is validated by {@link #sweep()}.</p>
+     *
+     * @param scheduler the scheduler to register
+     */
+    protected void register(LongPollScheduler scheduler) {
+        _schedulers.register(scheduler.getServerSession().getId(), scheduler, scheduler.getValidationDeadline());
     }
 
     protected boolean isAutoBatch() {
@@ -98,85 +282,146 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
     protected abstract void write(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, boolean startInterval, List<ServerMessage> messages, ServerMessage.Mutable[] replies);
 
     protected void processMessages(HttpServletRequest request, HttpServletResponse response, ServerMessage.Mutable[] messages) throws IOException {
-        ServerSessionImpl session = null;
-        boolean autoBatch = isAutoBatch();
-        boolean batch = false;
-        boolean sendQueue = true;
-        boolean sendReplies = true;
-        boolean startInterval = false;
+        BatchProcessor processor = newBatchProcessor(request, response, messages.length);
         try {
-            for (int i = 0; i < messages.length; ++i) {
-                ServerMessage.Mutable message = messages[i];
-                if (_logger.isDebugEnabled()) {
-                    _logger.debug("Processing {}", message);
-                }
+            for (ServerMessage.Mutable message : messages) {
+                processor.process(message);
+            }
+            processor.flush();
+        } finally {
+            processor.close();
+        }
+    }
 
-                Object clientId = message.get("clientId");
-                _logger.debug("recived message from {} >> {}", clientId, message.getJSON());
-                if (clientId != null && !(clientId instanceof String)) {
-                    throw new IllegalArgumentException("clientId must be a String value");
-                }
+    /**
+     * @param request  the request
+     * @param response the response
+     * @param size     the number of messages of the batch, or -1 if not known upfront
+     * @return a processor of the messages of one request
+     */
+    protected BatchProcessor newBatchProcessor(HttpServletRequest request, HttpServletResponse response, int size) {
+        return new BatchProcessor(request, response, size);
+    }
 
-                if (session == null && _trustClientSession) {
-                    session = (ServerSessionImpl)getBayeux().getSession(message.getClientId());
-                }
+    /**
+     * <p>Processes the messages of one request one by one, so that they can be processed as soon as
+     * they are parsed, and writes the replies once the last message has been processed.</p>
+     * <p>Usage: {@link #process(ServerMessage.Mutable)} for each message, then {@link #flush()},
+     * and {@link #close()} in any case.</p>
+     */
+    protected class BatchProcessor {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private int size;
+        private final boolean autoBatch = isAutoBatch();
+        private final List<ServerMessage.Mutable> replies;
+        private ServerSessionImpl session;
+        private boolean batch;
+        private boolean sendQueue = true;
+        private boolean sendReplies = true;
+        private boolean startInterval;
+
+        protected BatchProcessor(HttpServletRequest request, HttpServletResponse response, int size) {
+            this.request = request;
+            this.response = response;
+            this.size = size;
+            this.replies = new ArrayList<>(size > 0 ? size : 4);
+        }
 
-                if (session != null) {
-                    if (session.isHandshook()) {
-                        if (autoBatch && !batch) {
-                            batch = true;
-                            session.startBatch();
-                        }
-                    } else {
-                        // Disconnected concurrently.
-                        if (batch) {
-                            batch = false;
-                            session.endBatch();
-                        }
-                        session = null;
+        /**
+         * @param size the number of messages of the batch, once known; it must be known
+         *             before a {@code /meta/handshake} is processed
+         */
+        public void setSize(int size) {
+            this.size = size;
+        }
+
+        public void process(ServerMessage.Mutable message) throws IOException {
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Processing {}", message);
+            }
+
+            Object clientId = message.get("clientId");
+            _logger.debug("recived message from {} >> {}", clientId, message.getJSON());
+            if (clientId != null && !(clientId instanceof String)) {
+                throw new IllegalArgumentException("clientId must be a String value");
+            }
+
+            if (session == null && _trustClientSession) {
+                session = (ServerSessionImpl)getBayeux().getSession(message.getClientId());
+            }
+
+            if (session != null) {
+                if (session.isHandshook()) {
+                    if (autoBatch && !batch) {
+                        batch = true;
+                        session.startBatch();
+                    }
+                } else {
+                    // Disconnected concurrently.
+                    if (batch) {
+                        batch = false;
+                        session.endBatch();
                     }
+                    session = null;
                 }
+            }
 
-                Object channelValue = message.get("channel");
+            Object channelValue = message.get("channel");
+            TransportMetrics metrics = _metrics;
+            long begin = metrics.isEnabled() ? System.nanoTime() : 0L;
 
-                if (!(channelValue instanceof String)) {
-                    response.sendError(400, "Channel not specified.");
-                    error(request, response, null, response.getStatus());
-                } else {
-                    String channel = (String) channelValue;
-                    switch (channel) {
-                        case Channel.META_HANDSHAKE: {
-                            if (messages.length > 1) {
-                                throw new IOException();
-                            }
-                            ServerMessage.Mutable reply = processMetaHandshake(request, response, session, message);
-                            if (reply != null) {
-                                session = (ServerSessionImpl) getBayeux().getSession(reply.getClientId());
-                            }
-                            messages[i] = processReply(session, reply);
-                            sendQueue = false;
-                            break;
-                        }
-                        case Channel.META_CONNECT: {
-                            ServerMessage.Mutable reply = processMetaConnect(request, response, session, message);
-                            messages[i] = processReply(session, reply);
-                            startInterval = sendQueue = sendReplies = reply != null;
-                            break;
+            ServerMessage.Mutable result = message;
+            if (!(channelValue instanceof String)) {
+                response.sendError(400, "Channel not specified.");
+                error(request, response, null, response.getStatus());
+            } else {
+                String channel = (String) channelValue;
+                switch (channel) {
+                    case Channel.META_HANDSHAKE: {
+                        // A handshake must be the only message of its request.
+                        if (size > 1) {
+                            throw new IOException();
                         }
-                        default: {
-                            ServerMessage.Mutable reply = bayeuxServerHandle(session, message);
-                            messages[i] = processReply(session, reply);
-                            break;
+                        ServerMessage.Mutable reply = processMetaHandshake(request, response, session, message);
+                        if (reply != null) {
+                            session = (ServerSessionImpl) getBayeux().getSession(reply.getClientId());
                         }
+                        result = processReply(session, reply);
+                        sendQueue = false;
+                        break;
+                    }
+                    case Channel.META_CONNECT: {
+                        ServerMessage.Mutable reply = processMetaConnect(request, response, session, message);
+                        result = processReply(session, reply);
+                        startInterval = sendQueue = sendReplies = reply != null;
+                        break;
+                    }
+                    default: {
+                        ServerMessage.Mutable reply = bayeuxServerHandle(session, message);
+                        result = processReply(session, reply);
+                        break;
                     }
                 }
             }
+            if (metrics.isEnabled()) {
+                metrics.processed(channelValue instanceof String ? (String)channelValue : null, System.nanoTime() - begin);
+            }
+            replies.add(result);
+        }
 
+        /**
+         * <p>Writes the replies and the queued messages, unless the response is suspended.</p>
+         */
+        public void flush() {
             if (sendReplies || sendQueue) {
-                flush(request, response, session, sendQueue, startInterval, messages);
+                AbstractHttpTransport.this.flush(request, response, session, sendQueue, startInterval, replies.toArray(new ServerMessage.Mutable[replies.size()]));
             }
-        } finally {
+        }
+
+        public void close() {
             if (batch) {
+                batch = false;
                 session.endBatch();
             }
         }
@@ -269,6 +514,177 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
         return null;
     }
 
+    /**
+     * <p>Puts back into the queue of the given session the messages taken from it whose write
+     * failed, so that they are delivered by the next {@code /meta/connect}. The references to
+     * their frames are handed back to the queue, so the messages must not be released afterwards.</p>
+     *
+     * @param session  the session the messages were taken from
+     * @param messages the messages that could not be written
+     */
+    protected void rollback(ServerSessionImpl session, List<ServerMessage> messages) {
+        if (session != null) {
+            session.requeue(messages);
+        } else {
+            EncodedFrame.release(messages);
+        }
+    }
+
+    /**
+     * <p>Returns the UTF-8 JSON bytes of the given message, using the frame shared by all
+     * the subscribers of a frozen broadcast message when available, so that the message
+     * is serialized (or inflated) once per publish rather than once per session.</p>
+     *
+     * @param message the message to encode
+     * @return the JSON bytes of the message, that must not be modified
+     */
+    protected byte[] toEncodedBytes(ServerMessage message) {
+        EncodedFrame frame = EncodedFrame.of(message);
+        if (frame != null) {
+            return frame.getBytes();
+        }
+        return toJSONBytes(message, "UTF-8");
+    }
+
+    /**
+     * @param message the message to write
+     * @return the raw data of the message if it is stored as a gzip member, null otherwise
+     */
+    protected byte[] toGzipMember(ServerMessage message) {
+        EncodedFrame frame = EncodedFrame.of(message);
+        if (frame != null && frame.isCompressed()) {
+            WeakMessage weakMessage = (WeakMessage)message;
+            if (weakMessage.getCompression() == MessageCompression.GZIP) {
+                return weakMessage.getRawData();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p>Whether the response to the given request should be gzip encoded, splicing in the
+     * messages stored gzip compressed: the {@link #GZIP_PASS_THROUGH_OPTION} option is enabled,
+     * the client accepts gzip, and at least one message is stored gzip compressed, since small
+     * responses such as heartbeats are not worth compressing.</p>
+     *
+     * @param request  the request
+     * @param messages the messages to write
+     * @return whether the response should be written with {@link #toGzipMembers(List, ServerMessage.Mutable[])}
+     */
+    protected boolean isGzipPassThrough(HttpServletRequest request, List<ServerMessage> messages) {
+        if (!_gzipPassThrough || !acceptsGzip(request)) {
+            return false;
+        }
+        for (int i = 0; i < messages.size(); ++i) {
+            if (toGzipMember(messages.get(i)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Encodes the messages and the replies as a JSON array split in gzip members; the messages
+     * stored gzip compressed are never decompressed.</p>
+     *
+     * @param messages the messages to write
+     * @param replies  the replies to write, null elements are skipped
+     * @return the gzip members of the response body, in order
+     * @throws IOException if the messages cannot be encoded
+     */
+    protected List<byte[]> toGzipMembers(List<ServerMessage> messages, ServerMessage.Mutable[] replies) throws IOException {
+        GzipMembers members = new GzipMembers();
+        encodeGzipMembers(messages, replies, members);
+        return members.finish();
+    }
+
+    /**
+     * <p>Like {@link #toGzipMembers(List, ServerMessage.Mutable[])}, but writes each gzip member
+     * to the given stream as soon as it is produced, so that the compressed body is not held in memory.</p>
+     *
+     * @param messages the messages to write
+     * @param replies  the replies to write, null elements are skipped
+     * @param output   the stream to write the members to
+     * @return the number of bytes written
+     * @throws IOException if the members cannot be written
+     */
+    protected long writeGzipMembers(List<ServerMessage> messages, ServerMessage.Mutable[] replies, OutputStream output) throws IOException {
+        GzipMembers members = new GzipMembers(output);
+        encodeGzipMembers(messages, replies, members);
+        members.finish();
+        return members.getBytes();
+    }
+
+    private void encodeGzipMembers(List<ServerMessage> messages, ServerMessage.Mutable[] replies, GzipMembers members) throws IOException {
+        members.write('[');
+        boolean needsComma = false;
+        for (int i = 0; i < messages.size(); ++i) {
+            ServerMessage message = messages.get(i);
+            if (needsComma) {
+                members.write(',');
+            }
+            needsComma = true;
+            byte[] member = toGzipMember(message);
+            if (member != null) {
+                members.writeMember(member);
+            } else {
+                members.write(toEncodedBytes(message));
+            }
+        }
+        for (ServerMessage.Mutable reply : replies) {
+            if (reply == null) {
+                continue;
+            }
+            if (needsComma) {
+                members.write(',');
+            }
+            needsComma = true;
+            members.write(toJSONBytes(reply, "UTF-8"));
+        }
+        members.write(']');
+    }
+
+    protected void setGzipHeaders(HttpServletResponse response) {
+        response.setHeader("Content-Encoding", "gzip");
+        response.addHeader("Vary", "Accept-Encoding");
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                String[] parts = coding.split(";");
+                String name = parts[0].trim();
+                if ("gzip".equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                    for (int i = 1; i < parts.length; ++i) {
+                        String parameter = parts[i].trim().replace(" ", "");
+                        if (parameter.matches("q=0(\\.0*)?")) {
+                            return false;
+                        }
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * <p>Opens a stream that inflates the given message chunk by chunk, so that large compressed
+     * messages are written without materializing their JSON bytes.</p>
+     *
+     * @param message the message to write
+     * @return a stream of the UTF-8 JSON bytes of the message, or null if the message should be written with {@link #toEncodedBytes(ServerMessage)}
+     * @throws IOException if the stream cannot be created
+     */
+    protected InputStream openEncodedStream(ServerMessage message) throws IOException {
+        EncodedFrame frame = EncodedFrame.of(message);
+        if (frame != null && frame.isStreamable()) {
+            return frame.openStream(_streamBufferSize);
+        }
+        return null;
+    }
+
     protected void handleJSONParseException(HttpServletRequest request, HttpServletResponse response, String json, Throwable exception) throws IOException {
         _logger.warn("Could not parse JSON: " + json, exception);
         response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
@@ -317,12 +733,14 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
     }
 
     /**
-     * Sweeps the transport for old Browser IDs
+     * Sweeps the transport for old Browser IDs, validating only the schedulers whose validation is due
      */
     protected void sweep() {
-        for (LongPollScheduler scheduler : _schedulers) {
+        // Same clock as the validation intervals of the schedulers.
+        _schedulers.sweep(DateTimeUtils.currentTimeMillis(), scheduler -> {
             scheduler.validate();
-        }
+            return scheduler.getValidationDeadline();
+        });
     }
 
     private static class HttpContext implements BayeuxContext {
@@ -464,6 +882,7 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
         private final ServerMessage.Mutable reply;
         private final org.eclipse.jetty.util.thread.Scheduler.Task task;
         private final AtomicBoolean cancel;
+        private final long suspendedAt;
         private Duration validTime;
         private Interval lastValidation;
 
@@ -475,8 +894,9 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
             this.session.addListener(this);
             this.reply = reply;
             asyncContext.addListener(this);
-            this.task = getBayeux().schedule(this, timeout);
+            this.task = scheduleTimeout(this, timeout);
             this.cancel = new AtomicBoolean();
+            this.suspendedAt = _metrics.isEnabled() ? System.nanoTime() : 0L;
             validTime = Duration.standardMinutes(_heartbeatMinutes);
             this.lastValidation = new Interval(new DateTime(), validTime);
         }
@@ -519,6 +939,13 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
             }
         }
 
+        /**
+         * @return the time, in milliseconds, at which this scheduler is next due for validation
+         */
+        public long getValidationDeadline() {
+            return lastValidation.getEndMillis();
+        }
+
         private boolean isValid() {
             log.debug("validating session {}  ", session.getId());
             final ServletResponse response = asyncContext.getResponse();
@@ -535,7 +962,7 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
 
         private void cleanup() {
             session.setScheduler(null);
-            _schedulers.remove(this);
+            _schedulers.remove(session.getId(), this);
             session.removeListener(this);
             session.deactivate();
         }
@@ -592,6 +1019,10 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
         }
 
         private void resume() {
+            TransportMetrics metrics = _metrics;
+            if (metrics.isEnabled()) {
+                metrics.suspended(System.nanoTime() - suspendedAt);
+            }
             dispatch();
             cleanup();
         }
@@ -625,49 +1056,5 @@ public abstract class AbstractHttpTransport extends AbstractServerTransport {
         protected void error(int code) {
             AbstractHttpTransport.this.error(getRequest(), getResponse(), getAsyncContext(), code);
         }
-
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + getOuterType().hashCode();
-            result = prime * result + ((asyncContext == null) ? 0 : asyncContext.hashCode());
-            result = prime * result + ((reply == null) ? 0 : reply.hashCode());
-            result = prime * result + ((session == null) ? 0 : session.hashCode());
-            return result;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj)
-                return true;
-            if (obj == null)
-                return false;
-            if (getClass() != obj.getClass())
-                return false;
-            LongPollScheduler other = (LongPollScheduler) obj;
-            if (!getOuterType().equals(other.getOuterType()))
-                return false;
-            if (asyncContext == null) {
-                if (other.asyncContext != null)
-                    return false;
-            } else if (!asyncContext.equals(other.asyncContext))
-                return false;
-            if (reply == null) {
-                if (other.reply != null)
-                    return false;
-            } else if (!reply.equals(other.reply))
-                return false;
-            if (session == null) {
-                if (other.session != null)
-                    return false;
-            } else if (!session.equals(other.session))
-                return false;
-            return true;
-        }
-
-        private AbstractHttpTransport getOuterType() {
-            return AbstractHttpTransport.this;
-        }
     }
 }
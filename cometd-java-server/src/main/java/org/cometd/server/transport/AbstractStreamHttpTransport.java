@@ -17,14 +17,19 @@ package org.cometd.server.transport;
 
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.EncodedFrame;
 import org.cometd.server.ServerSessionImpl;
+import org.cometd.server.TransportExecutor;
+import org.cometd.server.TransportMetrics;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -57,7 +62,12 @@ public abstract class AbstractStreamHttpTransport extends AbstractHttpTransport
         if (scheduler == null) {
             // Not a resumed /meta/connect, process messages.
             try {
+                TransportMetrics metrics = getMetrics();
+                long begin = metrics.isEnabled() ? System.nanoTime() : 0L;
                 ServerMessage.Mutable[] messages = parseMessages(request);
+                if (metrics.isEnabled()) {
+                    metrics.parsed(messages == null ? 0 : messages.length, System.nanoTime() - begin);
+                }
                 if (_logger.isDebugEnabled()) {
                     _logger.debug("Parsed {} messages", messages == null ? -1 : messages.length);
                 }
@@ -85,7 +95,7 @@ public abstract class AbstractStreamHttpTransport extends AbstractHttpTransport
 
     protected HttpScheduler newHttpScheduler(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerSessionImpl session, ServerMessage.Mutable reply, long timeout) {
         final DispatchingLongPollScheduler longPollScheduler = new DispatchingLongPollScheduler(request, response, asyncContext, session, reply, timeout);
-        getSchedulers().add(longPollScheduler);
+        register(longPollScheduler);
         return longPollScheduler;
     }
 
@@ -116,10 +126,14 @@ public abstract class AbstractStreamHttpTransport extends AbstractHttpTransport
     @Override
     @SuppressWarnings("ForLoopReplaceableByForEach")
     protected void write(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, boolean startInterval, List<ServerMessage> messages, ServerMessage.Mutable[] replies) {
+        TransportMetrics metrics = getMetrics();
         try {
             ServletOutputStream output;
             try {
                 output = beginWrite(request, response);
+                if (metrics.isEnabled()) {
+                    output = new CountingOutputStream(output);
+                }
 
                 // Write the messages first.
                 for (int i = 0; i < messages.size(); ++i) {
@@ -153,6 +167,10 @@ public abstract class AbstractStreamHttpTransport extends AbstractHttpTransport
             }
 
             endWrite(response, output);
+            if (output instanceof CountingOutputStream) {
+                metrics.written(((CountingOutputStream)output).count);
+            }
+            EncodedFrame.release(messages);
             _logger.debug("messages sended {} >>> {}", (session != null) ? session.getId() : "null", messages);
         } catch (Exception x) {
             _logger.debug("message delivery failed rollback {} >>> {} ", (session != null) ? session.getId() : "null", messages);
@@ -161,18 +179,39 @@ public abstract class AbstractStreamHttpTransport extends AbstractHttpTransport
                 asyncContext = request.getAsyncContext();
             }
             error(request, response, asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            metrics.writeFailed(messages.size());
             // Checking if messages send failed and if yes we putting back messages back to delivery queue
-            for (ServerMessage message : messages) {
-                session.addMessage(message);
-            }
+            rollback(session, messages);
         }
     }
 
     protected void writeMessage(HttpServletResponse response, ServletOutputStream output, ServerSessionImpl session, ServerMessage message) throws IOException {
+        if ("UTF-8".equalsIgnoreCase(response.getCharacterEncoding())) {
+            try (InputStream stream = openEncodedStream(message)) {
+                if (stream != null) {
+                    if (_logger.isDebugEnabled()) {
+                        _logger.debug("streaming message {} >>> {}", (session != null) ? session.getId() : "null", message);
+                    }
+                    ByteArrayPool buffers = getBufferPool();
+                    byte[] buffer = buffers.acquire(getStreamBufferSize());
+                    try {
+                        int read;
+                        while ((read = stream.read(buffer)) >= 0) {
+                            output.write(buffer, 0, read);
+                        }
+                    } finally {
+                        buffers.release(buffer);
+                    }
+                    return;
+                }
+            }
+        }
+        byte[] bytes = "UTF-8".equalsIgnoreCase(response.getCharacterEncoding()) ?
+                toEncodedBytes(message) : toJSONBytes(message, response.getCharacterEncoding());
         if (_logger.isDebugEnabled()) {
-            _logger.debug("sending message {} >>> {}", (session != null) ? session.getId() : "null", toJSONBytes(message, response.getCharacterEncoding()));
+            _logger.debug("sending message {} >>> {}", (session != null) ? session.getId() : "null", bytes);
         }
-        output.write(toJSONBytes(message, response.getCharacterEncoding()));
+        output.write(bytes);
     }
 
     protected abstract ServletOutputStream beginWrite(HttpServletRequest request, HttpServletResponse response) throws IOException;
@@ -193,7 +232,74 @@ public abstract class AbstractStreamHttpTransport extends AbstractHttpTransport
             // Only with Servlet 3.1 and standard asynchronous I/O we would be able to do write() + complete()
             // without blocking, and it will be much more efficient because there is no thread dispatching and
             // there will be more mechanical sympathy.
-            getAsyncContext().dispatch();
+            TransportExecutor executor = getTransportExecutor();
+            if (executor == null) {
+                getAsyncContext().dispatch();
+            } else {
+                // Write on the executor instead, each write on its own thread as well.
+                executor.execute(getServerSession().getId(), this::resumeAndComplete);
+            }
+        }
+
+        private void resumeAndComplete() {
+            getBayeux().setCurrentTransport(AbstractStreamHttpTransport.this);
+            setCurrentRequest(getRequest());
+            try {
+                resume(getRequest(), getResponse(), getAsyncContext(), this);
+            } finally {
+                setCurrentRequest(null);
+                getBayeux().setCurrentTransport(null);
+                try {
+                    getAsyncContext().complete();
+                } catch (IllegalStateException x) {
+                    // Already completed by a write error.
+                    _logger.trace("", x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the bytes written to the response, when the metrics are enabled.
+     */
+    private static class CountingOutputStream extends ServletOutputStream {
+        private final ServletOutputStream output;
+        private long count;
+
+        private CountingOutputStream(ServletOutputStream output) {
+            this.output = output;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            output.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            output.write(bytes, offset, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return output.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            output.setWriteListener(writeListener);
         }
     }
 }
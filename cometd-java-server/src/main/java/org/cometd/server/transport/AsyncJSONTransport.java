@@ -15,22 +15,34 @@
  */
 package org.cometd.server.transport;
 
+import org.cometd.bayeux.Channel;
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.EncodedFrame;
 import org.cometd.server.ServerSessionImpl;
+import org.cometd.server.TransportExecutor;
+import org.cometd.server.TransportMetrics;
 import org.eclipse.jetty.util.Utf8StringBuilder;
 
 import javax.servlet.*;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class AsyncJSONTransport extends AbstractHttpTransport {
     private static final String PREFIX = "long-polling.json";
     private static final String NAME = "long-polling";
+    /**
+     * Whether UTF-8 request bodies are parsed, and their messages processed, incrementally as they are read.
+     */
+    public static final String STREAMING_PARSE_OPTION = "streamingParse";
     private static final int BUFFER_CAPACITY = 512;
     private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
         @Override
@@ -39,11 +51,19 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         }
     };
 
+    private boolean _streamingParse;
+
     public AsyncJSONTransport(BayeuxServerImpl bayeux, Integer heartbeatMinutes) {
         super(bayeux, NAME, heartbeatMinutes);
         setOptionPrefix(PREFIX);
     }
 
+    @Override
+    public void init() {
+        super.init();
+        _streamingParse = getOption(STREAMING_PARSE_OPTION, false);
+    }
+
     @Override
     public boolean accept(HttpServletRequest request) {
         return "POST".equalsIgnoreCase(request.getMethod());
@@ -61,8 +81,18 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         // that the timeout fires in case of slow reads.
         asyncContext.setTimeout(0);
         Charset charset = Charset.forName(encoding);
-        ReadListener reader = "UTF-8".equals(charset.name()) ? new UTF8Reader(request, response, asyncContext) :
-                new CharsetReader(request, response, asyncContext, charset);
+        ReadListener reader;
+        if ("UTF-8".equals(charset.name())) {
+            if (_streamingParse) {
+                reader = new StreamingReader(request, response, asyncContext);
+            } else if (isUtf8Parsing()) {
+                reader = new UTF8BytesReader(request, response, asyncContext);
+            } else {
+                reader = new UTF8Reader(request, response, asyncContext);
+            }
+        } else {
+            reader = new CharsetReader(request, response, asyncContext, charset);
+        }
         ServletInputStream input = request.getInputStream();
         input.setReadListener(reader);
     }
@@ -74,28 +104,49 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
 
     protected HttpScheduler newHttpScheduler(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerSessionImpl session, ServerMessage.Mutable reply, long timeout) {
         final AsyncLongPollScheduler longPollScheduler = new AsyncLongPollScheduler(request, response, asyncContext, session, reply, timeout);
-        getSchedulers().add(longPollScheduler);
+        register(longPollScheduler);
         return longPollScheduler;
     }
 
     @Override
     protected void write(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, boolean startInterval, List<ServerMessage> messages, ServerMessage.Mutable[] replies) {
         AsyncContext asyncContext = request.getAsyncContext();
+        // Once set, the write listener owns the messages and rolls them back on failure.
+        boolean listening = false;
         try {
             // Always write asynchronously
             response.setContentType("application/json;charset=UTF-8");
+            if (isGzipPassThrough(request, messages)) {
+                List<byte[]> members = toGzipMembers(messages, replies);
+                setGzipHeaders(response);
+                ServletOutputStream output = response.getOutputStream();
+                GzipWriter writer = new GzipWriter(request, response, asyncContext, session, startInterval, messages, members);
+                listening = true;
+                output.setWriteListener(writer);
+                return;
+            }
             ServletOutputStream output = response.getOutputStream();
-            output.setWriteListener(new Writer(request, response, asyncContext, session, startInterval, messages, replies));
+            Writer writer = new Writer(request, response, asyncContext, session, startInterval, messages, replies);
+            listening = true;
+            output.setWriteListener(writer);
         } catch (Exception x) {
             if (_logger.isDebugEnabled()) {
                 _logger.debug("Exception while writing messages", x);
             }
+            if (!listening) {
+                _logger.debug("message delivery failed rollback {} >>> {} ", (session != null) ? session.getId() : "null", messages);
+                getMetrics().writeFailed(messages.size());
+                rollback(session, messages);
+                if (startInterval && session != null && session.isConnected()) {
+                    session.startIntervalTimeout(getInterval());
+                }
+            }
             error(request, response, asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
         }
     }
 
     protected abstract class AbstractReader implements ReadListener {
-        private final HttpServletRequest request;
+        protected final HttpServletRequest request;
         private final HttpServletResponse response;
         protected final AsyncContext asyncContext;
 
@@ -145,10 +196,39 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         protected abstract String finish();
 
         protected void process(String json) throws IOException {
+            process(json, null, 0);
+        }
+
+        protected void process(byte[] bytes, int length) throws IOException {
+            process(null, bytes, length);
+        }
+
+        private void process(String json, byte[] bytes, int length) throws IOException {
+            TransportExecutor executor = getTransportExecutor();
+            if (executor == null) {
+                parseAndProcess(json, bytes, length);
+                return;
+            }
+            // The body has been read, handle the messages without holding the container thread.
+            executor.execute(() -> {
+                try {
+                    parseAndProcess(json, bytes, length);
+                } catch (Throwable x) {
+                    onError(x);
+                }
+            });
+        }
+
+        private void parseAndProcess(String json, byte[] bytes, int length) throws IOException {
             getBayeux().setCurrentTransport(AsyncJSONTransport.this);
             setCurrentRequest(request);
             try {
-                ServerMessage.Mutable[] messages = parseMessages(json);
+                TransportMetrics metrics = getMetrics();
+                long begin = metrics.isEnabled() ? System.nanoTime() : 0L;
+                ServerMessage.Mutable[] messages = json != null ? parseMessages(json) : parseMessages(bytes, 0, length);
+                if (metrics.isEnabled()) {
+                    metrics.parsed(messages == null ? 0 : messages.length, System.nanoTime() - begin);
+                }
                 if (_logger.isDebugEnabled()) {
                     _logger.debug("Parsed {} messages", messages == null ? -1 : messages.length);
                 }
@@ -158,7 +238,7 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
                     asyncContext.complete();
                 }
             } catch (ParseException x) {
-                handleJSONParseException(request, response, json, x);
+                handleJSONParseException(request, response, json != null ? json : new String(bytes, 0, length, StandardCharsets.UTF_8), x);
                 asyncContext.complete();
             } catch (IOException ioExc) {
                 handleInvalidMessage(response, ioExc);
@@ -193,6 +273,45 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         }
     }
 
+    /**
+     * <p>Buffers the UTF-8 bytes of the request body and parses them as they are, without decoding
+     * them to characters first, see {@link #isUtf8Parsing()}.</p>
+     */
+    protected class UTF8BytesReader extends AbstractReader {
+        private byte[] content = new byte[BUFFER_CAPACITY];
+        private int count;
+
+        protected UTF8BytesReader(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext) {
+            super(request, response, asyncContext);
+        }
+
+        @Override
+        protected void append(byte[] buffer, int offset, int length) {
+            if (content.length - count < length) {
+                int newSize = Math.max(content.length << 1, count + length);
+                if (newSize < 0) {
+                    throw new IllegalArgumentException("Message too large");
+                }
+                content = Arrays.copyOf(content, newSize);
+            }
+            System.arraycopy(buffer, offset, content, count, length);
+            count += length;
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Asynchronous read end from {}: {} bytes", request.getInputStream(), count);
+            }
+            process(content, count);
+        }
+
+        @Override
+        protected String finish() {
+            return new String(content, 0, count, StandardCharsets.UTF_8);
+        }
+    }
+
     protected class CharsetReader extends AbstractReader {
         private byte[] content = new byte[BUFFER_CAPACITY];
         private final Charset charset;
@@ -231,6 +350,239 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         }
     }
 
+    /**
+     * <p>Parses the request body incrementally, processing each message as soon as its array element
+     * has been read, so that only the message being read is buffered, not the whole batch.</p>
+     * <p>The body is answered as it would be if it was buffered: a {@code /meta/handshake} or a
+     * {@code /meta/connect}, that must be checked against the size of the batch or that may suspend
+     * the response, is processed, along with the messages that follow it, once the whole body has
+     * been read, and the replies are written once the whole body has been read. A body that is not
+     * a JSON array or object, such as an empty body, is buffered and parsed as a whole.</p>
+     * <p>The bytes are parsed and the messages processed by the transport executor when there is one,
+     * in the order they are read.</p>
+     */
+    protected class StreamingReader implements ReadListener, JSONArraySplitter.Listener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final AsyncContext asyncContext;
+        private final JSONArraySplitter splitter = new JSONArraySplitter(0);
+        private final List<ServerMessage.Mutable> deferred = new ArrayList<>();
+        private UTF8BytesReader buffered;
+        private BatchProcessor processor;
+        private int size;
+        private volatile boolean failed;
+
+        protected StreamingReader(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext) {
+            this.request = request;
+            this.response = response;
+            this.asyncContext = asyncContext;
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            ServletInputStream input = request.getInputStream();
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Asynchronous streaming read start from {}", input);
+            }
+            byte[] buffer = buffers.get();
+            // First check for isReady() because it has
+            // side effects, and then for isFinished().
+            while (input.isReady() && !input.isFinished()) {
+                int read = input.read(buffer);
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Asynchronous streaming read {} bytes from {}", read, input);
+                }
+                if (read > 0 && !failed) {
+                    TransportExecutor executor = getTransportExecutor();
+                    if (executor == null) {
+                        feed(buffer, read);
+                    } else {
+                        // The buffer is reused by the next read.
+                        byte[] bytes = Arrays.copyOf(buffer, read);
+                        executor.execute(this, () -> feed(bytes, bytes.length));
+                    }
+                }
+            }
+        }
+
+        private void feed(byte[] bytes, int length) {
+            if (failed) {
+                return;
+            }
+            if (buffered == null && !splitter.isStarted() && !isArrayOrObject(bytes, length)) {
+                buffered = new UTF8BytesReader(request, response, asyncContext);
+            }
+            if (buffered != null) {
+                buffered.append(bytes, 0, length);
+                return;
+            }
+            enter();
+            try {
+                splitter.feed(bytes, 0, length, this);
+            } catch (Throwable x) {
+                fail(x);
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void onElement(byte[] element) throws IOException {
+            if (failed) {
+                return;
+            }
+            ServerMessage.Mutable[] messages;
+            try {
+                TransportMetrics metrics = getMetrics();
+                long begin = metrics.isEnabled() ? System.nanoTime() : 0L;
+                messages = parseMessages(element, 0, element.length);
+                if (metrics.isEnabled()) {
+                    metrics.parsed(messages == null ? 0 : messages.length, System.nanoTime() - begin);
+                }
+            } catch (ParseException x) {
+                failed = true;
+                closeProcessor();
+                handleJSONParseException(request, response, new String(element, StandardCharsets.UTF_8), x);
+                asyncContext.complete();
+                return;
+            }
+            if (messages == null) {
+                return;
+            }
+            size += messages.length;
+            for (ServerMessage.Mutable message : messages) {
+                String channel = message.getChannel();
+                if (!deferred.isEmpty() || Channel.META_HANDSHAKE.equals(channel) || Channel.META_CONNECT.equals(channel)) {
+                    deferred.add(message);
+                } else {
+                    processor().process(message);
+                }
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            if (_logger.isDebugEnabled()) {
+                _logger.debug("Asynchronous streaming read end from {}", request.getInputStream());
+            }
+            TransportExecutor executor = getTransportExecutor();
+            if (executor == null) {
+                finish();
+            } else {
+                executor.execute(this, this::finish);
+            }
+        }
+
+        private void finish() {
+            if (failed) {
+                return;
+            }
+            if (buffered == null && !splitter.isStarted()) {
+                // An empty body.
+                buffered = new UTF8BytesReader(request, response, asyncContext);
+            }
+            if (buffered != null) {
+                try {
+                    buffered.onAllDataRead();
+                } catch (Throwable x) {
+                    onError(x);
+                }
+                return;
+            }
+            enter();
+            try {
+                if (!splitter.isComplete()) {
+                    throw new ParseException("Incomplete JSON array", 0);
+                }
+                BatchProcessor processor = processor();
+                processor.setSize(size);
+                for (ServerMessage.Mutable message : deferred) {
+                    processor.process(message);
+                }
+                deferred.clear();
+                processor.flush();
+            } catch (Throwable x) {
+                fail(x);
+            } finally {
+                closeProcessor();
+                exit();
+            }
+        }
+
+        private BatchProcessor processor() {
+            if (processor == null) {
+                processor = newBatchProcessor(request, response, -1);
+            }
+            return processor;
+        }
+
+        private void closeProcessor() {
+            if (processor != null) {
+                processor.close();
+            }
+        }
+
+        /**
+         * <p>Answers a failure as when the body is buffered: a malformed body as the parser does,
+         * and a failure to process the messages as {@link #processMessages(HttpServletRequest,
+         * HttpServletResponse, ServerMessage.Mutable[])} does.</p>
+         */
+        private void fail(Throwable failure) {
+            failed = true;
+            closeProcessor();
+            try {
+                if (failure instanceof ParseException) {
+                    handleJSONParseException(request, response, failure.getMessage(), failure);
+                } else if (failure instanceof IOException) {
+                    handleInvalidMessage(response, (IOException)failure);
+                } else {
+                    onError(failure);
+                    return;
+                }
+                asyncContext.complete();
+            } catch (Throwable x) {
+                onError(x);
+            }
+        }
+
+        private boolean isArrayOrObject(byte[] bytes, int length) {
+            for (int i = 0; i < length; ++i) {
+                byte b = bytes[i];
+                if (!JSONArraySplitter.isWhitespace(b)) {
+                    return b == '[' || b == '{';
+                }
+            }
+            // Only whitespace so far.
+            return true;
+        }
+
+        private void enter() {
+            getBayeux().setCurrentTransport(AsyncJSONTransport.this);
+            setCurrentRequest(request);
+        }
+
+        private void exit() {
+            setCurrentRequest(null);
+            getBayeux().setCurrentTransport(null);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            failed = true;
+            closeProcessor();
+            error(request, response, asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * <p>Writes the messages and the replies as a JSON array.</p>
+     * <p>Small writes, such as the brackets, the commas and small messages, are aggregated in a pooled
+     * buffer of {@link #getWriteBufferSize()} bytes, that is written to the response when full. Messages
+     * of at least half the buffer size are written as they are, without copy, and the compressed
+     * messages that are streamed are inflated straight into the buffer.</p>
+     * <p>Since an asynchronous write may still use the buffer until the output is ready again, the
+     * buffer is only reused, or returned to the pool, after {@code isReady()} returned true.</p>
+     */
     protected class Writer implements WriteListener {
         private final HttpServletRequest request;
         private final HttpServletResponse response;
@@ -242,6 +594,12 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         private int messageIndex = -1;
         private int replyIndex = -1;
         private boolean needsComma;
+        private boolean released;
+        private InputStream stream;
+        private byte[] replyBytes;
+        private byte[] buffer;
+        private int count;
+        private long written;
 
         protected Writer(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerSessionImpl session, boolean startInterval, List<ServerMessage> messages, ServerMessage.Mutable[] replies) {
             this.request = request;
@@ -257,71 +615,104 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         public void onWritePossible() throws IOException {
             ServletOutputStream output = response.getOutputStream();
 
-            if (_logger.isDebugEnabled()) {
-                _logger.debug("Messages to write for session {}: {}", session, messages.size());
-            }
-            if (!writeMessages(output)) {
-                return;
-            }
+            try {
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Messages to write for session {}: {}", session, messages.size());
+                }
+                if (!writeMessages(output)) {
+                    return;
+                }
 
-            if (_logger.isDebugEnabled()) {
-                _logger.debug("Replies to write for session {}: {}", session, replies.length);
-            }
-            if (!writeReplies(output)) {
-                return;
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Replies to write for session {}: {}", session, replies.length);
+                }
+                if (!writeReplies(output)) {
+                    return;
+                }
+            } catch (Throwable x) {
+                closeStream();
+                // A pending write may still use the buffer, leave it to the garbage collector.
+                buffer = null;
+                if (!released) {
+                    _logger.debug("message delivery failed rollback {} >>> {} ", (session != null) ? session.getId() : "null", messages);
+                    getMetrics().writeFailed(messages.size());
+                    // Checking if messages send failed and if yes we putting back messages back to delivery queue
+                    released = true;
+                    rollback(session, messages);
+                }
+                // Start the interval timeout also in case of
+                // exceptions to ensure the session can be swept.
+                startInterval();
+                throw x;
             }
 
+            releaseMessages();
+            TransportMetrics metrics = getMetrics();
+            if (metrics.isEnabled()) {
+                metrics.written(written);
+            }
             asyncContext.complete();
             _logger.debug("messages sended {} >>> {}", (session != null) ? session.getId() : "null", messages);
         }
 
         private boolean writeMessages(ServletOutputStream output) throws IOException {
-            try {
-                int size = messages.size();
-                while (output.isReady()) {
-                    if (messageIndex < 0) {
+            int size = messages.size();
+            while (output.isReady()) {
+                if (messageIndex < 0) {
+                    if (write(output, '[')) {
                         messageIndex = 0;
-                        output.write('[');
+                    }
+                } else {
+                    if (messageIndex == size) {
+                        if (count == 0) {
+                            // All the messages have been handed to the output.
+                            releaseMessages();
+                        }
+                        // Start the interval timeout after writing the
+                        // messages since they may take time to be written.
+                        startInterval();
+                        return true;
                     } else {
-                        if (messageIndex == size) {
-                            // Start the interval timeout after writing the
-                            // messages since they may take time to be written.
-                            startInterval();
-                            return true;
-                        } else {
-                            if (needsComma) {
+                        if (needsComma) {
+                            if (write(output, ',')) {
                                 needsComma = false;
-                                output.write(',');
+                            }
+                        } else if (stream != null) {
+                            if (count == buffer.length) {
+                                flush(output);
                             } else {
-                                ServerMessage message = messages.get(messageIndex);
+                                int read = stream.read(buffer, count, buffer.length - count);
+                                if (read >= 0) {
+                                    count += read;
+                                } else {
+                                    closeStream();
+                                    ++messageIndex;
+                                    needsComma = messageIndex < size;
+                                }
+                            }
+                        } else {
+                            ServerMessage message = messages.get(messageIndex);
+                            stream = openEncodedStream(message);
+                            if (stream != null) {
                                 if (_logger.isDebugEnabled()) {
-                                    _logger.debug("sending message {} >>> {}", (session != null) ? session.getId() : "null", toJSONBytes(message, "UTF-8"));
+                                    _logger.debug("streaming message {} >>> {}", (session != null) ? session.getId() : "null", message);
+                                }
+                                acquireBuffer();
+                                continue;
+                            }
+                            byte[] bytes = toEncodedBytes(message);
+                            if (write(output, bytes)) {
+                                if (_logger.isDebugEnabled()) {
+                                    _logger.debug("sending message {} >>> {}", (session != null) ? session.getId() : "null", bytes);
                                 }
-                                output.write(toJSONBytes(message, "UTF-8"));
                                 ++messageIndex;
                                 needsComma = messageIndex < size;
                             }
                         }
                     }
                 }
-                return false;
-            } catch (Throwable x) {
-                _logger.debug("message delivery failed rollback {} >>> {} ", (session != null) ? session.getId() : "null", messages);
-                // Checking if messages send failed and if yes we putting back messages back to delivery queue
-                for (ServerMessage message : messages) {
-                    session.addMessage(message);
-                }
-                // Start the interval timeout also in case of
-                // exceptions to ensure the session can be swept.
-                startInterval();
-                throw x;
-            }
-        }
-
-        private void startInterval() {
-            if (startInterval && session != null && session.isConnected()) {
-                session.startIntervalTimeout(getInterval());
             }
+            return false;
         }
 
         private boolean writeReplies(ServletOutputStream output) throws IOException {
@@ -334,28 +725,135 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
                     ServerMessage.Mutable reply = replies[replyIndex];
                     if (reply != null) {
                         if (needsComma) {
-                            needsComma = false;
-                            output.write(',');
+                            if (write(output, ',')) {
+                                needsComma = false;
+                            }
                         } else {
-                            output.write(toJSONBytes(reply, "UTF-8"));
-                            ++replyIndex;
-                            needsComma = replyIndex < size;
+                            if (replyBytes == null) {
+                                replyBytes = toJSONBytes(reply, "UTF-8");
+                            }
+                            if (write(output, replyBytes)) {
+                                replyBytes = null;
+                                ++replyIndex;
+                                needsComma = replyIndex < size;
+                            }
                         }
                     } else {
                         ++replyIndex;
                     }
                 } else if (replyIndex == size) {
-                    ++replyIndex;
-                    output.write(']');
+                    if (write(output, ']')) {
+                        ++replyIndex;
+                    }
+                } else if (count > 0) {
+                    flush(output);
                 } else {
+                    // The output is ready, so the last write does not use the buffer anymore.
+                    releaseBuffer();
                     return true;
                 }
             }
             return false;
         }
 
+        /**
+         * @return whether the byte was aggregated, otherwise the buffer was full and has been
+         * written, and the byte must be written again once the output is ready
+         */
+        private boolean write(ServletOutputStream output, int b) throws IOException {
+            acquireBuffer();
+            if (count == buffer.length) {
+                flush(output);
+                return false;
+            }
+            buffer[count++] = (byte)b;
+            return true;
+        }
+
+        /**
+         * @return whether the bytes were aggregated or written, otherwise the aggregated bytes have
+         * been written first, and the bytes must be written again once the output is ready
+         */
+        private boolean write(ServletOutputStream output, byte[] bytes) throws IOException {
+            acquireBuffer();
+            int length = bytes.length;
+            boolean large = length >= buffer.length / 2;
+            if (!large && length <= buffer.length - count) {
+                System.arraycopy(bytes, 0, buffer, count, length);
+                count += length;
+                return true;
+            }
+            if (count > 0) {
+                flush(output);
+                return false;
+            }
+            if (large) {
+                // Zero copy for large payloads, typically the shared bytes of frozen messages.
+                output.write(bytes);
+                written += length;
+            } else {
+                System.arraycopy(bytes, 0, buffer, 0, length);
+                count = length;
+            }
+            return true;
+        }
+
+        private void flush(ServletOutputStream output) throws IOException {
+            int length = count;
+            count = 0;
+            output.write(buffer, 0, length);
+            written += length;
+            if (messageIndex == messages.size()) {
+                // The last aggregated bytes of the messages have been handed to the output,
+                // from now on a failure must not put the messages back in the queue.
+                releaseMessages();
+            }
+        }
+
+        private void acquireBuffer() {
+            if (buffer == null) {
+                buffer = getBufferPool().acquire(getWriteBufferSize());
+                count = 0;
+            }
+        }
+
+        private void releaseBuffer() {
+            if (buffer != null) {
+                getBufferPool().release(buffer);
+                buffer = null;
+            }
+        }
+
+        private void closeStream() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (IOException x) {
+                    _logger.trace("Could not close message stream", x);
+                }
+                stream = null;
+            }
+        }
+
+        private void releaseMessages() {
+            if (!released) {
+                released = true;
+                EncodedFrame.release(messages);
+            }
+        }
+
+        private void startInterval() {
+            if (startInterval && session != null && session.isConnected()) {
+                session.startIntervalTimeout(getInterval());
+            }
+        }
+
         @Override
         public void onError(Throwable throwable) {
+            // A pending write may still use the buffer, leave it to the garbage collector.
+            buffer = null;
+            closeStream();
+            releaseMessages();
             // Start the interval timeout also in case of
             // errors to ensure the session can be swept.
             startInterval();
@@ -363,6 +861,84 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         }
     }
 
+    /**
+     * <p>Writes a response already encoded in gzip members, see {@link #toGzipMembers(List, ServerMessage.Mutable[])}.</p>
+     */
+    protected class GzipWriter implements WriteListener {
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final AsyncContext asyncContext;
+        private final ServerSessionImpl session;
+        private final boolean startInterval;
+        private final List<ServerMessage> messages;
+        private final List<byte[]> members;
+        private int memberIndex;
+        private boolean released;
+        private long written;
+
+        protected GzipWriter(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerSessionImpl session, boolean startInterval, List<ServerMessage> messages, List<byte[]> members) {
+            this.request = request;
+            this.response = response;
+            this.asyncContext = asyncContext;
+            this.session = session;
+            this.startInterval = startInterval;
+            this.messages = messages;
+            this.members = members;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            ServletOutputStream output = response.getOutputStream();
+            try {
+                while (output.isReady()) {
+                    if (memberIndex == members.size()) {
+                        TransportMetrics metrics = getMetrics();
+                        if (metrics.isEnabled()) {
+                            metrics.written(written);
+                        }
+                        releaseMessages();
+                        startInterval();
+                        asyncContext.complete();
+                        _logger.debug("gzip messages sended {} >>> {}", (session != null) ? session.getId() : "null", messages);
+                        return;
+                    }
+                    byte[] member = members.get(memberIndex++);
+                    output.write(member);
+                    written += member.length;
+                }
+            } catch (Throwable x) {
+                if (!released) {
+                    _logger.debug("gzip message delivery failed rollback {} >>> {} ", (session != null) ? session.getId() : "null", messages);
+                    getMetrics().writeFailed(messages.size());
+                    released = true;
+                    rollback(session, messages);
+                }
+                startInterval();
+                throw x;
+            }
+        }
+
+        private void releaseMessages() {
+            if (!released) {
+                released = true;
+                EncodedFrame.release(messages);
+            }
+        }
+
+        private void startInterval() {
+            if (startInterval && session != null && session.isConnected()) {
+                session.startIntervalTimeout(getInterval());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            releaseMessages();
+            startInterval();
+            error(request, response, asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
     private class AsyncLongPollScheduler extends LongPollScheduler {
         private AsyncLongPollScheduler(HttpServletRequest request, HttpServletResponse response, AsyncContext asyncContext, ServerSessionImpl session, ServerMessage.Mutable reply, long timeout) {
             super(request, response, asyncContext, session, reply, timeout);
@@ -372,7 +948,13 @@ public class AsyncJSONTransport extends AbstractHttpTransport {
         protected void dispatch() {
             // Direct call to resume() to write the messages in the queue and the replies.
             // Since the write is async, we will never block here and thus never delay other sessions.
-            resume(getRequest(), getResponse(), getAsyncContext(), this);
+            // The reply extensions may block though, so they run on the executor when there is one.
+            TransportExecutor executor = getTransportExecutor();
+            if (executor == null) {
+                resume(getRequest(), getResponse(), getAsyncContext(), this);
+            } else {
+                executor.execute(getServerSession().getId(), () -> resume(getRequest(), getResponse(), getAsyncContext(), this));
+            }
         }
     }
 }
@@ -0,0 +1,96 @@
+package org.cometd.server.transport;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Pool of byte arrays in power of two size classes, used by the transports as write buffers.</p>
+ * <p>Requests larger than the maximum capacity get an array that is not pooled. Each size class
+ * holds a bounded number of arrays, the extra released arrays are left to the garbage collector.
+ * Arrays are not cleared when released.</p>
+ */
+public class ByteArrayPool {
+    private final Bucket[] _buckets;
+    private final int _minCapacity;
+    private final int _maxCapacity;
+
+    public ByteArrayPool(int minCapacity, int maxCapacity, int maxBuffersPerSize) {
+        _minCapacity = sizeClass(Math.max(1, minCapacity), 1);
+        _maxCapacity = sizeClass(Math.max(_minCapacity, maxCapacity), _minCapacity);
+        _buckets = new Bucket[indexOf(_maxCapacity) + 1];
+        for (int i = 0; i < _buckets.length; ++i) {
+            _buckets[i] = new Bucket(_minCapacity << i, maxBuffersPerSize);
+        }
+    }
+
+    /**
+     * @param capacity the minimum length of the array
+     * @return a pooled array of at least the given length, or a new one if none is pooled
+     */
+    public byte[] acquire(int capacity) {
+        if (capacity > _maxCapacity) {
+            return new byte[capacity];
+        }
+        Bucket bucket = _buckets[indexOf(sizeClass(capacity, _minCapacity))];
+        byte[] buffer = bucket.buffers.poll();
+        if (buffer == null) {
+            return new byte[bucket.capacity];
+        }
+        bucket.size.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * @param buffer the array to return to the pool, ignored if null or not of a pooled size
+     */
+    public void release(byte[] buffer) {
+        if (buffer == null || buffer.length < _minCapacity || buffer.length > _maxCapacity || Integer.bitCount(buffer.length) != 1) {
+            return;
+        }
+        Bucket bucket = _buckets[indexOf(buffer.length)];
+        if (bucket.size.incrementAndGet() > bucket.maxBuffers) {
+            bucket.size.decrementAndGet();
+            return;
+        }
+        bucket.buffers.offer(buffer);
+    }
+
+    public int getMaxCapacity() {
+        return _maxCapacity;
+    }
+
+    /**
+     * @return the number of arrays currently pooled
+     */
+    public int getSize() {
+        int size = 0;
+        for (Bucket bucket : _buckets) {
+            size += bucket.size.get();
+        }
+        return size;
+    }
+
+    private static int sizeClass(int capacity, int minCapacity) {
+        if (capacity <= minCapacity) {
+            return minCapacity;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private int indexOf(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(_minCapacity);
+    }
+
+    private static class Bucket {
+        private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int capacity;
+        private final int maxBuffers;
+
+        private Bucket(int capacity, int maxBuffers) {
+            this.capacity = capacity;
+            this.maxBuffers = maxBuffers;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.cometd.server.transport;
+
+import org.cometd.server.MessageCompression;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Builds a gzip response body as a sequence of gzip members (RFC 1952, section 2.2), so that
+ * messages already stored gzip compressed are spliced in as they are, without being inflated and
+ * compressed again.</p>
+ * <p>Consecutive plain bytes, such as the array brackets, the commas, small messages and replies,
+ * are buffered and compressed together into a single member.</p>
+ * <p>The members are either collected, or written to a stream as soon as they are produced.</p>
+ */
+class GzipMembers {
+    private final List<byte[]> _members = new ArrayList<>();
+    private final ByteArrayOutputStream _plain = new ByteArrayOutputStream(512);
+    private final OutputStream _output;
+    private long _bytes;
+
+    GzipMembers() {
+        this(null);
+    }
+
+    /**
+     * @param output the stream to write the members to, or null to collect them
+     */
+    GzipMembers(OutputStream output) {
+        _output = output;
+    }
+
+    void write(int b) {
+        _plain.write(b);
+    }
+
+    void write(byte[] bytes) {
+        _plain.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param member a complete gzip member
+     */
+    void writeMember(byte[] member) throws IOException {
+        flushPlain();
+        add(member);
+    }
+
+    /**
+     * @return the gzip members of the body, in order, or an empty list if they were written to a stream
+     * @throws IOException if the members cannot be written
+     */
+    List<byte[]> finish() throws IOException {
+        flushPlain();
+        return _members;
+    }
+
+    /**
+     * @return the number of bytes of the members produced so far
+     */
+    long getBytes() {
+        return _bytes;
+    }
+
+    private void flushPlain() throws IOException {
+        if (_plain.size() > 0) {
+            add(MessageCompression.GZIP.compress(_plain.toByteArray()));
+            _plain.reset();
+        }
+    }
+
+    private void add(byte[] member) throws IOException {
+        _bytes += member.length;
+        if (_output != null) {
+            _output.write(member);
+        } else {
+            _members.add(member);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.cometd.server.transport;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>{@link Scheduler} backed by a hashed wheel timer, for large numbers of timeouts that are
+ * mostly cancelled before they expire, such as the timeouts of the suspended {@code /meta/connect}.</p>
+ * <p>Scheduling and cancelling a task are O(1) and lock free: they only enqueue the task, that a single
+ * worker thread moves into, or out of, the bucket of the wheel where it expires. Every tick the worker runs
+ * the expired tasks of the current bucket, so tasks run up to one tick late, and must be short since
+ * they run on the worker thread.</p>
+ */
+public class HashedWheelScheduler extends AbstractLifeCycle implements Scheduler {
+    private static final Logger _logger = LoggerFactory.getLogger(HashedWheelScheduler.class);
+
+    private final Queue<Timeout> _scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> _cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger _pending = new AtomicInteger();
+    private final String _name;
+    private final long _tickNanos;
+    private final Bucket[] _wheel;
+    private final int _mask;
+    private volatile Thread _worker;
+    private volatile long _startNanos;
+
+    /**
+     * @param name       the name of the worker thread
+     * @param tickMillis the tick duration, that is the resolution of the timeouts, in milliseconds
+     * @param wheelSize  the number of buckets of the wheel, rounded up to a power of two
+     */
+    public HashedWheelScheduler(String name, long tickMillis, int wheelSize) {
+        _name = name;
+        _tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) - 1) << 1;
+        _wheel = new Bucket[size];
+        for (int i = 0; i < size; ++i) {
+            _wheel[i] = new Bucket();
+        }
+        _mask = size - 1;
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        _startNanos = System.nanoTime();
+        Thread worker = new Thread(this::work, _name);
+        worker.setDaemon(true);
+        _worker = worker;
+        worker.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        Thread worker = _worker;
+        _worker = null;
+        if (worker != null) {
+            worker.interrupt();
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        _scheduled.clear();
+        _cancelled.clear();
+        for (Bucket bucket : _wheel) {
+            bucket.clear();
+        }
+        _pending.set(0);
+        super.doStop();
+    }
+
+    @Override
+    public Task schedule(Runnable task, long delay, TimeUnit units) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + units.toNanos(Math.max(0, delay)));
+        _pending.incrementAndGet();
+        _scheduled.offer(timeout);
+        return timeout;
+    }
+
+    /**
+     * @return the number of tasks scheduled and not yet run nor cancelled
+     */
+    public int getPendingTasks() {
+        return _pending.get();
+    }
+
+    private void work() {
+        long tick = 0;
+        while (_worker == Thread.currentThread()) {
+            long deadline = _startNanos + (tick + 1) * _tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException x) {
+                    return;
+                }
+            }
+            removeCancelled();
+            transferScheduled(tick);
+            _wheel[(int)(tick & _mask)].expire(System.nanoTime());
+            ++tick;
+        }
+    }
+
+    private void transferScheduled(long tick) {
+        // Bound the transfer, so that a burst of schedules does not delay the tick.
+        for (int i = 0; i < 100_000; ++i) {
+            Timeout timeout = _scheduled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != Timeout.SCHEDULED) {
+                continue;
+            }
+            long ticks = Math.max(tick, (timeout.deadline - _startNanos) / _tickNanos);
+            timeout.rounds = (ticks - tick) / _wheel.length;
+            _wheel[(int)(ticks & _mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        while (true) {
+            Timeout timeout = _cancelled.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%x[%s,pending=%d]", getClass().getSimpleName(), hashCode(), _name, _pending.get());
+    }
+
+    private class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout timeout) {
+            timeout.bucket = this;
+            if (tail == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(Timeout timeout) {
+            if (timeout.prev != null) {
+                timeout.prev.next = timeout.next;
+            } else {
+                head = timeout.next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            } else {
+                tail = timeout.prev;
+            }
+            timeout.prev = timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        private void expire(long now) {
+            Timeout timeout = head;
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.rounds <= 0 && timeout.deadline - now <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.rounds > 0) {
+                    --timeout.rounds;
+                }
+                timeout = next;
+            }
+        }
+
+        private void clear() {
+            head = tail = null;
+        }
+    }
+
+    private class Timeout implements Task {
+        private static final int SCHEDULED = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final AtomicInteger state = new AtomicInteger(SCHEDULED);
+        private final long deadline;
+        private volatile Runnable task;
+        // Accessed by the worker thread only.
+        private long rounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(SCHEDULED, CANCELLED)) {
+                return false;
+            }
+            // Do not retain the task until the worker unlinks this timeout.
+            task = null;
+            _pending.decrementAndGet();
+            _cancelled.offer(this);
+            return true;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(SCHEDULED, EXPIRED)) {
+                return;
+            }
+            _pending.decrementAndGet();
+            Runnable runnable = task;
+            task = null;
+            try {
+                runnable.run();
+            } catch (Throwable x) {
+                _logger.warn("Exception while running task " + runnable, x);
+            }
+        }
+    }
+}
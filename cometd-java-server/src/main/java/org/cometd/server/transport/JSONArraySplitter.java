@@ -0,0 +1,154 @@
+package org.cometd.server.transport;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.Arrays;
+
+/**
+ * <p>Incremental, non blocking splitter of a JSON array of objects into its elements.</p>
+ * <p>Bytes are fed as they are read, and each element is emitted as soon as its closing brace is
+ * read, so that only the element being read is buffered, whatever the size of the array.
+ * A body that is a single object, rather than an array, is emitted as a single element.</p>
+ * <p>The splitter checks the structure of the array, brackets and commas, and only tracks the
+ * nesting and the strings of the elements, that are validated by the parser they are handed to.</p>
+ */
+class JSONArraySplitter {
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int RETAINED_CAPACITY = 64 * 1024;
+
+    private final int maxElementSize;
+    private byte[] element = new byte[INITIAL_CAPACITY];
+    private int length;
+    private int depth;
+    private int position;
+    private boolean array;
+    // Whether the last array level token is an element, that must be followed by a comma or the closing bracket.
+    private boolean separate;
+    // Whether the last array level token is a comma, that must be followed by an element.
+    private boolean comma;
+    private boolean inString;
+    private boolean escape;
+    private boolean done;
+
+    /**
+     * @param maxElementSize the maximum size in bytes of an element, or a non positive value for no limit
+     */
+    JSONArraySplitter(int maxElementSize) {
+        this.maxElementSize = maxElementSize;
+    }
+
+    /**
+     * @param bytes    the bytes read
+     * @param offset   the offset of the bytes read
+     * @param count    the number of bytes read
+     * @param listener the listener of the complete elements
+     * @throws ParseException if the bytes are not a JSON array of objects, or a JSON object
+     * @throws IOException    if an element is too large, or if the listener fails
+     */
+    void feed(byte[] bytes, int offset, int count, Listener listener) throws IOException, ParseException {
+        for (int i = offset, end = offset + count; i < end; ++i, ++position) {
+            byte b = bytes[i];
+            if (depth == 0 || (array && depth == 1)) {
+                if (isWhitespace(b)) {
+                    continue;
+                }
+                if (done) {
+                    throw new ParseException("Unexpected content after the JSON array", position);
+                }
+                if (depth == 0) {
+                    if (b == '[') {
+                        array = true;
+                        depth = 1;
+                        continue;
+                    }
+                    if (b != '{') {
+                        throw new ParseException("Expected JSON array or object", position);
+                    }
+                } else if (b == ',') {
+                    if (!separate) {
+                        throw new ParseException("Unexpected comma in JSON array", position);
+                    }
+                    separate = false;
+                    comma = true;
+                    continue;
+                } else if (b == ']') {
+                    if (comma) {
+                        throw new ParseException("Unexpected end of JSON array after comma", position);
+                    }
+                    depth = 0;
+                    done = true;
+                    continue;
+                } else if (b != '{') {
+                    throw new ParseException("Expected JSON object in array", position);
+                } else if (separate) {
+                    throw new ParseException("Expected comma between JSON array elements", position);
+                } else {
+                    comma = false;
+                }
+            }
+
+            append(b);
+            if (inString) {
+                if (escape) {
+                    escape = false;
+                } else if (b == '\\') {
+                    escape = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                ++depth;
+            } else if (b == '}' || b == ']') {
+                --depth;
+                if (depth == (array ? 1 : 0)) {
+                    byte[] result = Arrays.copyOf(element, length);
+                    length = 0;
+                    if (element.length > RETAINED_CAPACITY) {
+                        // Do not retain the buffer of an unusually large element.
+                        element = new byte[INITIAL_CAPACITY];
+                    }
+                    if (array) {
+                        separate = true;
+                    } else {
+                        done = true;
+                    }
+                    listener.onElement(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return whether any non whitespace byte has been read
+     */
+    boolean isStarted() {
+        return array || depth > 0 || done;
+    }
+
+    /**
+     * @return whether a complete array, or object, has been read
+     */
+    boolean isComplete() {
+        return done;
+    }
+
+    private void append(byte b) throws IOException {
+        if (length == element.length) {
+            if (maxElementSize > 0 && length >= maxElementSize) {
+                throw new IOException("JSON element larger than " + maxElementSize + " bytes");
+            }
+            element = Arrays.copyOf(element, length << 1);
+        }
+        element[length++] = b;
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    interface Listener {
+        void onElement(byte[] element) throws IOException;
+    }
+}
@@ -17,12 +17,17 @@ package org.cometd.server.transport;
 
 import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.EncodedFrame;
+import org.cometd.server.ServerSessionImpl;
+import org.cometd.server.TransportMetrics;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.text.ParseException;
+import java.util.List;
 
 public class JSONTransport extends AbstractStreamHttpTransport {
     public final static String PREFIX = "long-polling.json";
@@ -65,6 +70,43 @@ public class JSONTransport extends AbstractStreamHttpTransport {
         }
     }
 
+    @Override
+    protected void write(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session, boolean startInterval, List<ServerMessage> messages, ServerMessage.Mutable[] replies) {
+        if (!isGzipPassThrough(request, messages)) {
+            super.write(request, response, session, startInterval, messages, replies);
+            return;
+        }
+        TransportMetrics metrics = getMetrics();
+        try {
+            try {
+                response.setContentType(_mimeType);
+                setGzipHeaders(response);
+                ServletOutputStream output = response.getOutputStream();
+                // Each member is written as soon as it is compressed.
+                long written = writeGzipMembers(messages, replies, output);
+                output.close();
+                if (metrics.isEnabled()) {
+                    metrics.written(written);
+                }
+            } finally {
+                if (startInterval && session != null && session.isConnected()) {
+                    session.startIntervalTimeout(getInterval());
+                }
+            }
+            EncodedFrame.release(messages);
+            _logger.debug("gzip messages sended {} >>> {}", (session != null) ? session.getId() : "null", messages);
+        } catch (Exception x) {
+            _logger.debug("gzip message delivery failed rollback {} >>> {} ", (session != null) ? session.getId() : "null", messages);
+            AsyncContext asyncContext = null;
+            if (request.isAsyncStarted()) {
+                asyncContext = request.getAsyncContext();
+            }
+            error(request, response, asyncContext, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            metrics.writeFailed(messages.size());
+            rollback(session, messages);
+        }
+    }
+
     @Override
     protected ServletOutputStream beginWrite(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setContentType(_mimeType);
@@ -0,0 +1,160 @@
+package org.cometd.server.transport;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Registry of the schedulers of the suspended {@code /meta/connect}, keyed by session id and ordered
+ * by the time their next validation is due.</p>
+ * <p>Registering and removing a scheduler are O(log n), and {@link #sweep(long, ToLongFunction)} only
+ * visits the schedulers whose validation is due, so that its cost depends on the number of expired
+ * schedulers rather than on the number of suspended {@code /meta/connect}.</p>
+ * <p>A session has at most one registered scheduler: registering a new one replaces the previous one.</p>
+ *
+ * @param <S> the type of the schedulers
+ */
+final class SchedulerRegistry<S> {
+    private static final Comparator<Entry<?>> EXPIRY_ORDER = Comparator.<Entry<?>>comparingLong(entry -> entry.deadline)
+            .thenComparingLong(entry -> entry.sequence);
+
+    private final Map<String, Entry<S>> _sessions = new ConcurrentHashMap<>();
+    private final ConcurrentNavigableMap<Entry<S>, Boolean> _expiries = new ConcurrentSkipListMap<>(EXPIRY_ORDER);
+    private final AtomicLong _sequence = new AtomicLong();
+    private final Collection<S> _schedulers = new SchedulerValues();
+
+    /**
+     * @param sessionId the id of the session of the scheduler
+     * @param scheduler the scheduler to register
+     * @param deadline  the time, in milliseconds, at which the scheduler is due for validation
+     */
+    void register(String sessionId, S scheduler, long deadline) {
+        Entry<S> entry = new Entry<>(sessionId, scheduler, deadline, _sequence.incrementAndGet());
+        _sessions.compute(sessionId, (key, existing) -> {
+            if (existing != null) {
+                _expiries.remove(existing);
+            }
+            _expiries.put(entry, Boolean.TRUE);
+            return entry;
+        });
+    }
+
+    /**
+     * @param sessionId the id of the session of the scheduler
+     * @param scheduler the scheduler to remove
+     * @return whether the scheduler was registered
+     */
+    boolean remove(String sessionId, S scheduler) {
+        boolean[] removed = new boolean[1];
+        _sessions.computeIfPresent(sessionId, (key, existing) -> {
+            if (existing.scheduler != scheduler) {
+                return existing;
+            }
+            _expiries.remove(existing);
+            removed[0] = true;
+            return null;
+        });
+        return removed[0];
+    }
+
+    /**
+     * @param sessionId the id of a session
+     * @return the scheduler registered for the session, or null
+     */
+    S get(String sessionId) {
+        Entry<S> entry = _sessions.get(sessionId);
+        return entry == null ? null : entry.scheduler;
+    }
+
+    /**
+     * <p>Visits, in expiry order, the schedulers whose validation is due at the given time.</p>
+     * <p>The visitor returns the time at which the scheduler is next due, or a negative value if it must
+     * not be visited again; a scheduler removed while visited is not visited again either.
+     * Must be called by a single thread at a time.</p>
+     *
+     * @param now     the current time, in milliseconds
+     * @param visitor the function validating a scheduler
+     * @return the number of visited schedulers
+     */
+    int sweep(long now, ToLongFunction<S> visitor) {
+        int visited = 0;
+        while (true) {
+            Map.Entry<Entry<S>, Boolean> first = _expiries.firstEntry();
+            if (first == null || first.getKey().deadline > now) {
+                return visited;
+            }
+            Entry<S> entry = first.getKey();
+            if (_expiries.remove(entry) == null) {
+                // Removed concurrently.
+                continue;
+            }
+            ++visited;
+            long deadline = visitor.applyAsLong(entry.scheduler);
+            if (deadline >= 0) {
+                Entry<S> next = new Entry<>(entry.sessionId, entry.scheduler, deadline, _sequence.incrementAndGet());
+                _sessions.computeIfPresent(entry.sessionId, (key, existing) -> {
+                    if (existing != entry) {
+                        return existing;
+                    }
+                    _expiries.put(next, Boolean.TRUE);
+                    return next;
+                });
+            }
+        }
+    }
+
+    /**
+     * @return a live, unmodifiable view of the registered schedulers
+     */
+    Collection<S> getSchedulers() {
+        return _schedulers;
+    }
+
+    int size() {
+        return _sessions.size();
+    }
+
+    private static class Entry<S> {
+        private final String sessionId;
+        private final S scheduler;
+        private final long deadline;
+        private final long sequence;
+
+        private Entry(String sessionId, S scheduler, long deadline, long sequence) {
+            this.sessionId = sessionId;
+            this.scheduler = scheduler;
+            this.deadline = deadline;
+            this.sequence = sequence;
+        }
+    }
+
+    private class SchedulerValues extends AbstractCollection<S> {
+        @Override
+        public Iterator<S> iterator() {
+            Iterator<Entry<S>> entries = _sessions.values().iterator();
+            return new Iterator<S>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public S next() {
+                    return entries.next().scheduler;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return _sessions.size();
+        }
+    }
+}
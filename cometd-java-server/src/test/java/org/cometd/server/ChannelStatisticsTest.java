@@ -0,0 +1,66 @@
+package org.cometd.server;
+
+import org.cometd.common.JSONContext;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChannelStatisticsTest {
+
+    private final JSONContext.Server jsonContext = new JettyJSONContextServer();
+
+    @Test
+    public void shouldRecordPublishesAndDeliveries() {
+        //Given
+        ChannelStatistics statistics = new ChannelStatistics();
+
+        //When
+        statistics.published(10, TimeUnit.MILLISECONDS.toNanos(1));
+        statistics.published(30, TimeUnit.MILLISECONDS.toNanos(3));
+        statistics.frozen(TimeUnit.MICROSECONDS.toNanos(4));
+        statistics.encoded(100, TimeUnit.MICROSECONDS.toNanos(20));
+
+        //Then
+        assertThat(statistics.getPublishes()).isEqualTo(2);
+        assertThat(statistics.getDeliveries()).isEqualTo(40);
+        assertThat(statistics.getFanOut().getMean()).isEqualTo(20.0);
+        assertThat(statistics.getFanOut().getMax()).isEqualTo(30);
+        assertThat(statistics.getAveragePublishLatency()).isEqualTo(2.0);
+        assertThat(statistics.getMaxPublishLatency()).isEqualTo(3.0);
+        assertThat(statistics.getAverageFreezeTime()).isEqualTo(4.0);
+        assertThat(statistics.getEncodes()).isEqualTo(1);
+        assertThat(statistics.getAverageEncodeTime()).isEqualTo(20.0);
+        assertThat(statistics.getEncodedBytes()).isEqualTo(100);
+        assertThat(statistics.toString()).startsWith("publishes: 2 (");
+    }
+
+    @Test
+    public void shouldRecordEncodingOfWeakMessageOnce() {
+        //Given
+        ChannelStatistics statistics = new ChannelStatistics();
+        WeakMessage message = new WeakMessage(50000, jsonContext, true);
+        message.setChannel("/devices/1");
+        message.setData("Z\u00fcrich");
+        message.setStatistics(statistics);
+
+        //When
+        message.freeze();
+        byte[] json = message.getJSONBytes();
+        message.getJSON();
+
+        //Then
+        assertThat(statistics.getEncodes()).isEqualTo(1);
+        assertThat(statistics.getEncodedBytes()).isEqualTo(json.length);
+    }
+
+    @Test
+    public void shouldComputeUtf8Length() {
+        String json = "{\"data\":\"Z\u00fcrich \u20ac \uD83D\uDE00\"}";
+
+        assertThat(ChannelStatistics.utf8Length(json)).isEqualTo(json.getBytes(StandardCharsets.UTF_8).length);
+        assertThat(ChannelStatistics.utf8Length("")).isZero();
+    }
+}
@@ -0,0 +1,182 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.ChannelId;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChannelTrieTest {
+
+    BayeuxServerImpl server = new BayeuxServerImpl();
+
+    @Test
+    public void shouldMatchSingleSegmentWildOnlyOneLevelBelow() {
+        //Given
+        ChannelTrie trie = new ChannelTrie();
+        ServerChannelImpl wild = channel("/a/*");
+        ServerChannelImpl deepWild = channel("/a/**");
+        trie.add(wild);
+        trie.add(deepWild);
+
+        //Then
+        assertThat(trie.match(new ChannelId("/a/b"))).containsExactly(wild, deepWild);
+        assertThat(trie.match(new ChannelId("/a/b/c"))).containsExactly(deepWild);
+        assertThat(trie.match(new ChannelId("/a"))).isEmpty();
+        assertThat(trie.match(new ChannelId("/b/c"))).isEmpty();
+        assertThat(trie.match(new ChannelId("/a/*"))).isEmpty();
+    }
+
+    @Test
+    public void shouldMatchRootWilds() {
+        //Given
+        ChannelTrie trie = new ChannelTrie();
+        ServerChannelImpl wild = channel("/*");
+        ServerChannelImpl deepWild = channel("/**");
+        trie.add(wild);
+        trie.add(deepWild);
+        trie.add(channel("/a/b"));
+
+        //Then
+        assertThat(trie.match(new ChannelId("/a"))).containsExactly(wild, deepWild);
+        assertThat(trie.match(new ChannelId("/a/b"))).containsExactly(deepWild);
+    }
+
+    @Test
+    public void shouldMatchDeepPathsInSameOrderAsChannelIdWilds() {
+        //Given
+        ChannelTrie trie = new ChannelTrie();
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < 20; ++i) {
+            path.append("/s").append(i);
+        }
+        ChannelId id = new ChannelId(path.toString());
+        for (String wild : id.getWilds()) {
+            trie.add(channel(wild));
+        }
+
+        //When
+        List<ServerChannelImpl> matches = trie.match(id);
+
+        //Then
+        assertThat(ids(matches)).containsExactlyElementsOf(id.getWilds());
+        assertThat(trie.match(new ChannelId(path + "/s20"))).hasSize(20);
+        assertThat(ids(trie.match(new ChannelId("/s0/other/s2")))).containsExactly("/s0/**", "/**");
+    }
+
+    @Test
+    public void shouldPruneEmptyNodesOnRemove() {
+        //Given
+        ChannelTrie trie = new ChannelTrie();
+        ServerChannelImpl shallow = channel("/a/*");
+        ServerChannelImpl deep = channel("/a/b/c/**");
+        trie.add(shallow);
+        trie.add(deep);
+
+        //When
+        trie.remove(deep);
+
+        //Then
+        assertThat(trie.match(new ChannelId("/a/b/c/d"))).isEmpty();
+        assertThat(trie.match(new ChannelId("/a/b"))).containsExactly(shallow);
+        assertThat(trie.isEmpty()).isFalse();
+
+        //When
+        trie.remove(shallow);
+
+        //Then
+        assertThat(trie.match(new ChannelId("/a/b"))).isEmpty();
+        assertThat(trie.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void shouldIgnoreRemovalOfReplacedOrUnknownChannels() {
+        //Given
+        ChannelTrie trie = new ChannelTrie();
+        ServerChannelImpl replaced = channel("/a/*");
+        ServerChannelImpl current = channel("/a/*");
+        trie.add(replaced);
+        trie.add(current);
+
+        //When
+        trie.remove(replaced);
+        trie.remove(channel("/b/c/*"));
+        trie.remove(channel("/a/b"));
+
+        //Then
+        assertThat(trie.match(new ChannelId("/a/b"))).containsExactly(current);
+    }
+
+    @Test
+    public void shouldMatchConsistentlyWhileChannelsAreAddedAndRemoved() throws InterruptedException {
+        //Given
+        ChannelTrie trie = new ChannelTrie();
+        ServerChannelImpl root = channel("/**");
+        trie.add(root);
+        int writers = 4;
+        int iterations = 2000;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        CountDownLatch done = new CountDownLatch(writers);
+        ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<>();
+
+        //When
+        for (int w = 0; w < writers; ++w) {
+            int writer = w;
+            new Thread(() -> {
+                for (int i = 0; i < iterations; ++i) {
+                    ServerChannelImpl wild = channel("/x/" + writer + "/*");
+                    ServerChannelImpl deepWild = channel("/x/" + writer + "/y/**");
+                    trie.add(wild);
+                    trie.add(deepWild);
+                    trie.remove(deepWild);
+                    trie.remove(wild);
+                }
+                done.countDown();
+            }).start();
+        }
+        Thread reader = new Thread(() -> {
+            while (writing.get()) {
+                for (int w = 0; w < writers; ++w) {
+                    List<ServerChannelImpl> matches = trie.match(new ChannelId("/x/" + w + "/y"));
+                    if (matches.isEmpty() || matches.get(matches.size() - 1) != root) {
+                        failures.add("missing /** in " + matches);
+                    }
+                    for (ServerChannelImpl match : matches) {
+                        if (match != root && !match.getId().equals("/x/" + w + "/*")) {
+                            failures.add("unexpected " + match.getId() + " for /x/" + w + "/y");
+                        }
+                    }
+                }
+            }
+        });
+        reader.start();
+        boolean completed = done.await(10, TimeUnit.SECONDS);
+        writing.set(false);
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+
+        //Then
+        assertThat(completed).isTrue();
+        assertThat(failures).isEmpty();
+        assertThat(trie.match(new ChannelId("/x/0/y"))).containsExactly(root);
+        trie.remove(root);
+        assertThat(trie.isEmpty()).isTrue();
+    }
+
+    private List<String> ids(List<ServerChannelImpl> channels) {
+        List<String> ids = new ArrayList<>();
+        for (ServerChannelImpl channel : channels) {
+            ids.add(channel.getId());
+        }
+        return ids;
+    }
+
+    private ServerChannelImpl channel(String name) {
+        return new ServerChannelImpl(server, new ChannelId(name));
+    }
+}
@@ -0,0 +1,178 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FanOutExecutorTest {
+
+    BayeuxServerImpl server = new BayeuxServerImpl();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        server.setOption(BayeuxServerImpl.FAN_OUT_THRESHOLD_OPTION, 16);
+        server.setOption(BayeuxServerImpl.FAN_OUT_PARALLELISM_OPTION, 4);
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        server.stop();
+    }
+
+    @Test
+    public void shouldKeepPublishOrderOfEverySessionQueue() throws InterruptedException {
+        //Given
+        List<ServerSessionImpl> sessions = sessions(64);
+        ServerChannelImpl large = channel("/fan-out/large");
+        ServerChannelImpl other = channel("/fan-out/other");
+        for (ServerSessionImpl session : sessions) {
+            large.subscribe(session);
+        }
+        // Also above the threshold, so both channels are fanned out through the lanes.
+        for (ServerSessionImpl session : sessions.subList(0, 32)) {
+            other.subscribe(session);
+        }
+        int publishes = 200;
+
+        //When
+        for (int i = 0; i < publishes; ++i) {
+            publish(i % 3 == 0 ? other : large, i);
+        }
+
+        //Then
+        for (int i = 0; i < sessions.size(); ++i) {
+            ServerSessionImpl session = sessions.get(i);
+            int expected = 0;
+            for (int p = 0; p < publishes; ++p) {
+                if (i < 32 || p % 3 != 0) {
+                    ++expected;
+                }
+            }
+            awaitQueueSize(session, expected);
+            int previous = -1;
+            for (ServerMessage message : session.getQueue()) {
+                int sequence = Integer.parseInt(message.getId());
+                assertThat(sequence).isGreaterThan(previous);
+                previous = sequence;
+            }
+        }
+    }
+
+    @Test
+    public void shouldDeliverBelowThresholdOnPublishingThread() throws InterruptedException {
+        //Given
+        List<ServerSessionImpl> sessions = sessions(64);
+        ServerChannelImpl large = channel("/fan-out/large");
+        ServerChannelImpl small = channel("/fan-out/small");
+        for (ServerSessionImpl session : sessions) {
+            large.subscribe(session);
+        }
+        for (ServerSessionImpl session : sessions.subList(0, 4)) {
+            small.subscribe(session);
+        }
+
+        //When
+        for (int i = 0; i < 100; ++i) {
+            publish(large, i);
+        }
+        publish(small, 100);
+
+        //Then
+        for (ServerSessionImpl session : sessions.subList(0, 4)) {
+            assertThat(session.getQueue()).extracting(ServerMessage::getChannel).contains(small.getId());
+        }
+        for (ServerSessionImpl session : sessions) {
+            awaitQueueSize(session, sessions.indexOf(session) < 4 ? 101 : 100);
+        }
+    }
+
+    @Test
+    public void shouldDeliverToEverySessionOfPlanOnce() throws Exception {
+        //Given
+        FanOutExecutor executor = new FanOutExecutor(2);
+        executor.start();
+        List<ServerSessionImpl> sessions = sessions(50);
+        FanOutExecutor.Plan plan = executor.newPlan();
+        sessions.forEach(plan::add);
+        List<ServerSessionImpl> delivered = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch complete = new CountDownLatch(1);
+
+        //When
+        plan.execute(delivered::add, complete::countDown);
+
+        //Then
+        assertThat(complete.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(plan.size()).isEqualTo(50);
+        assertThat(delivered).containsExactlyInAnyOrderElementsOf(sessions);
+        executor.stop();
+    }
+
+    @Test
+    public void shouldDeliverInlineOnceStopped() throws Exception {
+        //Given
+        FanOutExecutor executor = new FanOutExecutor(2);
+        executor.start();
+        executor.stop();
+        List<ServerSessionImpl> sessions = sessions(10);
+        FanOutExecutor.Plan plan = executor.newPlan();
+        sessions.forEach(plan::add);
+        List<ServerSessionImpl> delivered = new ArrayList<>();
+        CountDownLatch complete = new CountDownLatch(1);
+
+        //When
+        plan.execute(delivered::add, complete::countDown);
+
+        //Then
+        assertThat(complete.getCount()).isZero();
+        assertThat(delivered).containsExactlyInAnyOrderElementsOf(sessions);
+
+        //When
+        delivered.clear();
+        plan.execute(delivered::add, () -> {});
+
+        //Then
+        assertThat(delivered).hasSize(10);
+    }
+
+    private void publish(ServerChannelImpl channel, int sequence) {
+        ServerMessage.Mutable message = server.newMessage();
+        message.setChannel(channel.getId());
+        message.setId(String.valueOf(sequence));
+        message.setData(new HashMap<String, Object>());
+        channel.publish(null, message);
+    }
+
+    private ServerChannelImpl channel(String name) {
+        return (ServerChannelImpl) server.createChannelIfAbsent(name).getReference();
+    }
+
+    private List<ServerSessionImpl> sessions(int count) {
+        List<ServerSessionImpl> sessions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ServerSessionImpl session = new ServerSessionImpl(server);
+            session.handshake();
+            server.addServerSession(session, null);
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    private void awaitQueueSize(ServerSessionImpl session, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (session.getQueue().size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(session.getQueue()).hasSize(size);
+    }
+}
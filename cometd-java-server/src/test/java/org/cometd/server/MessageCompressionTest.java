@@ -0,0 +1,127 @@
+package org.cometd.server;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageCompressionTest {
+
+    private final byte[] json = json();
+
+    @Test
+    public void shouldRoundTripEveryCompression() throws IOException {
+        for (MessageCompression compression : MessageCompression.values()) {
+            byte[] compressed = compression.compress(json);
+
+            assertThat(compression.decompress(compressed)).isEqualTo(json);
+            try (InputStream input = compression.newInputStream(compressed, 512)) {
+                assertThat(IOUtils.toByteArray(input)).isEqualTo(json);
+            }
+        }
+    }
+
+    @Test
+    public void shouldRejectTruncatedGzip() {
+        //Given
+        byte[] compressed = MessageCompression.GZIP.compress(json);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+        //Then
+        assertThatThrownBy(() -> MessageCompression.GZIP.decompress(truncated)).isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> {
+            try (InputStream input = MessageCompression.GZIP.newInputStream(truncated, 512)) {
+                IOUtils.toByteArray(input);
+            }
+        }).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> MessageCompression.GZIP.decompress(new byte[]{0x1F})).isInstanceOf(UncheckedIOException.class);
+    }
+
+    @Test
+    public void shouldRejectGzipLongerThanItsTrailerSize() {
+        //Given
+        // Two members: the trailer of the last one only holds the size of the last member.
+        byte[] first = MessageCompression.GZIP.compress(json);
+        byte[] second = MessageCompression.GZIP.compress("{}".getBytes(StandardCharsets.UTF_8));
+        byte[] concatenated = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, concatenated, first.length, second.length);
+
+        //Then
+        assertThatThrownBy(() -> MessageCompression.GZIP.decompress(concatenated))
+                .isInstanceOf(UncheckedIOException.class)
+                .hasMessageContaining("longer than its trailer size");
+    }
+
+    @Test
+    public void shouldRejectTruncatedBlocks() {
+        for (MessageCompression compression : new MessageCompression[]{MessageCompression.LZ4, MessageCompression.ZSTD}) {
+            //Given
+            byte[] compressed = compression.compress(json);
+            byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+
+            //Then
+            assertThatThrownBy(() -> compression.decompress(truncated)).isInstanceOf(RuntimeException.class);
+            assertThatThrownBy(() -> compression.decompress(Arrays.copyOf(compressed, 3)))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    public void shouldRejectBlockWhoseHeaderDoesNotMatchItsContent() {
+        //Given
+        byte[] compressed = MessageCompression.LZ4.compress(json);
+
+        //Then
+        assertThatThrownBy(() -> MessageCompression.LZ4.decompress(withLength(compressed, json.length + 16)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("expected " + (json.length + 16) + " bytes, got " + json.length);
+        assertThatThrownBy(() -> MessageCompression.LZ4.decompress(withLength(compressed, json.length / 2)))
+                .isInstanceOf(RuntimeException.class);
+        assertThatThrownBy(() -> MessageCompression.LZ4.decompress(withLength(compressed, -1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldNotTrustOversizedLengths() {
+        //Given
+        byte[] gzip = MessageCompression.GZIP.compress(json);
+        byte[] gzipTrailer = gzip.clone();
+        gzipTrailer[gzipTrailer.length - 1] = 0x7F;
+        byte[] lz4 = MessageCompression.LZ4.compress(json);
+
+        //Then
+        // Streamed rather than allocated up front, then rejected by the trailer check.
+        assertThatThrownBy(() -> MessageCompression.GZIP.decompress(gzipTrailer))
+                .isInstanceOf(UncheckedIOException.class);
+        assertThatThrownBy(() -> MessageCompression.LZ4.decompress(withLength(lz4, Integer.MAX_VALUE)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid LZ4 compressed data");
+    }
+
+    private static byte[] withLength(byte[] compressed, int length) {
+        byte[] result = compressed.clone();
+        result[0] = (byte)(length >>> 24);
+        result[1] = (byte)(length >>> 16);
+        result[2] = (byte)(length >>> 8);
+        result[3] = (byte)length;
+        return result;
+    }
+
+    private static byte[] json() {
+        StringBuilder builder = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < 200; ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"id\":\"").append(i).append("\",\"name\":\"device ").append(i % 7).append("\"}");
+        }
+        return builder.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,245 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.common.JSONContext;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MessageQueueTest {
+
+    private final JSONContext.Server jsonContext = new JettyJSONContextServer();
+
+    @Test
+    public void shouldKeepOrderOfEachProducerWhileDrainedConcurrently() throws InterruptedException {
+        //Given
+        MessageQueue queue = new MessageQueue();
+        int producers = 4;
+        int messages = 5000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; ++p) {
+            int producer = p;
+            Thread thread = new Thread(() -> {
+                await(start);
+                for (int i = 0; i < messages; ++i) {
+                    queue.offer(message("/queue/" + producer, String.valueOf(i), false));
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        //When
+        start.countDown();
+        List<ServerMessage> drained = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (drained.size() < producers * messages && System.nanoTime() < deadline) {
+            queue.drainTo(drained);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //Then
+        assertThat(drained).hasSize(producers * messages);
+        int[] next = new int[producers];
+        for (ServerMessage message : drained) {
+            int producer = Integer.parseInt(message.getChannel().substring("/queue/".length()));
+            assertThat(Integer.parseInt(message.getId())).isEqualTo(next[producer]++);
+        }
+        assertThat(queue.size()).isZero();
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.getBytes()).isZero();
+    }
+
+    @Test
+    public void shouldRemoveThroughIteratorAndReleaseTheFrame() {
+        //Given
+        MessageQueue queue = new MessageQueue();
+        List<ServerMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 6; ++i) {
+            ServerMessage message = message("/queue", String.valueOf(i), true);
+            messages.add(message);
+            queue.offer(message);
+        }
+        long bytes = queue.getBytes();
+
+        //When
+        for (Iterator<ServerMessage> iterator = queue.iterator(); iterator.hasNext(); ) {
+            if (Integer.parseInt(iterator.next().getId()) % 2 == 1) {
+                iterator.remove();
+            }
+        }
+
+        //Then
+        assertThat(queue).hasSize(3);
+        assertThat(queue.getBytes()).isEqualTo(bytes / 2);
+        for (int i = 0; i < messages.size(); ++i) {
+            assertThat(EncodedFrame.of(messages.get(i)).getReferences()).isEqualTo(i % 2 == 0 ? 1 : 0);
+        }
+        assertThat(queue.drain()).containsExactly(messages.get(0), messages.get(2), messages.get(4));
+    }
+
+    @Test
+    public void shouldNotRemoveThroughIteratorMessageAlreadyPolled() {
+        //Given
+        MessageQueue queue = new MessageQueue();
+        ServerMessage first = message("/queue", "1", true);
+        queue.offer(first);
+        queue.offer(message("/queue", "2", true));
+        Iterator<ServerMessage> iterator = queue.iterator();
+
+        //When
+        assertThat(iterator.next()).isSameAs(first);
+        assertThat(queue.poll()).isSameAs(first);
+        iterator.remove();
+
+        //Then
+        assertThat(queue).hasSize(1);
+        assertThat(EncodedFrame.of(first).getReferences()).isZero();
+        assertThatThrownBy(iterator::remove).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldKeepSizeConsistentWithContent() {
+        //Given
+        MessageQueue queue = new MessageQueue();
+
+        //Then
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.drain()).isEmpty();
+        assertThat(queue.poll()).isNull();
+        assertThat(queue.peek()).isNull();
+
+        //When
+        for (int i = 0; i < 5; ++i) {
+            queue.offer(message("/queue", String.valueOf(i), false));
+        }
+        queue.poll();
+        ServerMessage replaced = queue.offer(message("/queue", "a", false), "key");
+        ServerMessage replacing = message("/queue", "b", false);
+        ServerMessage coalesced = queue.offer(replacing, "key");
+
+        //Then
+        assertThat(replaced).isNull();
+        assertThat(coalesced).isNotNull();
+        assertThat(queue.size()).isEqualTo(5);
+        assertThat(queue.isEmpty()).isFalse();
+        assertThat(queue.getBytes()).isEqualTo(5L * MessageQueue.estimate(replacing));
+        assertThat(queue.peek().getId()).isEqualTo("1");
+
+        //When
+        List<ServerMessage> drained = queue.drain();
+
+        //Then
+        assertThat(drained).hasSize(5);
+        assertThat(drained.get(4)).isSameAs(replacing);
+        assertThat(queue.size()).isZero();
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.getBytes()).isZero();
+
+        //When
+        queue.requeue(drained);
+        queue.clear();
+
+        //Then
+        assertThat(queue.isEmpty()).isTrue();
+        assertThat(queue.iterator().hasNext()).isFalse();
+        assertThat(queue.drainTo(new ArrayList<>())).isZero();
+    }
+
+    @Test
+    public void shouldHandFrameReferencesToDrainerAndBackOnRequeue() {
+        //Given
+        MessageQueue queue = new MessageQueue();
+        ServerMessage message = message("/queue", "1", true);
+        EncodedFrame frame = EncodedFrame.of(message);
+        queue.offer(message);
+
+        //When
+        List<ServerMessage> drained = queue.drain();
+        queue.requeue(drained);
+
+        //Then
+        assertThat(frame.getReferences()).isEqualTo(1);
+        assertThat(queue).containsExactly(message);
+
+        //When
+        queue.clear();
+
+        //Then
+        assertThat(frame.getReferences()).isZero();
+        assertThat(queue.drain()).isEqualTo(Collections.emptyList());
+    }
+
+    @Test
+    public void shouldRemoveMessageByKeyAndReleaseTheFrame() {
+        //Given
+        MessageQueue queue = new MessageQueue();
+        ServerMessage keyed = message("/queue", "1", true);
+        queue.offer(keyed, "key");
+        queue.offer(message("/queue", "2", true));
+
+        //When
+        ServerMessage removed = queue.removeKey("key");
+
+        //Then
+        assertThat(removed).isSameAs(keyed);
+        assertThat(EncodedFrame.of(keyed).getReferences()).isZero();
+        assertThat(queue).extracting(ServerMessage::getId).containsExactly("2");
+        assertThat(queue.removeKey("key")).isNull();
+    }
+
+    @Test
+    public void shouldNotSerializeQueuedMessages() {
+        //Given
+        MessageQueue queue = new MessageQueue();
+        WeakMessage message = (WeakMessage)message("/queue", "1", true);
+        WeakMessage serialized = (WeakMessage)message("/queue", "2", true);
+        int bytes = MessageQueue.estimate(serialized);
+
+        //When
+        queue.offer(message);
+        queue.offer(serialized);
+
+        //Then
+        assertThat(message.peekRawData()).isNull();
+        assertThat(serialized.peekRawData()).hasSize(bytes);
+
+        //When
+        List<ServerMessage> drained = queue.drain();
+
+        //Then
+        assertThat(EncodedFrame.of(drained.get(0)).getJSON()).contains("data-1");
+        assertThat(message.peekRawData()).isNotNull();
+        EncodedFrame.release(drained);
+    }
+
+    private ServerMessage message(String channel, String id, boolean frozen) {
+        WeakMessage message = new WeakMessage(50000, jsonContext, true);
+        message.setChannel(channel);
+        message.setId(id);
+        message.setData("data-" + id);
+        if (frozen) {
+            message.freeze();
+        }
+        return message;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException x) {
+            throw new RuntimeException(x);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerSession;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * Wildcard dedup of a publish reaching both wildcard and leaf subscribers, compare {@code gc.alloc.rate.norm}
+ * of the previous {@code HashSet} of session ids with the reusable {@link SessionDedup}.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class PublishDedupBenchmark {
+
+    @Test
+    public void publishDedupBenchmark() throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .result("target/" + PublishDedupBenchmark.class.getSimpleName() + "-jmh.json")
+                .resultFormat(ResultFormatType.JSON)
+                .include(PublishDedupBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public void hashSetOfIds(ExecutionPlan plan, Blackhole blackhole) {
+        Set<String> wildSubscribers = null;
+        for (ServerSession session : plan.getWildSubscribers()) {
+            if (wildSubscribers == null) {
+                wildSubscribers = new HashSet<>();
+            }
+            if (wildSubscribers.add(session.getId())) {
+                blackhole.consume(session);
+            }
+        }
+        for (ServerSession session : plan.getLeafSubscribers()) {
+            if (wildSubscribers == null || !wildSubscribers.contains(session.getId())) {
+                blackhole.consume(session);
+            }
+        }
+    }
+
+    @Benchmark
+    public void reusableDedup(ExecutionPlan plan, Blackhole blackhole) {
+        SessionDedup wildSubscribers = null;
+        try {
+            for (ServerSession session : plan.getWildSubscribers()) {
+                if (wildSubscribers == null) {
+                    wildSubscribers = SessionDedup.acquire();
+                }
+                if (wildSubscribers.add(session)) {
+                    blackhole.consume(session);
+                }
+            }
+            for (ServerSession session : plan.getLeafSubscribers()) {
+                if (wildSubscribers == null || !wildSubscribers.contains(session)) {
+                    blackhole.consume(session);
+                }
+            }
+        } finally {
+            if (wildSubscribers != null) {
+                wildSubscribers.release();
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutionPlan {
+        @Param({"10", "1000", "10000"})
+        int subscriberCount;
+
+        private Set<ServerSession> wildSubscribers;
+        private Set<ServerSession> leafSubscribers;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            BayeuxServerImpl bayeux = new BayeuxServerImpl();
+            wildSubscribers = new ShardedSubscriberSet();
+            leafSubscribers = new ShardedSubscriberSet();
+            for (int i = 0; i < subscriberCount; i++) {
+                ServerSessionImpl session = new ServerSessionImpl(bayeux);
+                // Half of the sessions subscribed to both the wildcard and the leaf channel.
+                if (i % 2 == 0) {
+                    wildSubscribers.add(session);
+                }
+                leafSubscribers.add(session);
+            }
+        }
+
+        public Set<ServerSession> getWildSubscribers() {
+            return wildSubscribers;
+        }
+
+        public Set<ServerSession> getLeafSubscribers() {
+            return leafSubscribers;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerSession;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * Subscribe churn on a hot channel while another thread iterates the subscribers as {@code doPublish} does.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class ServerChannelBenchmark {
+
+    @Test
+    public void subscriberChurnBenchmark() throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .result("target/" + ServerChannelBenchmark.class.getSimpleName() + "-jmh.json")
+                .resultFormat(ResultFormatType.JSON)
+                .include(ServerChannelBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(3)
+    public boolean subscribe(ExecutionPlan plan) {
+        ServerSession session = plan.randomSession();
+        Set<ServerSession> subscribers = plan.getSubscribers();
+        return subscribers.remove(session) || subscribers.add(session);
+    }
+
+    @Benchmark
+    @Group("churn")
+    @GroupThreads(1)
+    public void publish(ExecutionPlan plan, Blackhole blackhole) {
+        for (ServerSession session : plan.getSubscribers()) {
+            blackhole.consume(session);
+        }
+    }
+
+    @State(Scope.Group)
+    public static class ExecutionPlan {
+        @Param({"copyOnWrite", "sharded"})
+        String implementation;
+
+        @Param({"1000", "50000"})
+        int sessionCount;
+
+        private BayeuxServerImpl bayeux;
+        private ServerSession[] sessions;
+        private Set<ServerSession> subscribers;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            bayeux = new BayeuxServerImpl();
+            sessions = new ServerSession[sessionCount];
+            for (int i = 0; i < sessionCount; i++) {
+                sessions[i] = new ServerSessionImpl(bayeux);
+            }
+            subscribers = "sharded".equals(implementation) ? new ShardedSubscriberSet() : new CopyOnWriteArraySet<>();
+            for (ServerSession session : sessions) {
+                subscribers.add(session);
+            }
+        }
+
+        public ServerSession randomSession() {
+            return sessions[ThreadLocalRandom.current().nextInt(sessions.length)];
+        }
+
+        public Set<ServerSession> getSubscribers() {
+            return subscribers;
+        }
+    }
+}
@@ -4,8 +4,13 @@ import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteSource;
 import com.jayway.jsonpath.JsonPath;
+import org.cometd.bayeux.Message;
 import org.cometd.bayeux.server.LocalSession;
+import org.cometd.bayeux.server.ServerMessage;
+import org.cometd.bayeux.server.ServerSession;
 import org.cometd.server.transport.AbstractHttpTransport;
+import org.cometd.server.transport.AsyncJSONTransport;
+import org.cometd.server.transport.JSONTransport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.core.env.MapPropertySource;
@@ -20,8 +25,13 @@ import javax.servlet.http.HttpServletRequestWrapper;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.cometd.server.SessionState.*;
@@ -125,6 +135,401 @@ public class ServerSessionImplTest {
         assertThat(((ServerSessionImpl) server.getSession(clientId)).getQueue()).isNotEmpty();
     }
 
+    @Test
+    public void shouldShareOneEncodedFrameBetweenSubscribersAndReleaseItOnceWritten() throws IOException, ServletException {
+        //Given
+        AbstractHttpTransport transport = transport();
+        List<ServerSessionImpl> sessions = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            sessions.add(subscribe(transport, "/some/channel"));
+        }
+
+        //When
+        publish("/some/channel");
+
+        //Then
+        EncodedFrame frame = EncodedFrame.of(sessions.get(0).getQueue().peek());
+        assertThat(frame).isNotNull();
+        assertThat(frame.getReferences()).isEqualTo(3);
+        for (ServerSessionImpl session : sessions) {
+            assertThat(EncodedFrame.of(session.getQueue().peek())).isSameAs(frame);
+        }
+        // Queueing does not serialize the message.
+        assertThat(((ServerChannelImpl) server.getChannel("/some/channel")).getStatistics().getEncodes()).isZero();
+
+        //When
+        for (ServerSessionImpl session : sessions) {
+            Response connect = new Response();
+            transport.handle(request().clientId(session.getId()).connect().build(), connect.build());
+            assertThat(connect.<List<?>>resolve("$[?(@.channel == '/some/channel')]")).hasSize(1);
+        }
+
+        //Then
+        assertThat(((ServerChannelImpl) server.getChannel("/some/channel")).getStatistics().getEncodes()).isEqualTo(1);
+        assertThat(frame.getReferences()).isZero();
+        for (ServerSessionImpl session : sessions) {
+            assertThat(session.getQueue()).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldPutBackMessagesWithTheirFrameReferenceWhenWriteFails() throws IOException, ServletException {
+        //Given
+        AbstractHttpTransport transport = transport();
+        ServerSessionImpl session = subscribe(transport, "/some/channel");
+        ServerSessionImpl other = subscribe(transport, "/some/channel");
+        publish("/some/channel");
+        EncodedFrame frame = EncodedFrame.of(session.getQueue().peek());
+
+        //When
+        transport.handle(request().clientId(session.getId()).connect().build(), new Response().invalidConnection().build());
+
+        //Then
+        assertThat(session.getQueue()).hasSize(1);
+        assertThat(EncodedFrame.of(session.getQueue().peek())).isSameAs(frame);
+        assertThat(frame.getReferences()).isEqualTo(2);
+
+        //When
+        Response connect = new Response();
+        transport.handle(request().clientId(session.getId()).connect().build(), connect.build());
+        transport.handle(request().clientId(other.getId()).connect().build(), new Response().build());
+
+        //Then
+        assertThat(connect.<List<?>>resolve("$[?(@.channel == '/some/channel')]")).hasSize(1);
+        assertThat(session.getQueue()).isEmpty();
+        assertThat(frame.getReferences()).isZero();
+    }
+
+    @Test
+    public void shouldTakeQueueIntoReusedCollection() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = subscribe(transport(), "/some/channel");
+        session.addListener((ServerSession.DeQueueListener) (to, queue) -> publish("/some/channel", "0"));
+        List<ServerMessage> taken = new ArrayList<>();
+
+        //When
+        publish("/some/channel", "1");
+        int count = session.takeQueue(taken);
+
+        //Then
+        assertThat(count).isEqualTo(2);
+        assertThat(taken).extracting(Message::getId).containsExactly("1", "0");
+        assertThat(session.getQueue()).isEmpty();
+
+        //When
+        EncodedFrame.release(taken);
+        taken.clear();
+        publish("/some/channel", "2");
+        session.takeQueue(taken);
+
+        //Then
+        assertThat(taken).extracting(Message::getId).containsExactly("2", "0");
+    }
+
+    @Test
+    public void shouldNotQueueMessagesVetoedByMaxQueueListener() throws IOException, ServletException {
+        //Given
+        server.setOption("long-polling." + AbstractServerTransport.MAX_QUEUE_OPTION, 2);
+        ServerSessionImpl session = subscribe(transport(), "/some/channel");
+        AtomicInteger maxed = new AtomicInteger();
+        List<ServerMessage> queued = new ArrayList<>();
+        session.addListener((ServerSession.MaxQueueListener) (to, queue, sender, message) -> {
+            maxed.incrementAndGet();
+            return false;
+        });
+        session.addListener((ServerSession.QueueListener) (sender, message) -> queued.add(message));
+
+        //When
+        for (int i = 0; i < 5; ++i) {
+            publish("/some/channel", String.valueOf(i));
+        }
+
+        //Then
+        assertThat(maxed.get()).isEqualTo(2);
+        assertThat(queued).extracting(Message::getId).containsExactly("0", "1", "2");
+        assertThat(session.getQueue()).hasSize(3);
+        for (ServerMessage message : session.getQueue()) {
+            assertThat(EncodedFrame.of(message).getReferences()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldQueueMessageWhenMaxQueueListenerMakesRoom() throws IOException, ServletException {
+        //Given
+        server.setOption("long-polling." + AbstractServerTransport.MAX_QUEUE_OPTION, 2);
+        ServerSessionImpl session = subscribe(transport(), "/some/channel");
+        List<ServerMessage> removed = new ArrayList<>();
+        session.addListener((ServerSession.MaxQueueListener) (to, queue, sender, message) -> {
+            Iterator<ServerMessage> iterator = queue.iterator();
+            removed.add(iterator.next());
+            iterator.remove();
+            return true;
+        });
+
+        //When
+        for (int i = 0; i < 5; ++i) {
+            publish("/some/channel", String.valueOf(i));
+        }
+
+        //Then
+        assertThat(removed).extracting(Message::getId).containsExactly("0", "1");
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("2", "3", "4");
+        for (ServerMessage message : removed) {
+            assertThat(EncodedFrame.of(message).getReferences()).isZero();
+        }
+    }
+
+    @Test
+    public void shouldDropOldestMessagesWhenQueueOverflows() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = overflowingSession("drop-oldest");
+
+        //When
+        for (int i = 0; i < 3; ++i) {
+            publish("/some/channel", String.valueOf(i));
+        }
+
+        //Then
+        assertThat(session.getQueueOverflowPolicy()).isEqualTo(QueueOverflowPolicy.DROP_OLDEST);
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("1", "2");
+        assertThat(session.getDroppedMessages()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDropOneOldestMessagePerOverflowWhenPublishedConcurrently() throws Exception {
+        //Given
+        ServerSessionImpl session = overflowingSession("drop-oldest");
+        int threads = 4;
+        int publishes = 500;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> publishers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            int thread = t;
+            publishers.add(new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException x) {
+                    throw new RuntimeException(x);
+                }
+                for (int i = 0; i < publishes; ++i) {
+                    publish("/some/channel", thread + "-" + i);
+                }
+            }));
+        }
+
+        //When
+        publishers.forEach(Thread::start);
+        start.countDown();
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+
+        //Then
+        assertThat(session.getQueue()).hasSize(2);
+        assertThat(session.getDroppedMessages()).isEqualTo(threads * publishes - 2);
+    }
+
+    @Test
+    public void shouldDropNewestMessagesWhenQueueOverflows() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = overflowingSession("drop-newest");
+
+        //When
+        for (int i = 0; i < 3; ++i) {
+            publish("/some/channel", String.valueOf(i));
+        }
+
+        //Then
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("0", "1");
+        assertThat(session.getDroppedMessages()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDropOnlyMessagesWithSameCoalescingKeyBeforeOldestWhenQueueOverflows() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = overflowingSession("coalesce");
+        ServerChannelImpl channel = (ServerChannelImpl) server.getChannel("/some/channel");
+        channel.setLazy(true);
+        channel.setCoalescingKey(ServerChannelImpl.dataField("id"));
+
+        //When
+        publish("/some/channel", "0", ImmutableMap.of("id", "a"));
+        publish("/some/channel", "1", ImmutableMap.of("id", "b"));
+        publish("/some/channel", "2", ImmutableMap.of("id", "a"));
+
+        //Then
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("1", "2");
+
+        //When
+        // Without a coalescing key nothing is superseded, so the oldest message is dropped.
+        publish("/some/channel", "3", new HashMap<>());
+
+        //Then
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("2", "3");
+        assertThat(session.getDroppedMessages()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldDisconnectSessionWhenQueueOverflows() throws IOException, ServletException, InterruptedException {
+        //Given
+        ServerSessionImpl session = overflowingSession("disconnect");
+
+        //When
+        for (int i = 0; i < 3; ++i) {
+            publish("/some/channel", String.valueOf(i));
+        }
+
+        //Then
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("0", "1");
+        assertThat(session.getDroppedMessages()).isEqualTo(1);
+        assertThat(server.getOverflowDisconnects()).isEqualTo(1);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (server.getSession(session.getId()) != null && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(server.getSession(session.getId())).isNull();
+    }
+
+    @Test
+    public void shouldCountMessagesDroppedByOverflowPolicy() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = overflowingSession("drop-newest");
+        ServerSessionImpl other = subscribe(transport(), "/some/channel");
+
+        //When
+        for (int i = 0; i < 5; ++i) {
+            publish("/some/channel", String.valueOf(i));
+        }
+
+        //Then
+        assertThat(session.getDroppedMessages()).isEqualTo(3);
+        assertThat(other.getDroppedMessages()).isEqualTo(3);
+        assertThat(server.getDroppedMessages()).isEqualTo(6);
+        assertThat(server.getOverflowDisconnects()).isZero();
+    }
+
+    @Test
+    public void shouldReplaceQueuedLazyMessageWithSameChannelAndCoalescingKey() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = subscribe(transport(), "/some/channel");
+        ServerChannelImpl channel = (ServerChannelImpl) server.getChannel("/some/channel");
+        channel.setLazy(true);
+        channel.setCoalescingKey(ServerChannelImpl.dataField("source.id"));
+
+        //When
+        publish("/some/channel", "0", ImmutableMap.of("source", ImmutableMap.of("id", "a")));
+        publish("/some/channel", "1", ImmutableMap.of("source", ImmutableMap.of("id", "b")));
+        ServerMessage replaced = session.getQueue().peek();
+        publish("/some/channel", "2", ImmutableMap.of("source", ImmutableMap.of("id", "a")));
+        publish("/some/channel", "3", new HashMap<>());
+        publish("/some/channel", "4", new HashMap<>());
+
+        //Then
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("1", "2", "3", "4");
+        assertThat(session.getCoalescedMessages()).isEqualTo(1);
+        assertThat(session.getDroppedMessages()).isZero();
+        assertThat(EncodedFrame.of(replaced).getReferences()).isZero();
+    }
+
+    @Test
+    public void shouldNotCoalesceMessagesOfDifferentChannelsOrNotLazy() throws IOException, ServletException {
+        //Given
+        AbstractHttpTransport transport = transport();
+        ServerSessionImpl session = subscribe(transport, "/some/channel");
+        transport.handle(request().clientId(session.getId()).subscribe("/other/channel").build(), new Response().build());
+        for (String name : new String[]{"/some/channel", "/other/channel"}) {
+            ServerChannelImpl channel = (ServerChannelImpl) server.getChannel(name);
+            channel.setLazy(true);
+            channel.setCoalescingKey(ServerChannelImpl.dataField("id"));
+        }
+
+        //When
+        publish("/some/channel", "0", ImmutableMap.of("id", "a"));
+        publish("/other/channel", "1", ImmutableMap.of("id", "a"));
+        ((ServerChannelImpl) server.getChannel("/other/channel")).setLazy(false);
+        publish("/other/channel", "2", ImmutableMap.of("id", "a"));
+
+        //Then
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("0", "1", "2");
+        assertThat(session.getCoalescedMessages()).isZero();
+    }
+
+    @Test
+    public void shouldRequeueMessagesWhenGzipEncodingFails() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = subscribe(transport(), "/some/channel");
+        publish("/some/channel", "1");
+        publish("/some/channel", "2");
+        List<ServerMessage> queued = new ArrayList<>(session.getQueue());
+        FailingGzipTransport transport = new FailingGzipTransport(server);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //When
+        transport.flush(new MockHttpServletRequest(), response, session);
+
+        //Then
+        assertThat(response.getStatus()).isEqualTo(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        assertThat(session.getQueue()).extracting(Message::getId).containsExactly("1", "2");
+        for (ServerMessage message : queued) {
+            assertThat(EncodedFrame.of(message).getReferences()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldStreamGzipMembersAndRecordWrite() throws IOException, ServletException {
+        //Given
+        ServerSessionImpl session = subscribe(transport(), "/some/channel");
+        publish("/some/channel", "1");
+        publish("/some/channel", "2");
+        GzipJSONTransport transport = new GzipJSONTransport(server);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        //When
+        transport.flush(new MockHttpServletRequest(), response, session);
+
+        //Then
+        byte[] body = response.getContentAsByteArray();
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(JsonPath.<List<String>>read(new String(MessageCompression.GZIP.decompress(body), Charsets.UTF_8), "$[*].id")).containsExactly("1", "2");
+        assertThat(session.getQueue()).isEmpty();
+        assertThat(transport.metrics.getWrites()).isEqualTo(1);
+        assertThat(transport.metrics.getWrittenBytes()).isEqualTo(body.length);
+        assertThat(transport.metrics.getWriteFailures()).isZero();
+    }
+
+    private ServerSessionImpl subscribe(AbstractHttpTransport transport, String channel) throws IOException, ServletException {
+        Response handshake = new Response();
+        transport.handle(request().handshake().build(), handshake.build());
+        String clientId = handshake.resolve("$[0].clientId");
+        transport.handle(request().clientId(clientId).subscribe(channel).build(), new Response().build());
+        return (ServerSessionImpl) server.getSession(clientId);
+    }
+
+    private void publish(String channel) {
+        LocalSession publisher = server.newLocalSession("publisher");
+        publisher.handshake();
+        publisher.getChannel(channel).publish(new HashMap<>());
+        publisher.disconnect();
+    }
+
+    private ServerSessionImpl overflowingSession(String policy) throws IOException, ServletException {
+        server.setOption("long-polling." + AbstractServerTransport.MAX_QUEUE_OPTION, 2);
+        server.setOption("long-polling." + QueueOverflowPolicy.POLICY_OPTION, policy);
+        return subscribe(transport(), "/some/channel");
+    }
+
+    private void publish(String channel, String id) {
+        publish(channel, id, new HashMap<>());
+    }
+
+    private void publish(String channel, String id, Object data) {
+        ServerMessage.Mutable message = server.newMessage();
+        message.setChannel(channel);
+        message.setId(id);
+        message.setData(data);
+        ((ServerChannelImpl) server.createChannelIfAbsent(channel).getReference()).publish(null, message);
+    }
+
     private AbstractHttpTransport transport() {
         AbstractHttpTransport transport = (AbstractHttpTransport) server.getTransport("long-polling");
         server.setCurrentTransport(transport);
@@ -386,4 +791,46 @@ public class ServerSessionImplTest {
         }
     }
 
+    static class GzipJSONTransport extends JSONTransport {
+        private final JMXTransportMetrics metrics = new JMXTransportMetrics(NAME);
+
+        GzipJSONTransport(BayeuxServerImpl bayeux) {
+            super(bayeux, null);
+        }
+
+        void flush(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session) {
+            flush(request, response, session, true, true);
+        }
+
+        @Override
+        protected boolean isGzipPassThrough(HttpServletRequest request, List<ServerMessage> messages) {
+            return true;
+        }
+
+        @Override
+        protected TransportMetrics getMetrics() {
+            return metrics;
+        }
+    }
+
+    static class FailingGzipTransport extends AsyncJSONTransport {
+
+        FailingGzipTransport(BayeuxServerImpl bayeux) {
+            super(bayeux, null);
+        }
+
+        void flush(HttpServletRequest request, HttpServletResponse response, ServerSessionImpl session) {
+            flush(request, response, session, true, true);
+        }
+
+        @Override
+        protected boolean isGzipPassThrough(HttpServletRequest request, List<ServerMessage> messages) {
+            return true;
+        }
+
+        @Override
+        protected List<byte[]> toGzipMembers(List<ServerMessage> messages, ServerMessage.Mutable[] replies) {
+            throw new IllegalStateException("Encoding failed");
+        }
+    }
 }
@@ -0,0 +1,63 @@
+package org.cometd.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SessionDedupTest {
+
+    @Test
+    public void shouldClearAddedSessionsOnRelease() {
+        //Given
+        List<Object> sessions = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            sessions.add(new Object());
+        }
+        SessionDedup dedup = SessionDedup.acquire();
+
+        //When
+        for (Object session : sessions) {
+            assertThat(dedup.add(session)).isTrue();
+        }
+
+        //Then
+        assertThat(dedup.size()).isEqualTo(sessions.size());
+        for (Object session : sessions) {
+            assertThat(dedup.add(session)).isFalse();
+            assertThat(dedup.contains(session)).isTrue();
+        }
+
+        //When
+        dedup.release();
+        SessionDedup reused = SessionDedup.acquire();
+
+        //Then
+        assertThat(reused).isSameAs(dedup);
+        assertThat(reused.size()).isZero();
+        for (Object session : sessions) {
+            assertThat(reused.contains(session)).isFalse();
+        }
+        assertThat(reused.add(sessions.get(0))).isTrue();
+        reused.release();
+    }
+
+    @Test
+    public void shouldGiveNestedAcquireItsOwnInstance() {
+        //Given
+        SessionDedup outer = SessionDedup.acquire();
+        Object session = new Object();
+        outer.add(session);
+
+        //When
+        SessionDedup nested = SessionDedup.acquire();
+
+        //Then
+        assertThat(nested).isNotSameAs(outer);
+        assertThat(nested.contains(session)).isFalse();
+        nested.release();
+        outer.release();
+    }
+}
@@ -0,0 +1,186 @@
+package org.cometd.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SessionSweeperTest {
+
+    private static final long TICK = 100;
+
+    BayeuxServerImpl server = new BayeuxServerImpl();
+    SessionSweeper sweeper = new SessionSweeper(TICK);
+
+    @Test
+    public void shouldExpireSessionOnceItsDeadlinePassed() {
+        //Given
+        ServerSessionImpl session = session(5000);
+        sweeper.register(session);
+        long deadline = session.getSweepDeadline();
+
+        //When
+        int early = sweeper.sweep(deadline, this::sweep);
+
+        //Then
+        assertThat(early).isZero();
+        assertThat(server.getSession(session.getId())).isSameAs(session);
+
+        //When
+        int due = sweeper.sweep(deadline + TICK, this::sweep);
+
+        //Then
+        assertThat(due).isEqualTo(1);
+        assertThat(server.getSession(session.getId())).isNull();
+        assertThat(sweeper.size()).isZero();
+    }
+
+    @Test
+    public void shouldFollowDeadlineMovedByIntervalAndState() {
+        //Given
+        ServerSessionImpl session = session(5000);
+        sweeper.register(session);
+        long initial = session.getSweepDeadline();
+
+        //When
+        // Active sessions expire after the max interval, which is zero here: the deadline moves earlier.
+        session.activate();
+        sweeper.register(session);
+        long active = session.getSweepDeadline();
+        // Inactive sessions expire after the interval again: the deadline moves later.
+        session.deactivate();
+        sweeper.register(session);
+        long inactive = session.getSweepDeadline();
+
+        //Then
+        assertThat(active).isLessThan(initial);
+        assertThat(inactive).isGreaterThan(active);
+        assertThat(sweeper.size()).isEqualTo(2);
+
+        //When
+        int visited = sweeper.sweep(active + TICK, this::sweep);
+
+        //Then
+        assertThat(visited).isEqualTo(1);
+        assertThat(server.getSession(session.getId())).isSameAs(session);
+
+        //When
+        visited = sweeper.sweep(Math.max(initial, inactive) + TICK, this::sweep);
+
+        //Then
+        // The stale registration at the initial deadline is skipped.
+        assertThat(visited).isEqualTo(1);
+        assertThat(server.getSession(session.getId())).isNull();
+        assertThat(sweeper.size()).isZero();
+    }
+
+    @Test
+    public void shouldRegisterSessionAgainWhenIntervalIsExtended() {
+        //Given
+        ServerSessionImpl session = session(0);
+        sweeper.register(session);
+        long initial = session.getSweepDeadline();
+
+        //When
+        session.setInterval(5000);
+        session.startIntervalTimeout(0);
+        sweeper.register(session);
+        long extended = session.getSweepDeadline();
+        int visited = sweeper.sweep(initial + TICK, this::sweep);
+
+        //Then
+        assertThat(visited).isEqualTo(1);
+        assertThat(server.getSession(session.getId())).isSameAs(session);
+        assertThat(session.getSweepTick()).isNotEqualTo(SessionSweeper.NONE);
+
+        //When
+        visited = sweeper.sweep(extended + TICK, this::sweep);
+
+        //Then
+        assertThat(visited).isEqualTo(1);
+        assertThat(server.getSession(session.getId())).isNull();
+    }
+
+    @Test
+    public void shouldNotLoseSessionsRegisteredDuringSweep() throws Exception {
+        //Given
+        int count = 2000;
+        List<ServerSessionImpl> sessions = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            sessions.add(session(0));
+        }
+        Set<ServerSessionImpl> visited = ConcurrentHashMap.newKeySet();
+        long now = sessions.get(count - 1).getSweepDeadline() + TICK;
+        SessionSweeper.Visitor expire = (session, time) -> {
+            visited.add(session);
+            return false;
+        };
+        CountDownLatch registered = new CountDownLatch(1);
+        Thread registrar = new Thread(() -> {
+            sessions.forEach(sweeper::register);
+            registered.countDown();
+        });
+
+        //When
+        registrar.start();
+        while (registered.getCount() > 0) {
+            sweeper.sweep(now, expire);
+        }
+        sweeper.sweep(now, expire);
+
+        //Then
+        assertThat(visited).hasSize(count);
+        assertThat(sweeper.size()).isZero();
+    }
+
+    @Test
+    public void shouldFallBackToFullSweepEveryConfiguredPeriods() throws Exception {
+        //Given
+        AtomicInteger fullSweeps = new AtomicInteger();
+        BayeuxServerImpl bayeux = new BayeuxServerImpl() {
+            @Override
+            public void sweep() {
+                fullSweeps.incrementAndGet();
+                super.sweep();
+            }
+        };
+        bayeux.setOption(BayeuxServerImpl.FULL_SWEEP_PERIODS_OPTION, 3);
+        // Long enough that only the explicit sweeps below run.
+        bayeux.setOption(BayeuxServerImpl.SWEEP_PERIOD_OPTION, 3_600_000);
+        bayeux.start();
+
+        try {
+            //When
+            for (int i = 0; i < 7; ++i) {
+                bayeux.sweepDue();
+            }
+
+            //Then
+            assertThat(fullSweeps.get()).isEqualTo(2);
+        } finally {
+            bayeux.stop();
+        }
+    }
+
+    private ServerSessionImpl session(long interval) {
+        ServerSessionImpl session = new ServerSessionImpl(server);
+        server.addServerSession(session, null);
+        session.setInterval(interval);
+        session.startIntervalTimeout(0);
+        return session;
+    }
+
+    private boolean sweep(ServerSessionImpl session, long now) {
+        if (server.getSession(session.getId()) != session) {
+            return false;
+        }
+        session.sweep(now);
+        return server.getSession(session.getId()) == session;
+    }
+}
@@ -0,0 +1,79 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerSession;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedSubscriberSetTest {
+
+    BayeuxServerImpl server = new BayeuxServerImpl();
+
+    @Test
+    public void shouldAddAndRemoveSessionsAcrossShards() {
+        //Given
+        ShardedSubscriberSet subscribers = new ShardedSubscriberSet(4);
+        List<ServerSession> sessions = sessions(100);
+
+        //When
+        for (ServerSession session : sessions) {
+            assertThat(subscribers.add(session)).isTrue();
+            assertThat(subscribers.add(session)).isFalse();
+        }
+
+        //Then
+        assertThat(subscribers).hasSize(100).containsExactlyInAnyOrderElementsOf(sessions);
+        assertThat(subscribers.remove(sessions.get(0))).isTrue();
+        assertThat(subscribers.remove(sessions.get(0))).isFalse();
+        assertThat(subscribers).hasSize(99).doesNotContain(sessions.get(0));
+    }
+
+    @Test
+    public void shouldExposeAllSessionsThroughShards() {
+        //Given
+        ShardedSubscriberSet subscribers = new ShardedSubscriberSet(3);
+        subscribers.addAll(sessions(50));
+
+        //When
+        Set<ServerSession> fromShards = new HashSet<>();
+        for (Set<ServerSession> shard : subscribers.getShards()) {
+            fromShards.addAll(shard);
+        }
+
+        //Then
+        assertThat(subscribers.getShards()).hasSize(4);
+        assertThat(fromShards).isEqualTo(subscribers);
+    }
+
+    @Test
+    public void shouldRemoveThroughIteratorAndClear() {
+        //Given
+        ShardedSubscriberSet subscribers = new ShardedSubscriberSet(8);
+        subscribers.addAll(sessions(20));
+
+        //When
+        Iterator<ServerSession> iterator = subscribers.iterator();
+        iterator.next();
+        iterator.remove();
+
+        //Then
+        assertThat(subscribers).hasSize(19);
+        subscribers.clear();
+        assertThat(subscribers).isEmpty();
+        assertThat(subscribers.iterator().hasNext()).isFalse();
+    }
+
+    private List<ServerSession> sessions(int count) {
+        List<ServerSession> sessions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            sessions.add(new ServerSessionImpl(server));
+        }
+        return sessions;
+    }
+}
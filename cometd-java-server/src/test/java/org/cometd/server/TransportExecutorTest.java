@@ -0,0 +1,178 @@
+package org.cometd.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+public class TransportExecutorTest {
+
+    private final TransportExecutor executor = new TransportExecutor("test-executor", 2);
+
+    @BeforeEach
+    public void start() throws Exception {
+        executor.start();
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        executor.stop();
+    }
+
+    @Test
+    public void shouldCapConcurrentTasks() throws InterruptedException {
+        //Given
+        int tasks = 20;
+        CountDownLatch done = new CountDownLatch(tasks);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        //When
+        for (int i = 0; i < tasks; ++i) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(5);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        //Then
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+        assertThat(executor.getQueuedTasks()).isZero();
+    }
+
+    @Test
+    public void shouldRunTasksOfSameKeyInOrder() throws InterruptedException {
+        //Given
+        int tasks = 100;
+        CountDownLatch done = new CountDownLatch(2 * tasks);
+        List<Integer> first = new CopyOnWriteArrayList<>();
+        List<Integer> second = new CopyOnWriteArrayList<>();
+
+        //When
+        for (int i = 0; i < tasks; ++i) {
+            int value = i;
+            executor.execute("first", () -> {
+                first.add(value);
+                done.countDown();
+            });
+            executor.execute("second", () -> {
+                second.add(value);
+                done.countDown();
+            });
+        }
+
+        //Then
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(first).isSorted().hasSize(tasks);
+        assertThat(second).isSorted().hasSize(tasks);
+    }
+
+    @Test
+    public void shouldNotCountTasksRejectedBeforeStart() throws Exception {
+        //Given
+        TransportExecutor uncapped = new TransportExecutor("uncapped", 0);
+        TransportExecutor capped = new TransportExecutor("capped", 2);
+        AtomicInteger ran = new AtomicInteger();
+
+        //When
+        for (int i = 0; i < 5; ++i) {
+            uncapped.execute(ran::incrementAndGet);
+            capped.execute(ran::incrementAndGet);
+            capped.execute("key", ran::incrementAndGet);
+        }
+
+        //Then
+        assertThat(ran.get()).isZero();
+        assertThat(uncapped.getActiveTasks()).isZero();
+        assertThat(capped.getActiveTasks()).isZero();
+        assertThat(capped.getQueuedTasks()).isZero();
+
+        //When
+        capped.start();
+        try {
+            int tasks = 10;
+            CountDownLatch done = new CountDownLatch(tasks);
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            for (int i = 0; i < tasks; ++i) {
+                capped.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    sleep(5);
+                    running.decrementAndGet();
+                    done.countDown();
+                });
+            }
+
+            //Then
+            // The permits of the rejected tasks were given back.
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(maxRunning.get()).isLessThanOrEqualTo(2);
+        } finally {
+            capped.stop();
+        }
+    }
+
+    @Test
+    public void shouldBoundPlatformThreadsWithoutCap() throws Exception {
+        //Given
+        TransportExecutor uncapped = new TransportExecutor("uncapped", 0);
+        uncapped.start();
+        try {
+            assumeFalse(uncapped.isVirtual());
+            int tasks = ExecutionMode.DEFAULT_MAX_CONCURRENCY + 50;
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(tasks);
+            AtomicInteger running = new AtomicInteger();
+
+            //When
+            for (int i = 0; i < tasks; ++i) {
+                uncapped.execute(() -> {
+                    running.incrementAndGet();
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException x) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+
+            //Then
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (running.get() < ExecutionMode.DEFAULT_MAX_CONCURRENCY && System.nanoTime() < deadline) {
+                sleep(10);
+            }
+            sleep(50);
+            assertThat(running.get()).isEqualTo(ExecutionMode.DEFAULT_MAX_CONCURRENCY);
+            release.countDown();
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            uncapped.stop();
+        }
+    }
+
+    @Test
+    public void shouldParseExecutionMode() {
+        assertThat(ExecutionMode.from(null)).isEqualTo(ExecutionMode.PLATFORM);
+        assertThat(ExecutionMode.from(" virtual ")).isEqualTo(ExecutionMode.VIRTUAL);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.cometd.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TransportMetricsTest {
+
+    @Test
+    public void shouldCreateMetricsFromOption() {
+        //Given
+        TransportMetrics custom = new JMXTransportMetrics("custom");
+
+        //When
+        TransportMetrics none = TransportMetrics.from(null, "long-polling");
+        TransportMetrics jmx = TransportMetrics.from("jmx", "long-polling");
+
+        //Then
+        try {
+            assertThat(none).isSameAs(TransportMetrics.NONE);
+            assertThat(none.isEnabled()).isFalse();
+            assertThat(jmx).isInstanceOf(JMXTransportMetrics.class);
+            assertThat(TransportMetrics.from(custom, "long-polling")).isSameAs(custom);
+            assertThatThrownBy(() -> TransportMetrics.from("unknown", "long-polling")).isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            jmx.close();
+        }
+    }
+
+    @Test
+    public void shouldGroupChannels() {
+        assertThat(TransportMetrics.channelGroup("/meta/connect")).isEqualTo("/meta/connect");
+        assertThat(TransportMetrics.channelGroup("/devices/12345/measurements")).isEqualTo("/devices/**");
+        assertThat(TransportMetrics.channelGroup("/devices")).isEqualTo("/devices");
+        assertThat(TransportMetrics.channelGroup(null)).isEqualTo("unknown");
+    }
+
+    @Test
+    public void shouldRecordMeasuresInJMXMetrics() {
+        //Given
+        JMXTransportMetrics metrics = new JMXTransportMetrics("long-polling");
+
+        //When
+        metrics.parsed(3, TimeUnit.MICROSECONDS.toNanos(100));
+        metrics.processed("/devices/1", TimeUnit.MICROSECONDS.toNanos(50));
+        metrics.processed("/devices/2", TimeUnit.MICROSECONDS.toNanos(150));
+        metrics.suspended(TimeUnit.SECONDS.toNanos(10));
+        metrics.written(1000);
+        metrics.written(3000);
+        metrics.writeFailed(5);
+
+        //Then
+        assertThat(metrics.getParses()).isEqualTo(1);
+        assertThat(metrics.getParsedMessages()).isEqualTo(3);
+        assertThat(metrics.getParseTimeMean()).isEqualTo(100.0);
+        assertThat(metrics.getProcessingTimes()).hasSize(1);
+        assertThat(metrics.getProcessingTimes()[0]).startsWith("/devices/**: count=2");
+        assertThat(metrics.getResumedConnects()).isEqualTo(1);
+        assertThat(metrics.getSuspendedTimeMean()).isEqualTo(10_000.0);
+        assertThat(metrics.getWrites()).isEqualTo(2);
+        assertThat(metrics.getWrittenBytes()).isEqualTo(4000);
+        assertThat(metrics.getWrittenBytesP99()).isBetween(3000L, 4095L);
+        assertThat(metrics.getWriteFailures()).isEqualTo(1);
+        assertThat(metrics.getRolledBackMessages()).isEqualTo(5);
+
+        //When
+        metrics.reset();
+
+        //Then
+        assertThat(metrics.getWrites()).isZero();
+        assertThat(metrics.getProcessingTimes()).isEmpty();
+    }
+
+    @Test
+    public void shouldApproximatePercentilesWithinBucket() {
+        //Given
+        Histogram histogram = new Histogram();
+
+        //When
+        for (int i = 1; i <= 100; ++i) {
+            histogram.record(i);
+        }
+
+        //Then
+        assertThat(histogram.getCount()).isEqualTo(100);
+        assertThat(histogram.getMean()).isEqualTo(50.5);
+        assertThat(histogram.getMax()).isEqualTo(100);
+        assertThat(histogram.getPercentile(0.5)).isBetween(50L, 63L);
+        assertThat(histogram.getPercentile(0.99)).isEqualTo(100);
+        assertThat(new Histogram().getPercentile(0.99)).isZero();
+    }
+}
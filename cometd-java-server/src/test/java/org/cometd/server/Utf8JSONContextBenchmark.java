@@ -0,0 +1,70 @@
+package org.cometd.server;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * Parsing of a UTF-8 request body of publish messages: decoded to a String and parsed by
+ * {@link JettyJSONContextServer}, as the transports do by default, compared with parsed from its bytes by
+ * {@link Utf8JSONContextServer}.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class Utf8JSONContextBenchmark {
+
+    @Test
+    public void jsonContextBenchmark() throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .result("target/" + Utf8JSONContextBenchmark.class.getSimpleName() + "-jmh.json")
+                .resultFormat(ResultFormatType.JSON)
+                .include(Utf8JSONContextBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public void jettyJSONContext(ExecutionPlan plan, Blackhole blackhole) throws ParseException {
+        String json = new String(plan.body, StandardCharsets.UTF_8);
+        blackhole.consume(plan.jettyJSONContext.parse(json));
+    }
+
+    @Benchmark
+    public void utf8JSONContext(ExecutionPlan plan, Blackhole blackhole) throws ParseException {
+        blackhole.consume(plan.utf8JSONContext.parse(plan.body, 0, plan.body.length));
+    }
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+        @Param({"1", "20", "200"})
+        int messageCount;
+
+        private final JettyJSONContextServer jettyJSONContext = new JettyJSONContextServer();
+        private final Utf8JSONContextServer utf8JSONContext = new Utf8JSONContextServer();
+        private byte[] body;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            StringBuilder json = new StringBuilder("[");
+            for (int i = 0; i < messageCount; i++) {
+                json.append(i == 0 ? "" : ",")
+                        .append("{\"channel\":\"/measurements/").append(i).append("\",\"clientId\":\"1y5ohb4bgnhyx6bkfjq2wcsgh\",\"id\":\"").append(i)
+                        .append("\",\"data\":{\"type\":\"c8y_Temperature\",\"time\":\"2020-08-28T09:20:30.186Z\",\"source\":{\"id\":\"3201\"},")
+                        .append("\"c8y_Temperature\":{\"T\":{\"unit\":\"°C\",\"value\":").append(20 + i % 10).append(".5}}},\"ext\":{\"ack\":").append(i).append("}}");
+            }
+            body = json.append("]").toString().getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.cometd.server;
+
+import org.cometd.bayeux.server.ServerMessage;
+import org.json.JSONException;
+import org.junit.jupiter.api.Test;
+import org.skyscreamer.jsonassert.JSONAssert;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class Utf8JSONContextServerTest {
+
+    private final Utf8JSONContextServer jsonContext = new Utf8JSONContextServer();
+    private final JettyJSONContextServer jettyJSONContext = new JettyJSONContextServer();
+
+    @Test
+    public void shouldParseSameMessagesAsJettyJSONContext() throws ParseException, JSONException {
+        // given
+        String json = "[{\"channel\":\"/meta/handshake\",\"version\":\"1.0\",\"supportedConnectionTypes\":[\"websocket\",\"long-polling\"],\"advice\":{\"timeout\":60000,\"interval\":0},\"id\":\"1\"}," +
+                " {\"channel\":\"/service/x\",\"clientId\":\"abc\",\"data\":{\"text\":\"café \\\"quoted\\\" \\u00e9\\n\",\"values\":[1,-2,3.5,1e3,true,false,null],\"nested\":{}},\"ext\":{\"ack\":12}}]";
+
+        // when
+        ServerMessage.Mutable[] messages = jsonContext.parse(json.getBytes(StandardCharsets.UTF_8), 0, json.getBytes(StandardCharsets.UTF_8).length);
+        ServerMessage.Mutable[] expected = jettyJSONContext.parse(json);
+
+        // then
+        assertThat(messages).hasSize(expected.length);
+        for (int i = 0; i < messages.length; i++) {
+            assertThat(messages[i]).isInstanceOf(ServerMessageImpl.class);
+            JSONAssert.assertEquals(jettyJSONContext.generate(expected[i]), jettyJSONContext.generate(messages[i]), true);
+        }
+    }
+
+    @Test
+    public void shouldParseValueTypesAsJettyJSONContext() throws ParseException {
+        // given
+        byte[] json = "{\"channel\":\"/a\",\"data\":{\"long\":42,\"double\":0.5,\"array\":[1],\"map\":{\"k\":\"v\"}}}".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        ServerMessage.Mutable[] messages = jsonContext.parse(ByteBuffer.wrap(json));
+
+        // then
+        assertThat(messages).hasSize(1);
+        Map<String, Object> data = messages[0].getDataAsMap();
+        assertThat(data.get("long")).isEqualTo(42L);
+        assertThat(data.get("double")).isEqualTo(0.5D);
+        assertThat(data.get("array")).isEqualTo(new Object[]{1L});
+        assertThat(data.get("map")).isInstanceOf(Map.class);
+        assertThat(messages[0].getChannel()).isEqualTo("/a");
+    }
+
+    @Test
+    public void shouldParseSliceOfBuffer() throws ParseException {
+        // given
+        byte[] json = "xx[{\"channel\":\"/a\"}]yy".getBytes(StandardCharsets.UTF_8);
+
+        // when
+        ServerMessage.Mutable[] messages = jsonContext.parse(json, 2, json.length - 4);
+
+        // then
+        assertThat(messages).hasSize(1);
+        assertThat(messages[0].getChannel()).isEqualTo("/a");
+    }
+
+    @Test
+    public void shouldRejectInvalidJSON() {
+        // given
+        byte[] json = "[{\"channel\":\"/a\"".getBytes(StandardCharsets.UTF_8);
+
+        // when, then
+        assertThatThrownBy(() -> jsonContext.parse(json, 0, json.length)).isInstanceOf(ParseException.class);
+    }
+}
@@ -42,11 +42,24 @@ public class WeakMessageBenchmark {
         }
     }
 
+    @Benchmark
+    public void compressionCycleBenchmark(ExecutionPlan plan, Blackhole blackhole) {
+        for(int i=0; i<plan.getOldQueue().size(); i++) {
+            WeakMessage weakMessage = new WeakMessage(plan.getOldQueue().get(i), 0, plan.getCompression(), plan.getJsonContext(), true);
+            weakMessage.freeze();
+            blackhole.consume(weakMessage.getRawData().length);
+            blackhole.consume(weakMessage.getJSONBytes());
+        }
+    }
+
     @State(Scope.Benchmark)
     public static class ExecutionPlan {
         @Param({"200", "500", "1500"})
         int generatedDataCount;
 
+        @Param({"GZIP", "LZ4", "ZSTD"})
+        MessageCompression compression;
+
         private JSONContext.Server jsonContext = null;
 
         private List<ServerMessage.Mutable> oldQueue;
@@ -66,6 +79,10 @@ public class WeakMessageBenchmark {
             }
         }
 
+        public MessageCompression getCompression() {
+            return compression;
+        }
+
         public JSONContext.Server getJsonContext() {
             return jsonContext;
         }
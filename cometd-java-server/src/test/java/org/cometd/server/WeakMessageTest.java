@@ -11,6 +11,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
@@ -179,6 +180,31 @@ public class WeakMessageTest {
         assertThat(unzipData).contains("\"data\":\"JsonData\"");
     }
 
+    @Test
+    public void shouldCompressJsonDataWithLz4_WhenZipMessageThresholdReached() throws JSONException {
+        shouldCompressJsonData(MessageCompression.LZ4);
+    }
+
+    @Test
+    public void shouldCompressJsonDataWithZstd_WhenZipMessageThresholdReached() throws JSONException {
+        shouldCompressJsonData(MessageCompression.ZSTD);
+    }
+
+    private void shouldCompressJsonData(MessageCompression compression) throws JSONException {
+        // given
+        WeakMessage weakMessage = new WeakMessage(givenMessage(), 0, compression, jsonContext, true);
+
+        // when
+        weakMessage.freeze();
+
+        // then
+        byte[] rawData = weakMessage.getRawData();
+        assertThat(new String(compression.decompress(rawData))).contains("\"data\":\"JsonData\"");
+        JSONAssert.assertEquals("{\"clientId\":\"clientId123\",\"data\":\"JsonData\",\"channel\":\"channel123\",\"id\":\"id123\"}",
+                weakMessage.getJSON(), false);
+        assertThat(weakMessage.copy().getJSON()).isEqualTo(weakMessage.getJSON());
+    }
+
     @Test
     public void shouldNotZipJsonData_WhenZipMessageNotReachedThreshold() throws JSONException {
         // given
@@ -212,6 +238,156 @@ public class WeakMessageTest {
         assertThat(copyOfWeakMessage.get("id")).isEqualTo(weakMessage.get("id"));
     }
 
+    @Test
+    public void shouldGetDataFieldFromJsonWhenGCWeakReference() {
+        shouldGetDataField(50000, MessageCompression.GZIP);
+    }
+
+    @Test
+    public void shouldGetDataFieldFromCompressedJsonWhenGCWeakReference() {
+        shouldGetDataField(0, MessageCompression.LZ4);
+    }
+
+    private void shouldGetDataField(long zipMessageSizeThreshold, MessageCompression compression) {
+        // given
+        WeakMessage weakMessage = new WeakMessage(zipMessageSizeThreshold, compression, jsonContext, true);
+        weakMessage.setData(generator.fromJSON("{\"id\":\"3201\",\"source\":{\"id\":\"12\",\"name\":\"device\"},\"count\":3}"));
+        weakMessage.freeze();
+        weakMessage.getJSON(); //lazily generate json, index the data fields
+
+        // when
+        System.gc(); // clear data in WeakReference
+
+        // then
+        assertThat(weakMessage.getDataField("id")).isEqualTo("3201");
+        assertThat(weakMessage.getDataField("source.id")).isEqualTo("12");
+        assertThat(weakMessage.getDataField("count")).isEqualTo(3L);
+        assertThat(weakMessage.getDataField("source")).isInstanceOf(Map.class);
+        assertThat(weakMessage.getDataField("missing")).isNull();
+        assertThat(weakMessage.getDataField("id.missing")).isNull();
+    }
+
+    @Test
+    public void shouldIndexDataFieldsOnFirstUseOnly() {
+        // given
+        WeakMessage weakMessage = new WeakMessage(50000, jsonContext, true);
+        weakMessage.setData(generator.fromJSON("{\"id\":\"3201\",\"source\":{\"id\":\"12\"}}"));
+        weakMessage.freeze();
+        weakMessage.getJSON();
+
+        // when
+        System.gc(); // clear data in WeakReference
+
+        // then
+        assertThat(weakMessage.getDataIndex()).isNull();
+        assertThat(weakMessage.getDataField("source.id")).isEqualTo("12");
+        JSONFieldIndex index = weakMessage.getDataIndex();
+        assertThat(index).isNotNull();
+        assertThat(weakMessage.getDataField("id")).isEqualTo("3201");
+        assertThat(weakMessage.getDataIndex()).isSameAs(index);
+    }
+
+    @Test
+    public void shouldCacheDataParsedFromJson() {
+        // given
+        WeakMessage weakMessage = new WeakMessage(50000, jsonContext, true);
+        weakMessage.setDataCachePolicy(DataCachePolicy.SOFT);
+        weakMessage.setData(new String("WeakReferenceData"));
+        weakMessage.freeze();
+        weakMessage.getJSON(); //lazily generate json, set WeakReference on frozen
+        replaceJson(weakMessage, "{\"data\":{\"id\":\"1\"}}");
+        System.gc(); // clear data in WeakReference
+
+        // when
+        Object data = weakMessage.get("data");
+
+        // then
+        assertThat(weakMessage.get("data")).isSameAs(data);
+    }
+
+    @Test
+    public void shouldNotCacheDataParsedFromJson_WhenCachePolicyNone() {
+        // given
+        WeakMessage weakMessage = new WeakMessage(50000, jsonContext, true);
+        weakMessage.setDataCachePolicy(DataCachePolicy.NONE);
+        weakMessage.setData(new String("WeakReferenceData"));
+        weakMessage.freeze();
+        weakMessage.getJSON(); //lazily generate json, set WeakReference on frozen
+        replaceJson(weakMessage, "{\"data\":{\"id\":\"1\"}}");
+        System.gc(); // clear data in WeakReference
+
+        // when
+        Object data = weakMessage.get("data");
+
+        // then
+        assertThat(weakMessage.get("data")).isEqualTo(data).isNotSameAs(data);
+    }
+
+    @Test
+    public void shouldRetainDataStrongly_WhenJsonBelowRetentionSize() {
+        // given
+        DataRetention dataRetention = new DataRetention(DataRetention.Policy.SIZE, 0, 4096);
+        WeakMessage weakMessage = new WeakMessage(50000, jsonContext, true);
+        weakMessage.setDataRetention(dataRetention);
+        weakMessage.setData(new String("RetainedData"));
+        weakMessage.freeze();
+        weakMessage.getJSON(); //lazily generate json, retain data on frozen
+        replaceJson(weakMessage, "{\"data\":\"JsonData\"}");
+
+        // when
+        System.gc();
+
+        // then
+        assertThat(weakMessage.get("data")).isEqualTo("RetainedData");
+        assertThat(dataRetention.getRetainedCount()).isEqualTo(1);
+        assertThat(dataRetention.getRegeneratedCount()).isZero();
+    }
+
+    @Test
+    public void shouldReleaseTimedRetainedData_WhenSwept() {
+        // given
+        DataRetention dataRetention = new DataRetention(DataRetention.Policy.TIMED, 0, 0);
+        WeakMessage weakMessage = new WeakMessage(50000, jsonContext, true);
+        weakMessage.setDataRetention(dataRetention);
+        weakMessage.setDataCachePolicy(DataCachePolicy.NONE);
+        weakMessage.setData(new String("RetainedData"));
+        weakMessage.freeze();
+        weakMessage.getJSON(); //lazily generate json, retain data on frozen
+        replaceJson(weakMessage, "{\"data\":\"JsonData\"}");
+        assertThat(dataRetention.getTimedReferenceCount()).isEqualTo(1);
+
+        // when
+        dataRetention.sweep();
+        System.gc(); // clear data in WeakReference
+
+        // then
+        assertThat(dataRetention.getTimedReferenceCount()).isZero();
+        assertThat(weakMessage.get("data")).isEqualTo("JsonData");
+        assertThat(dataRetention.getRegeneratedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCacheTextFrameLength() {
+        for (long threshold : new long[]{50000, 0}) {
+            //Given
+            WeakMessage weakMessage = new WeakMessage(threshold, jsonContext, true);
+            weakMessage.setChannel("/some/channel");
+            weakMessage.setData("z\u00fcrich \u20ac \ud83d\ude00");
+            weakMessage.freeze();
+            EncodedFrame frame = weakMessage.getEncodedFrame();
+            frame.retain();
+
+            //When
+            int length = frame.getTextFrameLength();
+
+            //Then
+            assertThat(frame.isCompressed()).isEqualTo(threshold == 0);
+            assertThat(length).isEqualTo(frame.getTextFrame().getBytes(StandardCharsets.UTF_8).length);
+            frame.release();
+            assertThat(frame.getTextFrameLength()).isEqualTo(length);
+        }
+    }
+
     private Message givenMessage() {
         ServerMessageImpl serverMessage = new ServerMessageImpl();
         serverMessage.setClientId("clientId123");
@@ -0,0 +1,122 @@
+package org.cometd.server.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ByteArrayPoolTest {
+
+    @Test
+    public void shouldRoundCapacitiesUpToPowerOfTwoSizeClasses() {
+        //Given
+        // Rounded up to 1024 and 8192.
+        ByteArrayPool pool = new ByteArrayPool(1000, 5000, 4);
+
+        //Then
+        assertThat(pool.getMaxCapacity()).isEqualTo(8192);
+        assertThat(pool.acquire(0)).hasSize(1024);
+        assertThat(pool.acquire(1024)).hasSize(1024);
+        assertThat(pool.acquire(1025)).hasSize(2048);
+        assertThat(pool.acquire(5000)).hasSize(8192);
+        assertThat(pool.acquire(8193)).hasSize(8193);
+    }
+
+    @Test
+    public void shouldReuseReleasedArrayOfSameSizeClass() {
+        //Given
+        ByteArrayPool pool = new ByteArrayPool(1024, 65536, 4);
+        byte[] buffer = pool.acquire(3000);
+
+        //When
+        pool.release(buffer);
+
+        //Then
+        assertThat(pool.getSize()).isEqualTo(1);
+        assertThat(pool.acquire(1024)).isNotSameAs(buffer);
+        assertThat(pool.acquire(2049)).isSameAs(buffer);
+        assertThat(pool.getSize()).isZero();
+    }
+
+    @Test
+    public void shouldBoundArraysKeptPerSizeClass() {
+        //Given
+        ByteArrayPool pool = new ByteArrayPool(1024, 65536, 2);
+        byte[] first = pool.acquire(1024);
+        byte[] second = pool.acquire(1024);
+        byte[] third = pool.acquire(1024);
+        byte[] other = pool.acquire(4096);
+
+        //When
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        pool.release(other);
+
+        //Then
+        assertThat(pool.getSize()).isEqualTo(3);
+        assertThat(pool.acquire(1024)).isSameAs(first);
+        assertThat(pool.acquire(1024)).isSameAs(second);
+        assertThat(pool.acquire(1024)).isNotSameAs(third);
+        assertThat(pool.acquire(4096)).isSameAs(other);
+    }
+
+    @Test
+    public void shouldIgnoreArraysNotOfPooledSize() {
+        //Given
+        ByteArrayPool pool = new ByteArrayPool(1024, 8192, 4);
+
+        //When
+        pool.release(null);
+        pool.release(new byte[512]);
+        pool.release(new byte[3000]);
+        pool.release(new byte[16384]);
+        pool.release(pool.acquire(10000));
+
+        //Then
+        assertThat(pool.getSize()).isZero();
+    }
+
+    @Test
+    public void shouldNotExceedBoundWhenReleasedConcurrently() throws InterruptedException {
+        //Given
+        ByteArrayPool pool = new ByteArrayPool(1024, 1024, 8);
+        int threads = 4;
+        int iterations = 10000;
+        CountDownLatch done = new CountDownLatch(threads);
+
+        //When
+        for (int t = 0; t < threads; ++t) {
+            new Thread(() -> {
+                List<byte[]> buffers = new ArrayList<>();
+                for (int i = 0; i < iterations; ++i) {
+                    buffers.add(pool.acquire(1024));
+                    if (buffers.size() == 4) {
+                        buffers.forEach(pool::release);
+                        buffers.clear();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+
+        //Then
+        assertThat(done.await(10, TimeUnit.SECONDS)).isTrue();
+        int size = pool.getSize();
+        assertThat(size).isBetween(1, 8);
+        // By identity, the arrays all hold zeros and are equal by content.
+        Set<byte[]> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i < size; ++i) {
+            pooled.add(pool.acquire(1024));
+        }
+        assertThat(pooled).hasSize(size);
+        assertThat(pool.getSize()).isZero();
+    }
+}
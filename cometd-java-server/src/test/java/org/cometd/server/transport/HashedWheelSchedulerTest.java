@@ -0,0 +1,77 @@
+package org.cometd.server.transport;
+
+import org.eclipse.jetty.util.thread.Scheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashedWheelSchedulerTest {
+
+    private final HashedWheelScheduler scheduler = new HashedWheelScheduler("test-timer", 1, 8);
+
+    @BeforeEach
+    public void start() throws Exception {
+        scheduler.start();
+    }
+
+    @AfterEach
+    public void stop() throws Exception {
+        scheduler.stop();
+    }
+
+    @Test
+    public void shouldRunTaskAfterDelay() throws InterruptedException {
+        //Given
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong ranAt = new AtomicLong();
+        long begin = System.nanoTime();
+
+        //When
+        scheduler.schedule(() -> {
+            ranAt.set(System.nanoTime());
+            latch.countDown();
+        }, 50, TimeUnit.MILLISECONDS);
+
+        //Then
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(TimeUnit.NANOSECONDS.toMillis(ranAt.get() - begin)).isGreaterThanOrEqualTo(50);
+        assertThat(scheduler.getPendingTasks()).isZero();
+    }
+
+    @Test
+    public void shouldRunTaskBeyondOneRoundOfTheWheel() throws InterruptedException {
+        //Given
+        CountDownLatch latch = new CountDownLatch(1);
+
+        //When
+        // 8 buckets of 1 ms: 30 ms is several rounds.
+        scheduler.schedule(latch::countDown, 30, TimeUnit.MILLISECONDS);
+
+        //Then
+        assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void shouldNotRunCancelledTask() throws InterruptedException {
+        //Given
+        AtomicBoolean ran = new AtomicBoolean();
+        Scheduler.Task task = scheduler.schedule(() -> ran.set(true), 20, TimeUnit.MILLISECONDS);
+
+        //When
+        boolean cancelled = task.cancel();
+        Thread.sleep(100);
+
+        //Then
+        assertThat(cancelled).isTrue();
+        assertThat(task.cancel()).isFalse();
+        assertThat(ran).isFalse();
+        assertThat(scheduler.getPendingTasks()).isZero();
+    }
+}
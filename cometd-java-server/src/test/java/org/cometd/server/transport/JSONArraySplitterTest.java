@@ -0,0 +1,102 @@
+package org.cometd.server.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class JSONArraySplitterTest {
+
+    @Test
+    public void shouldEmitElementsAsTheyComplete() throws Exception {
+        //Given
+        String json = " [{\"channel\":\"/a\",\"data\":{\"text\":\"}],[{\\\"\"}},\n {\"channel\":\"/b\",\"data\":[1,{\"x\":2}]} ] ";
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        JSONArraySplitter splitter = new JSONArraySplitter(0);
+        List<String> elements = new ArrayList<>();
+
+        //When
+        for (int i = 0; i < bytes.length; i++) {
+            splitter.feed(bytes, i, 1, element -> elements.add(new String(element, StandardCharsets.UTF_8)));
+        }
+
+        //Then
+        assertThat(elements).containsExactly(
+                "{\"channel\":\"/a\",\"data\":{\"text\":\"}],[{\\\"\"}}",
+                "{\"channel\":\"/b\",\"data\":[1,{\"x\":2}]}");
+        assertThat(splitter.isComplete()).isTrue();
+    }
+
+    @Test
+    public void shouldEmitSingleObject() throws Exception {
+        //Given
+        byte[] bytes = "{\"channel\":\"/meta/connect\"}".getBytes(StandardCharsets.UTF_8);
+        JSONArraySplitter splitter = new JSONArraySplitter(0);
+        List<String> elements = new ArrayList<>();
+
+        //When
+        splitter.feed(bytes, 0, bytes.length, element -> elements.add(new String(element, StandardCharsets.UTF_8)));
+
+        //Then
+        assertThat(elements).containsExactly("{\"channel\":\"/meta/connect\"}");
+        assertThat(splitter.isComplete()).isTrue();
+    }
+
+    @Test
+    public void shouldRejectInvalidAndOversizedContent() {
+        //Given
+        byte[] invalid = "[1]".getBytes(StandardCharsets.UTF_8);
+        byte[] oversized = ("[{\"data\":\"" + new String(new char[2048]).replace('\0', 'x') + "\"}]").getBytes(StandardCharsets.UTF_8);
+
+        //Then
+        assertThatThrownBy(() -> new JSONArraySplitter(0).feed(invalid, 0, invalid.length, element -> {
+        })).isInstanceOf(ParseException.class);
+        assertThatThrownBy(() -> new JSONArraySplitter(1024).feed(oversized, 0, oversized.length, element -> {
+        })).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void shouldRejectStrayOrMissingCommas() {
+        for (String json : new String[]{"[,{}]", "[{},]", "[{},,{}]", "[{} {}]", "[{}{}]", "{},{}", "[{}] {}", "[{}"}) {
+            //Given
+            byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+            JSONArraySplitter splitter = new JSONArraySplitter(0);
+
+            //Then
+            assertThatThrownBy(() -> {
+                for (int i = 0; i < bytes.length; i++) {
+                    splitter.feed(bytes, i, 1, element -> {
+                    });
+                }
+                if (!splitter.isComplete()) {
+                    throw new ParseException("Incomplete", bytes.length);
+                }
+            }).as(json).isInstanceOf(ParseException.class);
+        }
+    }
+
+    @Test
+    public void shouldAcceptEmptyArrayAndWhitespaceAroundCommas() throws Exception {
+        //Given
+        byte[] empty = " [ ] ".getBytes(StandardCharsets.UTF_8);
+        byte[] spaced = "[ {} ,\n{}\t, {} ]".getBytes(StandardCharsets.UTF_8);
+        JSONArraySplitter emptySplitter = new JSONArraySplitter(0);
+        JSONArraySplitter spacedSplitter = new JSONArraySplitter(0);
+        List<String> elements = new ArrayList<>();
+
+        //When
+        emptySplitter.feed(empty, 0, empty.length, element -> elements.add(new String(element, StandardCharsets.UTF_8)));
+        spacedSplitter.feed(spaced, 0, spaced.length, element -> elements.add(new String(element, StandardCharsets.UTF_8)));
+
+        //Then
+        assertThat(emptySplitter.isComplete()).isTrue();
+        assertThat(spacedSplitter.isComplete()).isTrue();
+        assertThat(elements).containsExactly("{}", "{}", "{}");
+    }
+}
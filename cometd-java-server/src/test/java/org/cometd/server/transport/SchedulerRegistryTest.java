@@ -0,0 +1,103 @@
+package org.cometd.server.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SchedulerRegistryTest {
+
+    private final SchedulerRegistry<String> registry = new SchedulerRegistry<>();
+
+    @Test
+    public void shouldVisitOnlyExpiredSchedulersInExpiryOrder() {
+        //Given
+        registry.register("s1", "late", 300);
+        registry.register("s2", "early", 100);
+        registry.register("s3", "middle", 200);
+        List<String> visited = new ArrayList<>();
+
+        //When
+        int count = registry.sweep(250, scheduler -> {
+            visited.add(scheduler);
+            return 1000;
+        });
+
+        //Then
+        assertThat(count).isEqualTo(2);
+        assertThat(visited).containsExactly("early", "middle");
+        assertThat(registry.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldRescheduleVisitedSchedulers() {
+        //Given
+        registry.register("s1", "scheduler", 100);
+        registry.sweep(100, scheduler -> 500);
+        List<String> visited = new ArrayList<>();
+
+        //When
+        registry.sweep(400, scheduler -> {
+            visited.add(scheduler);
+            return 1000;
+        });
+
+        //Then
+        assertThat(visited).isEmpty();
+        assertThat(registry.sweep(500, scheduler -> -1)).isEqualTo(1);
+        assertThat(registry.sweep(10_000, scheduler -> -1)).isZero();
+    }
+
+    @Test
+    public void shouldReplaceSchedulerOfSameSession() {
+        //Given
+        registry.register("s1", "old", 100);
+
+        //When
+        registry.register("s1", "new", 200);
+
+        //Then
+        assertThat(registry.size()).isEqualTo(1);
+        assertThat(registry.get("s1")).isEqualTo("new");
+        assertThat(registry.remove("s1", "old")).isFalse();
+        assertThat(registry.getSchedulers()).containsExactly("new");
+    }
+
+    @Test
+    public void shouldNotVisitRemovedSchedulers() {
+        //Given
+        registry.register("s1", "removed", 100);
+        registry.register("s2", "kept", 100);
+
+        //When
+        boolean removed = registry.remove("s1", "removed");
+        List<String> visited = new ArrayList<>();
+        registry.sweep(100, scheduler -> {
+            visited.add(scheduler);
+            return -1;
+        });
+
+        //Then
+        assertThat(removed).isTrue();
+        assertThat(visited).containsExactly("kept");
+        assertThat(registry.get("s1")).isNull();
+    }
+
+    @Test
+    public void shouldNotRescheduleSchedulerRemovedWhileVisited() {
+        //Given
+        registry.register("s1", "scheduler", 100);
+
+        //When
+        registry.sweep(100, scheduler -> {
+            registry.remove("s1", scheduler);
+            return 200;
+        });
+
+        //Then
+        assertThat(registry.size()).isZero();
+        assertThat(registry.sweep(10_000, scheduler -> 0)).isZero();
+    }
+}
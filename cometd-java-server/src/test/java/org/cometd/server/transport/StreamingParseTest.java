@@ -0,0 +1,206 @@
+package org.cometd.server.transport;
+
+import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ExecutionMode;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StreamingParseTest {
+
+    private static final String HANDSHAKE = "{\"channel\":\"/meta/handshake\",\"version\":\"1.0\",\"supportedConnectionTypes\":[\"long-polling\"],\"id\":\"1\"}";
+    private static final String PUBLISH = "{\"channel\":\"/some/channel\",\"data\":{\"text\":\"],[{\\\"\"},\"id\":\"2\"}";
+    private static final String CONNECT = "{\"channel\":\"/meta/connect\",\"connectionType\":\"long-polling\",\"id\":\"3\"}";
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "",
+            " ",
+            "[]",
+            " [ ] ",
+            "[" + HANDSHAKE + "]",
+            HANDSHAKE,
+            "[" + HANDSHAKE + "," + PUBLISH + "]",
+            "[" + PUBLISH + "," + HANDSHAKE + "]",
+            "[" + PUBLISH + "," + CONNECT + "," + PUBLISH + "]",
+            "[" + CONNECT + "]",
+            "[{\"data\":{}}," + PUBLISH + "]",
+            "[" + PUBLISH + ",{\"channel\":}]",
+            "null",
+            "\"text\"",
+            "{]"
+    })
+    public void shouldAnswerStreamedBodyAsBufferedBody(String body) throws Exception {
+        for (ExecutionMode mode : ExecutionMode.values()) {
+            //When
+            MockHttpServletResponse buffered = handle(false, mode, body);
+            MockHttpServletResponse streamed = handle(true, mode, body);
+
+            //Then
+            assertThat(streamed.getStatus()).as(mode + " " + body).isEqualTo(buffered.getStatus());
+            assertThat(content(streamed)).as(mode + " " + body).isEqualTo(content(buffered));
+        }
+    }
+
+    private MockHttpServletResponse handle(boolean streaming, ExecutionMode mode, String body) throws Exception {
+        BayeuxServerImpl server = new BayeuxServerImpl();
+        server.setOption("long-polling.json." + AsyncJSONTransport.STREAMING_PARSE_OPTION, streaming);
+        server.setOption("long-polling." + ExecutionMode.OPTION, mode.name());
+        server.start();
+        try {
+            AbstractHttpTransport transport = (AbstractHttpTransport)server.getTransport("long-polling");
+            assertThat(transport).isInstanceOf(AsyncJSONTransport.class);
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/cometd");
+            request.setAsyncSupported(true);
+            request.setContentType("application/json");
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            transport.handle(new Request(request, body.getBytes(StandardCharsets.UTF_8)), new Response(response));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (request.isAsyncStarted() && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(request.isAsyncStarted()).as("completed").isFalse();
+            return response;
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String content(MockHttpServletResponse response) throws IOException {
+        return response.getContentAsString().replaceAll("\"clientId\":\"[^\"]*\"", "\"clientId\":\"*\"");
+    }
+
+    private static class Request extends HttpServletRequestWrapper {
+        private final ServletInputStream input;
+
+        private Request(MockHttpServletRequest request, byte[] content) {
+            super(request);
+            this.input = new ChunkedInputStream(content);
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return input;
+        }
+    }
+
+    /**
+     * <p>Reads the content a few bytes at a time, so that array elements span several reads.</p>
+     */
+    private static class ChunkedInputStream extends ServletInputStream {
+        private static final int CHUNK = 7;
+
+        private final byte[] content;
+        private int index;
+
+        private ChunkedInputStream(byte[] content) {
+            this.content = content;
+        }
+
+        @Override
+        public boolean isFinished() {
+            return index == content.length;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                readListener.onDataAvailable();
+                readListener.onAllDataRead();
+            } catch (Throwable x) {
+                readListener.onError(x);
+            }
+        }
+
+        @Override
+        public int read() {
+            return isFinished() ? -1 : content[index++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (isFinished()) {
+                return -1;
+            }
+            int read = Math.min(Math.min(length, CHUNK), content.length - index);
+            System.arraycopy(content, index, bytes, offset, read);
+            index += read;
+            return read;
+        }
+    }
+
+    private static class Response extends HttpServletResponseWrapper {
+        private final ServletOutputStream output;
+        private final PrintWriter writer;
+
+        private Response(MockHttpServletResponse response) throws IOException {
+            super(response);
+            this.output = new ImmediateOutputStream(response.getOutputStream());
+            this.writer = new PrintWriter(output);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return output;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            return writer;
+        }
+    }
+
+    private static class ImmediateOutputStream extends ServletOutputStream {
+        private final OutputStream target;
+
+        private ImmediateOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            try {
+                writeListener.onWritePossible();
+            } catch (IOException x) {
+                writeListener.onError(x);
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            target.write(bytes, offset, length);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.cometd.websocket.server;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Pool of direct {@link ByteBuffer}s in power of two size classes, from {@value #MIN_CAPACITY}
+ * bytes up to a maximum capacity; larger requests get a heap buffer that is not pooled.</p>
+ * <p>Each size class holds a bounded number of buffers, the extra released buffers are left to
+ * the garbage collector.</p>
+ */
+class DirectBufferPool {
+    static final int MIN_CAPACITY = 4096;
+
+    private final Bucket[] _buckets;
+    private final int _maxCapacity;
+
+    DirectBufferPool(int maxCapacity, int maxBuffersPerBucket) {
+        _maxCapacity = capacityFor(Math.max(MIN_CAPACITY, maxCapacity));
+        _buckets = new Bucket[indexOf(_maxCapacity) + 1];
+        for (int i = 0; i < _buckets.length; ++i) {
+            _buckets[i] = new Bucket(MIN_CAPACITY << i, maxBuffersPerBucket);
+        }
+    }
+
+    /**
+     * @param capacity the minimum capacity of the buffer
+     * @return a cleared buffer of at least the given capacity
+     */
+    ByteBuffer acquire(int capacity) {
+        if (capacity > _maxCapacity) {
+            return ByteBuffer.allocate(capacity);
+        }
+        Bucket bucket = _buckets[indexOf(capacityFor(capacity))];
+        ByteBuffer buffer = bucket.buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bucket.capacity);
+        }
+        bucket.size.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        if (!buffer.isDirect() || buffer.capacity() > _maxCapacity || Integer.bitCount(buffer.capacity()) != 1) {
+            return;
+        }
+        Bucket bucket = _buckets[indexOf(buffer.capacity())];
+        if (bucket.size.incrementAndGet() > bucket.maxBuffers) {
+            bucket.size.decrementAndGet();
+            return;
+        }
+        bucket.buffers.offer(buffer);
+    }
+
+    private static int capacityFor(int capacity) {
+        if (capacity <= MIN_CAPACITY) {
+            return MIN_CAPACITY;
+        }
+        return Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    private static int indexOf(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity) - Integer.numberOfTrailingZeros(MIN_CAPACITY);
+    }
+
+    private static class Bucket {
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int capacity;
+        private final int maxBuffers;
+
+        private Bucket(int capacity, int maxBuffers) {
+            this.capacity = capacity;
+            this.maxBuffers = maxBuffers;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.cometd.websocket.server;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.Message;
+
+/**
+ * <p>Validating scanner of the JSON text of a frame, that tells whether the frame can be coalesced
+ * with others by {@link MessagePipeline}: it must be a well formed message object, or a non empty
+ * array of message objects, and none of its messages may be a handshake.</p>
+ * <p>The frame is scanned without building the messages; only the top level {@code channel} values
+ * are decoded, so that an escaped channel is recognized and that data merely containing the text of
+ * a meta channel is not.</p>
+ */
+final class FrameScanner {
+    private static final int MAX_DEPTH = 64;
+
+    private final String _json;
+    private int _index;
+    private int _depth;
+
+    private FrameScanner(String json) {
+        _json = json;
+    }
+
+    /**
+     * @param frame the text of a frame
+     * @return whether the frame is well formed and can be coalesced with other frames
+     */
+    static boolean isCoalescible(String frame) {
+        try {
+            return new FrameScanner(frame).frame();
+        } catch (IllegalArgumentException x) {
+            return false;
+        }
+    }
+
+    private boolean frame() {
+        skipWhitespace();
+        boolean coalescible = true;
+        if (peek() == '[') {
+            ++_index;
+            skipWhitespace();
+            if (peek() == ']') {
+                // Nothing to coalesce.
+                return false;
+            }
+            while (true) {
+                coalescible &= message();
+                skipWhitespace();
+                char c = next();
+                if (c == ']') {
+                    break;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException();
+                }
+                skipWhitespace();
+            }
+        } else {
+            coalescible = message();
+        }
+        skipWhitespace();
+        if (_index != _json.length()) {
+            throw new IllegalArgumentException();
+        }
+        return coalescible;
+    }
+
+    /**
+     * @return whether the message is not a handshake
+     */
+    private boolean message() {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            ++_index;
+            return true;
+        }
+        boolean handshake = false;
+        while (true) {
+            skipWhitespace();
+            String name = string();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            if (Message.CHANNEL_FIELD.equals(name) && peek() == '"') {
+                handshake |= Channel.META_HANDSHAKE.equals(string());
+            } else {
+                value();
+            }
+            skipWhitespace();
+            char c = next();
+            if (c == '}') {
+                return !handshake;
+            }
+            if (c != ',') {
+                throw new IllegalArgumentException();
+            }
+        }
+    }
+
+    private void value() {
+        char c = peek();
+        switch (c) {
+            case '{':
+                nested('{', '}', true);
+                break;
+            case '[':
+                nested('[', ']', false);
+                break;
+            case '"':
+                skipString();
+                break;
+            case 't':
+                literal("true");
+                break;
+            case 'f':
+                literal("false");
+                break;
+            case 'n':
+                literal("null");
+                break;
+            default:
+                number();
+                break;
+        }
+    }
+
+    private void nested(char open, char close, boolean object) {
+        if (++_depth > MAX_DEPTH) {
+            throw new IllegalArgumentException();
+        }
+        expect(open);
+        skipWhitespace();
+        if (peek() == close) {
+            ++_index;
+        } else {
+            while (true) {
+                skipWhitespace();
+                if (object) {
+                    skipString();
+                    skipWhitespace();
+                    expect(':');
+                    skipWhitespace();
+                }
+                value();
+                skipWhitespace();
+                char c = next();
+                if (c == close) {
+                    break;
+                }
+                if (c != ',') {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+        --_depth;
+    }
+
+    private String string() {
+        int start = _index + 1;
+        skipString();
+        String raw = _json.substring(start, _index - 1);
+        return raw.indexOf('\\') < 0 ? raw : unescape(raw);
+    }
+
+    private void skipString() {
+        expect('"');
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return;
+            }
+            if (c < 0x20) {
+                throw new IllegalArgumentException();
+            }
+            if (c == '\\') {
+                char e = next();
+                if (e == 'u') {
+                    for (int i = 0; i < 4; ++i) {
+                        if (Character.digit(next(), 16) < 0) {
+                            throw new IllegalArgumentException();
+                        }
+                    }
+                } else if ("\"\\/bfnrt".indexOf(e) < 0) {
+                    throw new IllegalArgumentException();
+                }
+            }
+        }
+    }
+
+    private static String unescape(String raw) {
+        StringBuilder builder = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); ++i) {
+            char c = raw.charAt(i);
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+            char e = raw.charAt(++i);
+            switch (e) {
+                case 'u':
+                    builder.append((char)Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                    i += 4;
+                    break;
+                case 'b':
+                    builder.append('\b');
+                    break;
+                case 'f':
+                    builder.append('\f');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                case 't':
+                    builder.append('\t');
+                    break;
+                default:
+                    builder.append(e);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    private void number() {
+        if (peek() == '-') {
+            ++_index;
+        }
+        if (peek() == '0') {
+            ++_index;
+        } else {
+            digits();
+        }
+        if (peek() == '.') {
+            ++_index;
+            digits();
+        }
+        char c = peek();
+        if (c == 'e' || c == 'E') {
+            ++_index;
+            c = peek();
+            if (c == '+' || c == '-') {
+                ++_index;
+            }
+            digits();
+        }
+    }
+
+    private void digits() {
+        int start = _index;
+        while (_index < _json.length() && _json.charAt(_index) >= '0' && _json.charAt(_index) <= '9') {
+            ++_index;
+        }
+        if (_index == start) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private void literal(String literal) {
+        if (!_json.startsWith(literal, _index)) {
+            throw new IllegalArgumentException();
+        }
+        _index += literal.length();
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    private char next() {
+        if (_index == _json.length()) {
+            throw new IllegalArgumentException();
+        }
+        return _json.charAt(_index++);
+    }
+
+    private char peek() {
+        return _index < _json.length() ? _json.charAt(_index) : 0;
+    }
+
+    private void skipWhitespace() {
+        while (_index < _json.length()) {
+            char c = _json.charAt(_index);
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') {
+                return;
+            }
+            ++_index;
+        }
+    }
+}
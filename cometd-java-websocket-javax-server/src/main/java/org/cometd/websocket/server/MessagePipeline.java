@@ -0,0 +1,243 @@
+package org.cometd.websocket.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * <p>Bounded pipeline of the text frames received by a WebSocket connection.</p>
+ * <p>Frames are queued as they arrive, and processed one batch at a time and in arrival order on an
+ * executor, so that a burst of frames does not hold the container thread behind slow extensions.
+ * Consecutive queued frames are coalesced into a single batch of messages, up to a maximum number of
+ * frames, so that their replies are written together rather than one frame per reply. Handshakes are
+ * never coalesced, since they must be processed before the messages that depend on the session, and
+ * neither are malformed frames, see {@link FrameScanner}.</p>
+ * <p>When the pipeline holds {@code capacity} frames, the reads of the connection are paused, and they
+ * are resumed once half of the frames have been processed.</p>
+ */
+class MessagePipeline implements Runnable {
+    private static final Logger _logger = LoggerFactory.getLogger(MessagePipeline.class);
+
+    private final Queue<String> _frames = new ArrayDeque<>();
+    private final Executor _executor;
+    private final int _capacity;
+    private final int _maxBatch;
+    private final Consumer<String> _processor;
+    private final Reads _reads;
+    private boolean _running;
+    private boolean _paused;
+    private boolean _closed;
+
+    /**
+     * @param executor  the executor processing the frames
+     * @param capacity  the number of queued frames at which the reads are paused
+     * @param maxBatch  the maximum number of frames coalesced into a single batch
+     * @param processor the processor of a batch of messages
+     * @param reads     the control of the reads of the connection
+     */
+    MessagePipeline(Executor executor, int capacity, int maxBatch, Consumer<String> processor, Reads reads) {
+        _executor = executor;
+        _capacity = Math.max(1, capacity);
+        _maxBatch = Math.max(1, maxBatch);
+        _processor = processor;
+        _reads = reads;
+    }
+
+    /**
+     * <p>Queues a frame; must be called by the thread delivering the frames of the connection.</p>
+     *
+     * @param frame the text of the frame
+     */
+    void offer(String frame) {
+        boolean execute;
+        synchronized (this) {
+            if (_closed) {
+                return;
+            }
+            _frames.offer(frame);
+            if (!_paused && _frames.size() >= _capacity) {
+                // Paused under the lock, so that it cannot race with the resume.
+                _paused = _reads.pause();
+            }
+            execute = !_running;
+            _running = true;
+        }
+        if (execute) {
+            _executor.execute(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            String batch;
+            boolean resume = false;
+            synchronized (this) {
+                batch = coalesce();
+                if (batch == null) {
+                    _running = false;
+                }
+                if (_paused && _frames.size() <= _capacity / 2) {
+                    _paused = false;
+                    resume = true;
+                }
+            }
+            if (resume) {
+                _reads.resume();
+            }
+            if (batch == null) {
+                return;
+            }
+            try {
+                _processor.accept(batch);
+            } catch (Throwable x) {
+                _logger.info("Exception while processing " + batch, x);
+            }
+        }
+    }
+
+    /**
+     * <p>Stops the pipeline when the connection is closed: the queued frames are dropped, and the
+     * frames offered afterwards are ignored. A batch being processed completes.</p>
+     *
+     * @return the number of frames dropped
+     */
+    synchronized int close() {
+        _closed = true;
+        _paused = false;
+        int dropped = _frames.size();
+        _frames.clear();
+        return dropped;
+    }
+
+    synchronized int size() {
+        return _frames.size();
+    }
+
+    synchronized boolean isPaused() {
+        return _paused;
+    }
+
+    private String coalesce() {
+        String first = _frames.poll();
+        if (first == null || _maxBatch == 1 || _frames.isEmpty() || !isCoalescible(first)) {
+            return first;
+        }
+        StringBuilder batch = new StringBuilder(first.length() * 2).append('[');
+        appendMessages(batch, first);
+        for (int count = 1; count < _maxBatch; ++count) {
+            String next = _frames.peek();
+            if (next == null || !isCoalescible(next)) {
+                break;
+            }
+            _frames.poll();
+            appendMessages(batch.append(','), next);
+        }
+        return batch.append(']').toString();
+    }
+
+    private static boolean isCoalescible(String frame) {
+        // A malformed frame is processed alone, so that it does not fail the frames coalesced with it.
+        return FrameScanner.isCoalescible(frame);
+    }
+
+    private static void appendMessages(StringBuilder batch, String frame) {
+        String json = frame.trim();
+        if (json.startsWith("[")) {
+            batch.append(json, 1, json.length() - 1);
+        } else {
+            batch.append(json);
+        }
+    }
+
+    /**
+     * <p>Pauses and resumes the reads of a connection.</p>
+     */
+    interface Reads {
+        /**
+         * The reads of a container that cannot pause them.
+         */
+        Reads NONE = new Reads() {
+            @Override
+            public boolean pause() {
+                return false;
+            }
+
+            @Override
+            public void resume() {
+            }
+        };
+
+        /**
+         * @return whether the reads have been paused
+         */
+        boolean pause();
+
+        void resume();
+
+        /**
+         * <p>Returns the reads of the given session, paused with the suspend API of Jetty, looked up by
+         * reflection since JSR 356 has none. With other containers the reads cannot be paused, and the
+         * pipeline grows beyond its capacity.</p>
+         *
+         * @param wsSession the WebSocket session
+         * @return the reads of the session
+         */
+        static Reads of(Object wsSession) {
+            try {
+                ClassLoader loader = wsSession.getClass().getClassLoader();
+                Class<?> sessionClass = Class.forName("org.eclipse.jetty.websocket.api.Session", false, loader);
+                if (sessionClass.isInstance(wsSession)) {
+                    Method suspend = sessionClass.getMethod("suspend");
+                    Method resume = Class.forName("org.eclipse.jetty.websocket.api.SuspendToken", false, loader).getMethod("resume");
+                    return new SuspendingReads(wsSession, suspend, resume);
+                }
+            } catch (Throwable x) {
+                _logger.trace("", x);
+            }
+            return NONE;
+        }
+    }
+
+    private static class SuspendingReads implements Reads {
+        private final Object _wsSession;
+        private final Method _suspend;
+        private final Method _resume;
+        private Object _token;
+
+        private SuspendingReads(Object wsSession, Method suspend, Method resume) {
+            _wsSession = wsSession;
+            _suspend = suspend;
+            _resume = resume;
+        }
+
+        @Override
+        public synchronized boolean pause() {
+            try {
+                _token = _suspend.invoke(_wsSession);
+                return _token != null;
+            } catch (Throwable x) {
+                _logger.debug("Could not suspend reads of " + _wsSession, x);
+                return false;
+            }
+        }
+
+        @Override
+        public synchronized void resume() {
+            Object token = _token;
+            _token = null;
+            if (token != null) {
+                try {
+                    _resume.invoke(token);
+                } catch (Throwable x) {
+                    _logger.debug("Could not resume reads of " + _wsSession, x);
+                }
+            }
+        }
+    }
+}
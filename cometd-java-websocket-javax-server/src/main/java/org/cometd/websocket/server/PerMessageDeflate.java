@@ -0,0 +1,145 @@
+package org.cometd.websocket.server;
+
+import javax.websocket.Extension;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>How {@link WebSocketTransport} negotiates the {@code permessage-deflate} extension (RFC 7692).</p>
+ * <p>The mode is configured with the {@link #OPTION} transport option, using the lower case,
+ * dash separated mode name (e.g. {@code no-context-takeover}).</p>
+ * <p>JSR 356 gives no way to hand a deflated frame to the container, so every session deflates
+ * the shared text frame of a broadcast by itself. For broadcast heavy deployments, disabling the
+ * extension trades bandwidth for that CPU; disabling the context takeover keeps the compression
+ * but frees the deflate window of each session between messages.</p>
+ */
+public enum PerMessageDeflate {
+    /**
+     * The extension is negotiated by the container, as offered by the client.
+     */
+    CONTAINER,
+    /**
+     * The extension is never negotiated, messages are sent uncompressed.
+     */
+    DISABLED,
+    /**
+     * The extension is negotiated with {@code server_no_context_takeover}, so that each message is
+     * deflated independently of the previous ones.
+     */
+    NO_CONTEXT_TAKEOVER;
+
+    public static final String OPTION = "permessageDeflate";
+    public static final String EXTENSION_NAME = "permessage-deflate";
+    static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    /**
+     * @param negotiated the extensions negotiated by the container
+     * @return the extensions to negotiate according to this mode
+     */
+    public List<Extension> negotiate(List<Extension> negotiated) {
+        if (this == CONTAINER || negotiated == null || negotiated.isEmpty()) {
+            return negotiated;
+        }
+        List<Extension> result = new ArrayList<>(negotiated.size());
+        boolean deflate = false;
+        for (Extension extension : negotiated) {
+            if (!EXTENSION_NAME.equalsIgnoreCase(extension.getName())) {
+                result.add(extension);
+            } else if (this == NO_CONTEXT_TAKEOVER && !deflate) {
+                // Clients may offer several configurations, accept the first one only.
+                deflate = true;
+                result.add(withoutContextTakeover(extension));
+            }
+        }
+        return result;
+    }
+
+    private static Extension withoutContextTakeover(Extension extension) {
+        List<Extension.Parameter> parameters = new ArrayList<>();
+        for (Extension.Parameter parameter : extension.getParameters()) {
+            String name = parameter.getName();
+            if (SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(name)) {
+                continue;
+            }
+            // A client_max_window_bits offer without value needs no answer.
+            if (CLIENT_MAX_WINDOW_BITS.equalsIgnoreCase(name) && (parameter.getValue() == null || parameter.getValue().isEmpty())) {
+                continue;
+            }
+            parameters.add(parameter);
+        }
+        parameters.add(new DeflateParameter(SERVER_NO_CONTEXT_TAKEOVER, null));
+        return new DeflateExtension(extension.getName(), parameters);
+    }
+
+    /**
+     * @param value the mode name, such as {@code disabled}, or null
+     * @return the mode with the given name, {@link #CONTAINER} if the value is null or empty
+     * @throws IllegalArgumentException if the value is not a valid mode name
+     */
+    public static PerMessageDeflate from(Object value) {
+        if (value == null) {
+            return CONTAINER;
+        }
+        if (value instanceof PerMessageDeflate) {
+            return (PerMessageDeflate)value;
+        }
+        String name = value.toString().trim();
+        if (name.isEmpty()) {
+            return CONTAINER;
+        }
+        return valueOf(name.replace('-', '_').toUpperCase(Locale.ENGLISH));
+    }
+
+    private static class DeflateExtension implements Extension {
+        private final String name;
+        private final List<Parameter> parameters;
+
+        private DeflateExtension(String name, List<Parameter> parameters) {
+            this.name = name;
+            this.parameters = Collections.unmodifiableList(parameters);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public List<Parameter> getParameters() {
+            return parameters;
+        }
+
+        @Override
+        public String toString() {
+            return name + parameters;
+        }
+    }
+
+    private static class DeflateParameter implements Extension.Parameter {
+        private final String name;
+        private final String value;
+
+        private DeflateParameter(String name, String value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getValue() {
+            return value;
+        }
+
+        @Override
+        public String toString() {
+            return value == null ? name : name + "=" + value;
+        }
+    }
+}
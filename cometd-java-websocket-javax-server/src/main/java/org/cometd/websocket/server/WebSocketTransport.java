@@ -20,6 +20,12 @@ import org.cometd.bayeux.server.ServerMessage;
 import org.cometd.bayeux.server.ServerSession;
 import org.cometd.server.AbstractServerTransport;
 import org.cometd.server.BayeuxServerImpl;
+import org.cometd.server.ChannelStatistics;
+import org.cometd.server.EncodedFrame;
+import org.cometd.server.ExecutionMode;
+import org.cometd.server.ServerSessionImpl;
+import org.cometd.server.TransportExecutor;
+import org.cometd.server.TransportMetrics;
 import org.cometd.websocket.server.common.AbstractBayeuxContext;
 import org.cometd.websocket.server.common.AbstractWebSocketTransport;
 import org.eclipse.jetty.util.Callback;
@@ -35,6 +41,9 @@ import javax.websocket.server.ServerContainer;
 import javax.websocket.server.ServerEndpointConfig;
 import java.net.InetSocketAddress;
 import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
@@ -48,6 +57,30 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
      * The logger package should be not changed, logs for this particular package are forwarded to access.log
      */
     private static final Logger accessLogger = LoggerFactory.getLogger("com.cumulocity.websocket.interceptors");
+    /**
+     * Whether batches of queued messages are sent as a single binary frame of UTF-8 JSON,
+     * the clients must then decode binary frames as text.
+     */
+    public static final String BINARY_BATCH_OPTION = "binaryBatch";
+    /**
+     * Number of received frames queued by a connection at which its reads are paused, or 0 to process
+     * each frame on the thread that received it.
+     */
+    public static final String PIPELINE_CAPACITY_OPTION = "pipelineCapacity";
+    /**
+     * Maximum number of queued frames of a connection coalesced into a single batch of messages.
+     */
+    public static final String PIPELINE_BATCH_SIZE_OPTION = "pipelineBatchSize";
+    private static final int MAX_POOLED_BATCH_CAPACITY = 1024 * 1024;
+    private static final int MAX_POOLED_BATCH_BUFFERS = 32;
+
+    private final DirectBufferPool _batchBuffers = new DirectBufferPool(MAX_POOLED_BATCH_CAPACITY, MAX_POOLED_BATCH_BUFFERS);
+    private PerMessageDeflate _perMessageDeflate = PerMessageDeflate.CONTAINER;
+    private boolean _binaryBatch;
+    private TransportExecutor _executor;
+    private int _pipelineCapacity;
+    private int _pipelineBatchSize;
+    private TransportMetrics _metrics = TransportMetrics.NONE;
 
     public WebSocketTransport(BayeuxServerImpl bayeux) {
         super(bayeux);
@@ -77,6 +110,20 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
         container.setDefaultMaxTextMessageBufferSize(maxMessageSize);
         long idleTimeout = getOption(IDLE_TIMEOUT_OPTION, container.getDefaultMaxSessionIdleTimeout());
         container.setDefaultMaxSessionIdleTimeout(idleTimeout);
+        _perMessageDeflate = PerMessageDeflate.from(getOption(PerMessageDeflate.OPTION));
+        _binaryBatch = getOption(BINARY_BATCH_OPTION, false);
+        _pipelineCapacity = getOption(PIPELINE_CAPACITY_OPTION, 0);
+        _pipelineBatchSize = getOption(PIPELINE_BATCH_SIZE_OPTION, 16);
+        _metrics = TransportMetrics.from(getOption(TransportMetrics.OPTION), getName());
+        if (ExecutionMode.from(getOption(ExecutionMode.OPTION)) == ExecutionMode.VIRTUAL) {
+            TransportExecutor executor = new TransportExecutor(getName() + "-executor", getOption(ExecutionMode.MAX_CONCURRENCY_OPTION, ExecutionMode.DEFAULT_MAX_CONCURRENCY));
+            try {
+                executor.start();
+            } catch (Exception x) {
+                throw new IllegalStateException(x);
+            }
+            _executor = executor;
+        }
 
         String protocol = getProtocol();
         List<String> protocols = protocol == null ? null : Collections.singletonList(protocol);
@@ -94,9 +141,30 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
         }
     }
 
+    /**
+     * @return the {@link TransportExecutor} in the {@link ExecutionMode#VIRTUAL} mode,
+     * otherwise the thread pool of this transport
+     */
+    @Override
+    public Executor getExecutor() {
+        TransportExecutor executor = _executor;
+        return executor != null ? executor : super.getExecutor();
+    }
+
     @Override
     public void destroy() {
-        Executor threadPool = getExecutor();
+        TransportExecutor executor = _executor;
+        _executor = null;
+        if (executor != null) {
+            try {
+                executor.stop();
+            } catch (Exception x) {
+                _logger.trace("", x);
+            }
+        }
+        _metrics.close();
+        _metrics = TransportMetrics.NONE;
+        Executor threadPool = super.getExecutor();
         if (threadPool instanceof LifeCycle) {
             try {
                 ((LifeCycle) threadPool).stop();
@@ -123,8 +191,96 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
         wsSession.getAsyncRemote().sendText(data, result -> {
             Throwable failure = result.getException();
             if (failure == null) {
+                TransportMetrics metrics = _metrics;
+                if (metrics.isEnabled()) {
+                    metrics.written(ChannelStatistics.utf8Length(data));
+                }
                 callback.succeeded();
             } else {
+                _metrics.writeFailed(1);
+                handleException(wsSession, session, failure);
+                callback.failed(failure);
+            }
+        });
+    }
+
+    /**
+     * <p>Sends the shared frame of a broadcast message, built once per publish and written
+     * as is to every session that negotiated this transport.</p>
+     * <p>The frame is released once the write completes, either successfully or not.</p>
+     */
+    protected void send(final Session wsSession, final ServerSession session, final EncodedFrame frame, final Callback callback) {
+        String data = frame.getTextFrame();
+        int length = _metrics.isEnabled() ? frame.getTextFrameLength() : 0;
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Sending shared {} {}", frame, data);
+        }
+
+        // Async write.
+        wsSession.getAsyncRemote().sendText(data, result -> {
+            frame.release();
+            Throwable failure = result.getException();
+            if (failure == null) {
+                TransportMetrics metrics = _metrics;
+                if (metrics.isEnabled()) {
+                    metrics.written(length);
+                }
+                callback.succeeded();
+            } else {
+                _metrics.writeFailed(1);
+                handleException(wsSession, session, failure);
+                callback.failed(failure);
+            }
+        });
+    }
+
+    protected boolean isBinaryBatch() {
+        return _binaryBatch;
+    }
+
+    /**
+     * <p>Sends the given messages as a single binary frame holding their JSON array, assembled
+     * from the already encoded bytes of each message into a pooled direct buffer, without
+     * building an intermediate string.</p>
+     * <p>The frames of the messages are released once the write completes, either successfully or not.</p>
+     */
+    protected void sendBinary(final Session wsSession, final ServerSession session, final List<ServerMessage> batch, final Callback callback) {
+        int size = batch.size();
+        byte[][] encoded = new byte[size][];
+        // The brackets and the commas.
+        int length = size + 1;
+        for (int i = 0; i < size; ++i) {
+            ServerMessage message = batch.get(i);
+            EncodedFrame frame = EncodedFrame.of(message);
+            encoded[i] = frame != null ? frame.getBytes() : message.getJSON().getBytes(StandardCharsets.UTF_8);
+            length += encoded[i].length;
+        }
+        final ByteBuffer buffer = _batchBuffers.acquire(length);
+        buffer.put((byte)'[');
+        for (int i = 0; i < size; ++i) {
+            if (i > 0) {
+                buffer.put((byte)',');
+            }
+            buffer.put(encoded[i]);
+        }
+        buffer.put((byte)']');
+        buffer.flip();
+        if (_logger.isDebugEnabled()) {
+            _logger.debug("Sending binary batch of {} messages, {} bytes", size, length);
+        }
+
+        final int written = length;
+
+        // Async write.
+        wsSession.getAsyncRemote().sendBinary(buffer, result -> {
+            _batchBuffers.release(buffer);
+            EncodedFrame.release(batch);
+            Throwable failure = result.getException();
+            if (failure == null) {
+                _metrics.written(written);
+                callback.succeeded();
+            } else {
+                _metrics.writeFailed(size);
                 handleException(wsSession, session, failure);
                 callback.failed(failure);
             }
@@ -134,6 +290,9 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
     private class WebSocketScheduler extends Endpoint implements AbstractServerTransport.Scheduler, MessageHandler.Whole<String> {
         private final AbstractWebSocketScheduler delegate;
         private volatile Session _wsSession;
+        private volatile MessagePipeline _pipeline;
+        // The session of the upstream scheduler is private, so it is kept here for the shared writes.
+        private volatile ServerSession _session;
 
         private WebSocketScheduler(WebSocketContext context) {
             delegate = new AbstractWebSocketScheduler(context) {
@@ -156,6 +315,43 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
                     schedule(_wsSession, timeout, expiredConnectReply);
                 }
 
+                @Override
+                protected void send(Session wsSession, ServerSessionImpl session, boolean startInterval, List<ServerMessage> queue, List<ServerMessage> replies) {
+                    _session = session;
+                    super.send(wsSession, session, startInterval, queue, replies);
+                }
+
+                @Override
+                protected void send(Session wsSession, List<ServerMessage> messages, int batchSize, Callback callback) {
+                    EncodedFrame frame = messages.isEmpty() ? null : EncodedFrame.of(messages.get(0));
+                    if (frame != null && (batchSize == 1 || messages.size() == 1)) {
+                        // Common path for broadcasts: the text frame is shared by all subscribers.
+                        messages.remove(0);
+                        WebSocketTransport.this.send(wsSession, _session, frame, callback);
+                    } else if (isBinaryBatch() && batchSize > 1 && messages.size() > 1) {
+                        List<ServerMessage> sent = messages.subList(0, Math.min(batchSize, messages.size()));
+                        List<ServerMessage> batch = new ArrayList<>(sent);
+                        // Remove the messages being sent, the remaining ones are sent when the callback completes.
+                        sent.clear();
+                        WebSocketTransport.this.sendBinary(wsSession, _session, batch, callback);
+                    } else {
+                        List<ServerMessage> batch = new ArrayList<>(messages.subList(0, Math.min(batchSize, messages.size())));
+                        super.send(wsSession, messages, batchSize, new Callback() {
+                            @Override
+                            public void succeeded() {
+                                EncodedFrame.release(batch);
+                                callback.succeeded();
+                            }
+
+                            @Override
+                            public void failed(Throwable x) {
+                                EncodedFrame.release(batch);
+                                callback.failed(x);
+                            }
+                        });
+                    }
+                }
+
                 @Override
                 public void onError(Throwable failure) {
                     BayeuxContext context = getContext();
@@ -178,6 +374,10 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
         @Override
         public void onOpen(Session wsSession, EndpointConfig config) {
             _wsSession = wsSession;
+            if (_pipelineCapacity > 0) {
+                _pipeline = new MessagePipeline(getExecutor(), _pipelineCapacity, _pipelineBatchSize,
+                        frame -> delegate.onMessage(wsSession, frame), MessagePipeline.Reads.of(wsSession));
+            }
             wsSession.addMessageHandler(this);
             accessLogger.info("" +
                     "WebSocket Client connected\n----------------------------" +
@@ -190,6 +390,13 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
 
         @Override
         public void onClose(Session wsSession, CloseReason closeReason) {
+            MessagePipeline pipeline = _pipeline;
+            if (pipeline != null) {
+                int dropped = pipeline.close();
+                if (_logger.isDebugEnabled()) {
+                    _logger.debug("Dropped {} queued frames on close of {}", dropped, wsSession.getId());
+                }
+            }
             delegate.onClose(closeReason.getCloseCode().getCode(), closeReason.getReasonPhrase());
             accessLogger.info("" +
                     "WebSocket Client disconnected\n----------------------------" +
@@ -222,7 +429,16 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
                         getClass().getSimpleName(),
                         Integer.toHexString(hashCode()));
             }
-            delegate.onMessage(_wsSession, data);
+            MessagePipeline pipeline = _pipeline;
+            TransportExecutor executor = _executor;
+            if (pipeline != null) {
+                pipeline.offer(data);
+            } else if (executor == null) {
+                delegate.onMessage(_wsSession, data);
+            } else {
+                // Messages of the same connection are handled one at a time, in the order they arrived.
+                executor.execute(this, () -> delegate.onMessage(_wsSession, data));
+            }
         }
     }
 
@@ -278,7 +494,7 @@ public class WebSocketTransport extends AbstractWebSocketTransport<Session> {
 
         @Override
         public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
-            return super.getNegotiatedExtensions(installed, requested);
+            return _perMessageDeflate.negotiate(super.getNegotiatedExtensions(installed, requested));
         }
 
         @Override
@@ -0,0 +1,119 @@
+package org.cometd.websocket.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void shouldRoundCapacitiesUpToPowerOfTwoSizeClasses() {
+        //Given
+        DirectBufferPool pool = new DirectBufferPool(65536, 4);
+
+        //Then
+        assertDirect(DirectBufferPool.MIN_CAPACITY, pool.acquire(0));
+        assertDirect(DirectBufferPool.MIN_CAPACITY, pool.acquire(1));
+        assertDirect(DirectBufferPool.MIN_CAPACITY, pool.acquire(DirectBufferPool.MIN_CAPACITY));
+        assertDirect(8192, pool.acquire(DirectBufferPool.MIN_CAPACITY + 1));
+        assertDirect(32768, pool.acquire(20000));
+        assertDirect(65536, pool.acquire(65536));
+    }
+
+    @Test
+    public void shouldNotPoolBuffersLargerThanMaxCapacity() {
+        //Given
+        // Rounded up to the 8192 size class.
+        DirectBufferPool pool = new DirectBufferPool(5000, 4);
+
+        //When
+        ByteBuffer pooled = pool.acquire(8192);
+        ByteBuffer large = pool.acquire(8193);
+
+        //Then
+        assertDirect(8192, pooled);
+        assertFalse(large.isDirect());
+        assertEquals(8193, large.capacity());
+
+        //When
+        pool.release(large);
+
+        //Then
+        assertNotSame(large, pool.acquire(8193));
+    }
+
+    @Test
+    public void shouldReuseReleasedBufferOfSameSizeClassCleared() {
+        //Given
+        DirectBufferPool pool = new DirectBufferPool(65536, 4);
+        ByteBuffer buffer = pool.acquire(6000);
+        buffer.put(new byte[100]).flip();
+
+        //When
+        pool.release(buffer);
+        ByteBuffer small = pool.acquire(100);
+        ByteBuffer reused = pool.acquire(5000);
+
+        //Then
+        assertNotSame(buffer, small);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(reused.capacity(), reused.limit());
+    }
+
+    @Test
+    public void shouldBoundBuffersKeptPerSizeClass() {
+        //Given
+        DirectBufferPool pool = new DirectBufferPool(65536, 2);
+        ByteBuffer first = pool.acquire(4096);
+        ByteBuffer second = pool.acquire(4096);
+        ByteBuffer third = pool.acquire(4096);
+        ByteBuffer other = pool.acquire(16384);
+
+        //When
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        pool.release(other);
+
+        //Then
+        assertSame(first, pool.acquire(4096));
+        assertSame(second, pool.acquire(4096));
+        ByteBuffer fresh = pool.acquire(4096);
+        assertNotSame(third, fresh);
+        assertDirect(4096, fresh);
+        // Each size class has its own bound.
+        assertSame(other, pool.acquire(16384));
+    }
+
+    @Test
+    public void shouldIgnoreBuffersNotAllocatedByThePool() {
+        //Given
+        DirectBufferPool pool = new DirectBufferPool(65536, 4);
+        ByteBuffer heap = ByteBuffer.allocate(4096);
+        ByteBuffer odd = ByteBuffer.allocateDirect(5000);
+        ByteBuffer huge = ByteBuffer.allocateDirect(131072);
+
+        //When
+        pool.release(heap);
+        pool.release(odd);
+        pool.release(huge);
+
+        //Then
+        assertNotSame(heap, pool.acquire(4096));
+        ByteBuffer buffer = pool.acquire(5000);
+        assertNotSame(odd, buffer);
+        assertDirect(8192, buffer);
+    }
+
+    private static void assertDirect(int capacity, ByteBuffer buffer) {
+        assertTrue(buffer.isDirect());
+        assertEquals(capacity, buffer.capacity());
+    }
+}
@@ -0,0 +1,170 @@
+package org.cometd.websocket.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MessagePipelineTest {
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<String> batches = new ArrayList<>();
+    private final RecordingReads reads = new RecordingReads();
+
+    @Test
+    public void shouldCoalesceQueuedFramesInOrder() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 10, 16, batches::add, reads);
+
+        //When
+        pipeline.offer("[{\"id\":\"1\"}]");
+        pipeline.offer("{\"id\":\"2\"}");
+        pipeline.offer("[{\"id\":\"3\"},{\"id\":\"4\"}]");
+        runTasks();
+
+        //Then
+        assertEquals(1, batches.size());
+        assertEquals("[{\"id\":\"1\"},{\"id\":\"2\"},{\"id\":\"3\"},{\"id\":\"4\"}]", batches.get(0));
+    }
+
+    @Test
+    public void shouldNotCoalesceHandshakes() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 10, 16, batches::add, reads);
+
+        //When
+        pipeline.offer("[{\"channel\":\"/meta/handshake\"}]");
+        pipeline.offer("[{\"id\":\"1\"}]");
+        pipeline.offer("[{\"id\":\"2\"}]");
+        runTasks();
+
+        //Then
+        assertEquals(2, batches.size());
+        assertEquals("[{\"channel\":\"/meta/handshake\"}]", batches.get(0));
+        assertEquals("[{\"id\":\"1\"},{\"id\":\"2\"}]", batches.get(1));
+    }
+
+    @Test
+    public void shouldLimitCoalescedFrames() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 10, 2, batches::add, reads);
+
+        //When
+        pipeline.offer("[{\"id\":\"1\"}]");
+        pipeline.offer("[{\"id\":\"2\"}]");
+        pipeline.offer("[{\"id\":\"3\"}]");
+        runTasks();
+
+        //Then
+        assertEquals(2, batches.size());
+        assertEquals("[{\"id\":\"3\"}]", batches.get(1));
+    }
+
+    @Test
+    public void shouldPauseReadsWhenFullAndResumeWhenDrained() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 4, 1, batches::add, reads);
+
+        //When
+        for (int i = 0; i < 4; ++i) {
+            pipeline.offer("[{\"id\":\"" + i + "\"}]");
+        }
+
+        //Then
+        assertTrue(pipeline.isPaused());
+        assertEquals(1, reads.pauses);
+        assertEquals(0, reads.resumes);
+
+        //When
+        runTasks();
+
+        //Then
+        assertFalse(pipeline.isPaused());
+        assertEquals(1, reads.resumes);
+        assertEquals(4, batches.size());
+        assertEquals(0, pipeline.size());
+    }
+
+    @Test
+    public void shouldProcessMalformedFrameAlone() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 10, 16, batches::add, reads);
+
+        //When
+        pipeline.offer("[{\"id\":\"1\"}]");
+        pipeline.offer("[{\"id\":\"2\"");
+        pipeline.offer("[{\"id\":\"3\"}]");
+        runTasks();
+
+        //Then
+        assertEquals(3, batches.size());
+        assertEquals("[{\"id\":\"1\"}]", batches.get(0));
+        assertEquals("[{\"id\":\"2\"", batches.get(1));
+        assertEquals("[{\"id\":\"3\"}]", batches.get(2));
+    }
+
+    @Test
+    public void shouldRecognizeHandshakesByChannelOnly() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 10, 16, batches::add, reads);
+
+        //When
+        pipeline.offer("[{\"id\":\"1\",\"data\":{\"channel\":\"/meta/handshake\"}}]");
+        pipeline.offer("[{\"id\":\"2\",\"data\":\"/meta/handshake\"}]");
+        pipeline.offer("[{\"channel\":\"\\/meta\\/handshake\"}]");
+        pipeline.offer("[{\"id\":\"3\"}]");
+        runTasks();
+
+        //Then
+        assertEquals(3, batches.size());
+        assertEquals("[{\"id\":\"1\",\"data\":{\"channel\":\"/meta/handshake\"}},{\"id\":\"2\",\"data\":\"/meta/handshake\"}]", batches.get(0));
+        assertEquals("[{\"channel\":\"\\/meta\\/handshake\"}]", batches.get(1));
+        assertEquals("[{\"id\":\"3\"}]", batches.get(2));
+    }
+
+    @Test
+    public void shouldDropQueuedFramesOnClose() {
+        //Given
+        MessagePipeline pipeline = new MessagePipeline(tasks::add, 2, 16, batches::add, reads);
+        pipeline.offer("[{\"id\":\"1\"}]");
+        pipeline.offer("[{\"id\":\"2\"}]");
+        assertTrue(pipeline.isPaused());
+
+        //When
+        assertEquals(2, pipeline.close());
+        pipeline.offer("[{\"id\":\"3\"}]");
+        runTasks();
+
+        //Then
+        assertTrue(batches.isEmpty());
+        assertEquals(0, pipeline.size());
+        assertFalse(pipeline.isPaused());
+        assertEquals(0, reads.resumes);
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static class RecordingReads implements MessagePipeline.Reads {
+        private int pauses;
+        private int resumes;
+
+        @Override
+        public boolean pause() {
+            ++pauses;
+            return true;
+        }
+
+        @Override
+        public void resume() {
+            ++resumes;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package org.cometd.websocket.server;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.openjdk.jmh.annotations.Mode.Throughput;
+
+/**
+ * One broadcast written to 10k simulated sessions: each session deflating the shared text frame, as
+ * containers do with {@code permessage-deflate}, compared with a frame deflated once and reused by every
+ * session, and with the extension {@link PerMessageDeflate#DISABLED disabled}.
+ */
+@BenchmarkMode(Throughput)
+@Fork(1)
+@Warmup(iterations = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 3)
+public class PerMessageDeflateBenchmark {
+
+    @Test
+    public void perMessageDeflateBenchmark() throws RunnerException {
+        Options opt = new OptionsBuilder()
+                .result("target/" + PerMessageDeflateBenchmark.class.getSimpleName() + "-jmh.json")
+                .resultFormat(ResultFormatType.JSON)
+                .include(PerMessageDeflateBenchmark.class.getSimpleName())
+                .build();
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public void perSessionDeflate(ExecutionPlan plan, Blackhole blackhole) {
+        for (int i = 0; i < plan.sessionCount; i++) {
+            // No context takeover: every session starts from an empty window.
+            blackhole.consume(plan.deflate());
+        }
+    }
+
+    @Benchmark
+    public void sharedDeflate(ExecutionPlan plan, Blackhole blackhole) {
+        byte[] frame = plan.deflate();
+        for (int i = 0; i < plan.sessionCount; i++) {
+            blackhole.consume(frame);
+        }
+    }
+
+    @Benchmark
+    public void uncompressed(ExecutionPlan plan, Blackhole blackhole) {
+        byte[] frame = plan.getPayload();
+        for (int i = 0; i < plan.sessionCount; i++) {
+            blackhole.consume(frame);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ExecutionPlan {
+        @Param({"10000"})
+        int sessionCount;
+
+        @Param({"10", "200"})
+        int generatedDataCount;
+
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private byte[] payload;
+        private byte[] output;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            StringBuilder references = new StringBuilder();
+            for (int i = 0; i < generatedDataCount; i++) {
+                references.append(i == 0 ? "" : ",").append("{\"managedObject\":{\"self\":\"http://cumulocity.default.svc.cluster.local/inventory/managedObjects/").append(i).append("\",\"id\":\"").append(i).append("\"}}");
+            }
+            String json = "[{\"channel\":\"/managedobjects/3201\",\"data\":{\"realtimeAction\":\"UPDATE\",\"data\":{\"id\":\"3201\",\"name\":\"testGroup1\",\"childAssets\":{\"references\":[" + references + "]}}}}]";
+            payload = json.getBytes(StandardCharsets.UTF_8);
+            output = new byte[payload.length + 64];
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            deflater.end();
+        }
+
+        byte[] getPayload() {
+            return payload;
+        }
+
+        byte[] deflate() {
+            deflater.reset();
+            deflater.setInput(payload);
+            int length = 0;
+            while (true) {
+                length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+                if (length < output.length) {
+                    break;
+                }
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            // RFC 7692: the trailing 0x00 0x00 0xFF 0xFF of the sync flush is not sent.
+            return Arrays.copyOf(output, Math.max(0, length - 4));
+        }
+    }
+}